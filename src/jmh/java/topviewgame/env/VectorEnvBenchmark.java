@@ -0,0 +1,59 @@
+package topviewgame.env;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures one batched step of a {@link VectorEnv}, including the resets of finished games.
+ * <p>
+ * Every game keeps a random action for about 20 steps, so the players wander and die at the rate
+ * of a bot that has not learned anything yet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VectorEnvBenchmark {
+    @Param({"16", "256", "1024"})
+    public int envCount;
+
+    @Param({"1", "4"})
+    public int stepsPerAction;
+
+    private VectorEnv env;
+    private int[] actions;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void createEnv() {
+        env = new VectorEnv(envCount, 960, 540, 42, stepsPerAction);
+        actions = new int[envCount];
+        random = new SplittableRandom(7);
+    }
+
+    @Benchmark
+    public float[] step() {
+        for (int i = 0; i < actions.length; i++) {
+            if (random.nextInt(20) == 0) {
+                actions[i] = random.nextInt(16);
+            }
+        }
+        env.step(actions);
+        return env.getObservations();
+    }
+}
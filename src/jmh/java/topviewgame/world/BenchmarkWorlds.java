@@ -0,0 +1,123 @@
+package topviewgame.world;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Builds worlds with an exact number of NPCs for the benchmarks.
+ * <p>
+ * The map area grows with the NPC count so every population fits at every building density, and
+ * the whole map is simulated instead of only the chunks around the player.
+ * NPCs are placed on free slots of a fixed grid, picked in a seeded random order and kept out of
+ * the safe zone around the player.
+ * <p>
+ * Every world is saved as a {@link WorldSnapshot} fixture the first time it is built and loaded
+ * from it afterwards, so all trials and forks measure the same world and skip the population step.
+ * Fixtures are kept in {@code build/jmh-fixtures}, or the directory set by the
+ * {@code topviewgame.fixtures} system property; delete them to rebuild the worlds.
+ */
+final class BenchmarkWorlds {
+    // Map area reserved per NPC, large enough for the densest benchmarked map
+    private static final double AREA_PER_NPC = 12000;
+    private static final double MIN_WIDTH = 1920;
+    private static final double MIN_HEIGHT = 1080;
+
+    // Pitch of the candidate NPC slots; larger than an NPC so slots never overlap
+    private static final double SLOT_SIZE = 50;
+
+    // NPCs are not placed this close to the player, as in the game
+    private static final double SAFE_DISTANCE = 200;
+
+    // Directory of the saved worlds
+    private static final Path FIXTURES = Path.of(System.getProperty("topviewgame.fixtures", "build/jmh-fixtures"));
+
+    private BenchmarkWorlds() {
+    }
+
+    /**
+     * Creates a world with the given number of NPCs, all of them out of peace time.
+     *
+     * @param npcCount        The number of NPCs.
+     * @param buildingDensity The number of buildings relative to the default map.
+     * @param seed            The seed for the map and the NPC placement.
+     * @return The world.
+     */
+    static World create(int npcCount, double buildingDensity, long seed) {
+        Path fixture = FIXTURES.resolve("world-" + npcCount + "-" + buildingDensity + "-" + seed + ".snapshot");
+        try {
+            if (Files.exists(fixture)) {
+                try {
+                    return WorldSnapshot.load(fixture);
+                } catch (IOException e) {
+                    // Saved by another snapshot version; build the world again
+                }
+            }
+            World world = build(npcCount, buildingDensity, seed);
+            Files.createDirectories(FIXTURES);
+            WorldSnapshot.save(world, fixture);
+            return world;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Builds a world with the given number of NPCs, all of them out of peace time.
+     *
+     * @param npcCount        The number of NPCs.
+     * @param buildingDensity The number of buildings relative to the default map.
+     * @param seed            The seed for the map and the NPC placement.
+     * @return The world.
+     */
+    private static World build(int npcCount, double buildingDensity, long seed) {
+        double area = Math.max(MIN_WIDTH * MIN_HEIGHT, npcCount * AREA_PER_NPC);
+        double width = Math.max(MIN_WIDTH, Math.sqrt(area * MIN_WIDTH / MIN_HEIGHT));
+        double height = Math.max(MIN_HEIGHT, area / width);
+        var world = new World(width, height, buildingDensity, World.WHOLE_WORLD);
+        world.reset(seed);
+        populate(world, npcCount, new SplittableRandom(seed));
+        return world;
+    }
+
+    /**
+     * Replaces the NPCs of a world with the given number of NPCs on free slots.
+     *
+     * @param world    The world.
+     * @param npcCount The number of NPCs.
+     * @param random   The source of the slot order.
+     */
+    private static void populate(World world, int npcCount, SplittableRandom random) {
+        int columns = (int) ((world.getWidth() - World.CHARACTER_SIZE) / SLOT_SIZE);
+        int rows = (int) ((world.getHeight() - World.CHARACTER_SIZE) / SLOT_SIZE);
+
+        // Collect every slot that is clear of obstacles and outside the safe zone
+        int[] slots = new int[columns * rows];
+        int free = 0;
+        for (int slot = 0; slot < slots.length; slot++) {
+            double x = (slot % columns) * SLOT_SIZE;
+            double y = (slot / columns) * SLOT_SIZE;
+            if (Math.hypot(x - world.getCharacterX(), y - world.getCharacterY()) >= SAFE_DISTANCE
+                    && !world.getObstacles().intersects(x, y, World.CHARACTER_SIZE, World.CHARACTER_SIZE)) {
+                slots[free++] = slot;
+            }
+        }
+        if (free < npcCount) {
+            throw new IllegalStateException("Only " + free + " free slots for " + npcCount + " NPCs");
+        }
+
+        // Partial Fisher-Yates shuffle: the first npcCount slots become a random sample
+        var npcs = world.getNpcs();
+        npcs.clear();
+        for (int i = 0; i < npcCount; i++) {
+            int j = i + random.nextInt(free - i);
+            int slot = slots[j];
+            slots[j] = slots[i];
+            world.addNpc((slot % columns) * SLOT_SIZE, (slot / columns) * SLOT_SIZE);
+        }
+        npcs.setPeaceTime(false);
+        npcs.savePreviousPositions();
+    }
+}
@@ -0,0 +1,65 @@
+package topviewgame.world;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the player-vs-NPC collision check and NPC overlap queries at random points of the map.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CollisionBenchmark {
+    private static final int PROBE_COUNT = 4096;
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int npcCount;
+
+    @Param({"0.5", "1", "1.25"})
+    public double buildingDensity;
+
+    private World world;
+    private double[] probeX;
+    private double[] probeY;
+    private int probe;
+
+    @Setup(Level.Trial)
+    public void createWorld() {
+        world = BenchmarkWorlds.create(npcCount, buildingDensity, 42);
+        var random = new SplittableRandom(7);
+        probeX = new double[PROBE_COUNT];
+        probeY = new double[PROBE_COUNT];
+        for (int i = 0; i < PROBE_COUNT; i++) {
+            probeX[i] = random.nextDouble(0, world.getWidth() - World.CHARACTER_SIZE);
+            probeY[i] = random.nextDouble(0, world.getHeight() - World.CHARACTER_SIZE);
+        }
+    }
+
+    @Benchmark
+    public boolean handleCollisions() {
+        world.handleCollisions();
+        return world.isGameOver();
+    }
+
+    @Benchmark
+    public boolean overlapsNpc() {
+        probe = (probe + 1) % PROBE_COUNT;
+        return world.overlapsNpc(probeX[probe], probeY[probe], -1);
+    }
+}
@@ -0,0 +1,54 @@
+package topviewgame.world;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the generation of the chunks of a map, with the obstacle and navigation indexes built from them.
+ * <p>
+ * The map is sized for {@code npcCount} NPCs, the same way as in the other benchmarks, so the
+ * results of all subsystems line up per parameter combination.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapGenerationBenchmark {
+    @Param({"100", "1000", "10000", "100000"})
+    public int npcCount;
+
+    @Param({"0.5", "1", "1.25"})
+    public double buildingDensity;
+
+    private World world;
+
+    @Setup(Level.Trial)
+    public void createWorld() {
+        world = BenchmarkWorlds.create(npcCount, buildingDensity, 42);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearMap() {
+        world.getChunks().clear();
+    }
+
+    @Benchmark
+    public int generateMap() {
+        world.generateMap();
+        return world.getBuildings().size();
+    }
+}
@@ -0,0 +1,71 @@
+package topviewgame.world;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures one step of NPC movement, including flow field steering and obstacle avoidance.
+ * <p>
+ * The NPCs are put back on their starting positions before every iteration, so every iteration
+ * measures the same crowd instead of one that has already piled up around the player.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NpcMovementBenchmark {
+    @Param({"100", "1000", "10000", "100000"})
+    public int npcCount;
+
+    @Param({"0.5", "1", "1.25"})
+    public double buildingDensity;
+
+    private World world;
+    private double[] startX;
+    private double[] startY;
+
+    @Setup(Level.Trial)
+    public void createWorld() {
+        world = BenchmarkWorlds.create(npcCount, buildingDensity, 42);
+        var npcs = world.getNpcs();
+        startX = new double[npcs.size()];
+        startY = new double[npcs.size()];
+        for (int i = 0; i < npcs.size(); i++) {
+            startX[i] = npcs.getX(i);
+            startY[i] = npcs.getY(i);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void restorePositions() {
+        var npcs = world.getNpcs();
+        for (int i = 0; i < npcs.size(); i++) {
+            npcs.setPosition(i, startX[i], startY[i]);
+        }
+    }
+
+    @Benchmark
+    public void moveNpcs() {
+        world.moveNPCs();
+    }
+
+    @Benchmark
+    public void updateFlowField() {
+        double center = World.CHARACTER_SIZE / 2.0;
+        world.getFlowField().update(world.getCharacterX() + center, world.getCharacterY() + center);
+    }
+}
@@ -0,0 +1,54 @@
+package topviewgame.world;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the placement of a new NPC in the spawn ring around the player.
+ * <p>
+ * A spawned NPC is removed again right away, so every invocation sees the same population.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpawnBenchmark {
+    @Param({"100", "1000", "10000", "100000"})
+    public int npcCount;
+
+    @Param({"0.5", "1", "1.25"})
+    public double buildingDensity;
+
+    private World world;
+
+    @Setup(Level.Trial)
+    public void createWorld() {
+        world = BenchmarkWorlds.create(npcCount, buildingDensity, 42);
+    }
+
+    @Benchmark
+    public boolean addNewNpc() {
+        var npcs = world.getNpcs();
+        int count = npcs.size();
+        world.addNewNPC();
+        if (npcs.size() > count) {
+            npcs.remove(count);
+            return true;
+        }
+        return false;
+    }
+}
@@ -1,83 +1,113 @@
 package topviewgame;
 
-import javafx.animation.Animation;
 import javafx.animation.AnimationTimer;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
-import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
 import javafx.scene.input.KeyCode;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
-import javafx.scene.shape.Rectangle;
 import javafx.scene.text.Font;
 import javafx.scene.text.Text;
 import javafx.stage.Screen;
-import javafx.util.Duration;
-import topviewgame.item.Building;
-import topviewgame.item.NPC;
-
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ThreadLocalRandom;
+import topviewgame.metrics.GameMetrics;
+import topviewgame.metrics.Phase;
+import topviewgame.net.GameClient;
+import topviewgame.render.Camera;
+import topviewgame.render.RenderMode;
+import topviewgame.render.Renderer;
+import topviewgame.render.SceneSync;
+import topviewgame.replay.Recorder;
+import topviewgame.replay.Replay;
+import topviewgame.world.ChunkMap;
+import topviewgame.world.Input;
+import topviewgame.world.SimulationClock;
+import topviewgame.world.World;
+import topviewgame.world.WorldSettings;
+import topviewgame.world.WorldSnapshot;
+
+import java.io.IOException;
+import java.nio.file.Path;
 
 /**
  * Represents the main game panel where the game is played.
+ * <p>
+ * All game state and rules live in {@link World}; the panel only forwards input,
+ * advances the world in fixed steps paced by a {@link SimulationClock} and draws it
+ * through a {@link Renderer}, interpolating between the last two steps. The world can be larger
+ * than the screen; a {@link Camera} then follows the player across it. The phases of every frame
+ * are timed into {@link GameMetrics}, shown in an overlay toggled with F3 and exported as an MBean.
+ * Games can be recorded with a {@link Recorder}, or a {@link Replay} can play recorded games in
+ * place of the keyboard. F5 saves the game as a {@link WorldSnapshot} and F9 loads it again.
+ * Connected to a game server through a {@link GameClient}, the panel shows the world of the server
+ * instead, sending the keyboard state and interpolating between the received snapshots.
  */
-public class GamePanel extends Pane {
-    // Constants
-    private static final int CHARACTER_SIZE = 40;
-    private static final double BUILDING_SPACING = 2 * CHARACTER_SIZE; // Ensures at least 2x player size spacing
-    private static final double SPEED = 5;
-    private static final long NPC_SPAWN_INTERVAL = 2500;
-    private static final long PEACE_TIME_DURATION = 3000;
-    // Interval to increase the number of NPCs to spawn
-    private static final long SPAWN_INCREASE_INTERVAL = 30000; // 30 secoonds
+public final class GamePanel extends Pane {
+    // File of the quick save
+    private static final Path QUICK_SAVE_FILE = Path.of("quicksave.snapshot");
 
     // Game dimensions
     private double GAME_WIDTH;
     private double GAME_HEIGHT;
 
-    // Player position and velocity
-    private double characterX;
-    private double characterY;
-    private double playerVelocityX = 0;
-    private double playerVelocityY = 0;
+    // Size of the world relative to the screen, and the simulation settings of every world created
+    private final double worldScale;
+    private final WorldSettings settings;
+
+    // Simulated game world, the visible part of it, and the strategy used to draw it
+    private World world;
+    private Camera camera;
+    private final RenderMode renderMode;
+    private Renderer renderer;
 
-    // Game entities
-    private final List<NPC> npcs = new ArrayList<>();
-    private final List<Building> buildings = new ArrayList<>();
-    private ImageView character;
+    // Applies the node changes of a frame in one pass
+    private final SceneSync sceneSync = new SceneSync();
 
-    // Animations and timers
-    private Animation walkingAnimation;
+    // Game loop timer and the clock that turns frame time into simulation steps
     private AnimationTimer timer;
+    private final SimulationClock clock;
+
+    // Records the played games, or null
+    private Recorder recorder;
 
-    // Game state flags
-    private boolean gameOver = false;
-    private boolean peaceTime = true;
+    // Plays back recorded games instead of the keyboard, or null; finished once all games are shown
+    private Replay replay;
+    private boolean replayFinished;
 
-    // Movement flags
-    private boolean movingUp = false;
-    private boolean movingDown = false;
-    private boolean movingLeft = false;
-    private boolean movingRight = false;
+    // Shows the world of a game server instead of a local game, or null, and the inputs sent to it
+    private GameClient client;
+    private int clientInputs;
 
     // Timer variables
     private Text timerText;
     private Text npcCountText;
-    private long startTime;
-    private long lastNPCSpawnTime;
-    private long peaceStartTime;
 
     // Game Over Text
     private Text gameOverText;
 
-    // NPC spawn management
-    private int npcsToSpawn = 1;
-    private long nextSpawnIncreaseTime;
+    // Frame timings, their overlay, and the start of the current scene pulse
+    private final GameMetrics metrics = new GameMetrics();
+    private Text metricsText;
+    private boolean showMetrics = false;
+    private long pulseStart;
 
     public GamePanel() {
+        this(RenderMode.NODES, new SimulationClock(), 1, WorldSettings.DEFAULT);
+    }
+
+    /**
+     * Constructs a new game panel.
+     *
+     * @param renderMode The rendering strategy to use.
+     * @param clock      The clock pacing the simulation steps.
+     * @param worldScale The size of the world relative to the screen; 1 fits the world to the screen.
+     * @param settings   The simulation settings of the local games. Replays and game servers use
+     *                   the settings of the recorded or served games instead.
+     */
+    public GamePanel(RenderMode renderMode, SimulationClock clock, double worldScale, WorldSettings settings) {
+        this.renderMode = renderMode;
+        this.clock = clock;
+        this.worldScale = worldScale;
+        this.settings = settings;
+        metrics.registerMBean();
+        addPulseListeners();
         initializeGame();
     }
 
@@ -87,15 +117,6 @@ public class GamePanel extends Pane {
     private void initializeGame() {
         // Clear previous game state
         getChildren().clear();
-        npcs.clear();
-        buildings.clear();
-        gameOver = false;
-
-        // Reset movement flags
-        movingUp = false;
-        movingDown = false;
-        movingLeft = false;
-        movingRight = false;
 
         // Get full-screen dimensions
         GAME_WIDTH = Screen.getPrimary().getBounds().getWidth();
@@ -104,22 +125,33 @@ public class GamePanel extends Pane {
         setStyle("-fx-background-color: green;");
         setPrefSize(GAME_WIDTH, GAME_HEIGHT); // Set the preferred size of the pane
 
-        // Initialize timer variables
-        startTime = System.currentTimeMillis();
-        lastNPCSpawnTime = startTime;
-        peaceStartTime = startTime;
-        peaceTime = true;
-        nextSpawnIncreaseTime = startTime + SPAWN_INCREASE_INTERVAL;
-        npcsToSpawn = 1;
-
         // Generate game elements
-        generateBorders();
-        generateMap();
-        initializeCharacter();
-        generateNPCs();
-
-        // Setup walking animation
-        walkingAnimation = createWalkingAnimation();
+        if (world == null) {
+            if (client != null) {
+                world = client.getWorld();
+                settings.applyTo(world);
+            } else if (replay != null) {
+                world = replay.createWorld();
+                settings.applyTo(world);
+            } else {
+                // Simulate enough chunks around the player to cover the screen wherever the player
+                // stands; the first game is generated with the settings already
+                int activeChunks = 2 * (int) Math.ceil(Math.max(GAME_WIDTH, GAME_HEIGHT) / 2 / ChunkMap.CHUNK_SIZE) + 1;
+                world = new World(GAME_WIDTH * worldScale, GAME_HEIGHT * worldScale, 1, activeChunks, settings);
+            }
+            world.setMetrics(metrics);
+            camera = new Camera(GAME_WIDTH, GAME_HEIGHT);
+        } else if (replay == null && client == null) {
+            world.reset();
+        }
+        if (replay != null) {
+            replayFinished = !replay.startNextGame(world);
+        }
+        if (recorder != null) {
+            recorder.startGame(world);
+        }
+        renderer = renderMode.createRenderer(this, sceneSync, camera);
+        renderer.attach(world);
 
         // Initialize timer display
         timerText = new Text();
@@ -137,6 +169,24 @@ public class GamePanel extends Pane {
         npcCountText.setY(100);
         getChildren().add(npcCountText);
 
+        // Initialize metrics overlay
+        metricsText = new Text();
+        metricsText.setFill(Color.WHITE);
+        metricsText.setFont(Font.font("Monospaced", 16));
+        metricsText.setX(20);
+        metricsText.setY(140);
+        metricsText.setVisible(showMetrics);
+        getChildren().add(metricsText);
+        gameOverText = null;
+
+        // Show the initial state
+        sceneSync.attachHud(timerText, npcCountText);
+        sceneSync.attachMetrics(metricsText);
+        sceneSync.updateMetrics(metrics.format());
+        renderer.render(1);
+        updateHud();
+        sceneSync.apply();
+
         setFocusTraversable(true);
         addEventHandlers();
 
@@ -146,223 +196,56 @@ public class GamePanel extends Pane {
         }
 
         // Start the game loop
+        clock.reset();
+        metrics.restart();
         timer = new AnimationTimer() {
             @Override
             public void handle(long now) {
-                if (gameOver) {
+                if (client != null) {
+                    updateClient(now);
                     return;
                 }
-                updateTimer();
-                updateNpcCount(); // Update NPC count display
-                moveCharacter();
-                if (!peaceTime) {
-                    moveNPCs();
-                    checkAndAddNPCs();
-                } else {
-                    checkPeaceTime();
-                }
-                handleCollisions();
-            }
-        };
-        timer.start();
-    }
-
-    /**
-     * Generates the borders around the map that act as walls.
-     */
-    private void generateBorders() {
-        // Create borders as buildings
-        // Top border
-        var topBorder = new Building(0, 0, GAME_WIDTH, 10);
-        buildings.add(topBorder);
-
-        // Bottom border
-        var bottomBorder = new Building(0, GAME_HEIGHT - 10, GAME_WIDTH, 10);
-        buildings.add(bottomBorder);
-
-        // Left border
-        var leftBorder = new Building(0, 0, 10, GAME_HEIGHT);
-        buildings.add(leftBorder);
-
-        // Right border
-        var rightBorder = new Building(GAME_WIDTH - 10, 0, 10, GAME_HEIGHT);
-        buildings.add(rightBorder);
-
-        // Set border appearance
-        topBorder.getShape().setFill(Color.DARKGRAY);
-        bottomBorder.getShape().setFill(Color.DARKGRAY);
-        leftBorder.getShape().setFill(Color.DARKGRAY);
-        rightBorder.getShape().setFill(Color.DARKGRAY);
-
-        // Add borders to the scene graph to make them visible
-        getChildren().addAll(
-            topBorder.getShape(),
-            bottomBorder.getShape(),
-            leftBorder.getShape(),
-            rightBorder.getShape()
-        );
-    }
-
-    /**
-     * Initializes the player character.
-     */
-    private void initializeCharacter() {
-        // Spawn character near the center
-        characterX = GAME_WIDTH / 2 - CHARACTER_SIZE / 2;
-        characterY = GAME_HEIGHT / 2 - CHARACTER_SIZE / 2;
-
-        // Ensure character doesn't overlap with buildings
-        int attempts = 0;
-        boolean overlaps;
-        do {
-            overlaps = false;
-
-            var characterShape = new Rectangle(characterX, characterY, CHARACTER_SIZE, CHARACTER_SIZE);
-
-            // Check overlap with buildings
-            for (Building building : buildings) {
-                if (characterShape.getBoundsInParent().intersects(building.getShape().getBoundsInParent())) {
-                    overlaps = true;
-                    // Adjust character position slightly and retry
-                    characterX += 10;
-                    characterY += 10;
-                    break;
+                if (isGameEnded()) {
+                    return;
                 }
-            }
-
-            attempts++;
-        } while (overlaps && attempts < 100);
-
-        if (attempts >= 100) {
-            System.err.println("Could not find a suitable spawn location for the character.");
-        }
+                long frameStart = System.nanoTime();
 
-        // Load the character idle image
-        var characterImage = new Image(getClass().getResource("/player_idle.png").toExternalForm());
-        character = new ImageView(characterImage);
-        character.setFitWidth(CHARACTER_SIZE);
-        character.setFitHeight(CHARACTER_SIZE);
-        character.setX(characterX);
-        character.setY(characterY);
-        getChildren().add(character);
-    }
-
-    /**
-     * Generates the map with buildings.
-     */
-    private void generateMap() {
-        var random = ThreadLocalRandom.current();
-        int attempts;
-        int numBuildings = (int) ((GAME_WIDTH * GAME_HEIGHT) / 80000); // Adjusted for fewer buildings
-        double width = 100;
-        double height = 100;
-
-        double minX = BUILDING_SPACING / 2;
-        double maxX = GAME_WIDTH - width - BUILDING_SPACING / 2;
-        double minY = BUILDING_SPACING / 2;
-        double maxY = GAME_HEIGHT - height - BUILDING_SPACING / 2;
-
-        for (int i = 0; i < numBuildings; i++) {
-            attempts = 0;
-            boolean overlaps;
-            double x, y;
-
-            do {
-                overlaps = false;
-                x = random.nextDouble(minX, maxX);
-                y = random.nextDouble(minY, maxY);
-
-                var expandedNewBuildingShape = new Rectangle(
-                        x - BUILDING_SPACING / 2,
-                        y - BUILDING_SPACING / 2,
-                        width + BUILDING_SPACING,
-                        height + BUILDING_SPACING
-                );
-
-                for (Building building : buildings) {
-                    double buildingX = building.getX();
-                    double buildingY = building.getY();
-                    double buildingWidth = building.getShape().getBoundsInParent().getWidth();
-                    double buildingHeight = building.getShape().getBoundsInParent().getHeight();
-
-                    var expandedExistingBuildingShape = new Rectangle(
-                            buildingX - BUILDING_SPACING / 2,
-                            buildingY - BUILDING_SPACING / 2,
-                            buildingWidth + BUILDING_SPACING,
-                            buildingHeight + BUILDING_SPACING
-                    );
-
-                    if (expandedNewBuildingShape.getBoundsInParent()
-                            .intersects(expandedExistingBuildingShape.getBoundsInParent())) {
-                        overlaps = true;
-                        break;
+                // Run the fixed simulation steps that became due since the previous frame
+                int steps = clock.advance(now);
+                for (int i = 0; i < steps && !isGameEnded(); i++) {
+                    if (replay != null) {
+                        replay.applyInputs(world);
                     }
+                    if (recorder != null) {
+                        recorder.captureInputs(world);
+                    }
+                    world.tick();
                 }
+                long renderStart = System.nanoTime();
+                metrics.record(Phase.SIMULATION, renderStart - frameStart);
 
-                attempts++;
-            } while (overlaps && attempts < 100);
-
-            if (attempts < 100) {
-                var building = new Building(x, y);
-                buildings.add(building);
-                getChildren().add(building.getShape());
-            }
-        }
-    }
+                renderer.render(clock.getAlpha());
+                long hudStart = System.nanoTime();
+                metrics.record(Phase.RENDER, hudStart - renderStart);
 
-    /**
-     * Generates initial NPCs.
-     */
-    private void generateNPCs() {
-        var random = ThreadLocalRandom.current();
-        int attempts;
-        int numNPCs = (int) ((GAME_WIDTH * GAME_HEIGHT) / 100000); // Adjusted for more NPCs
-        for (int i = 0; i < numNPCs; i++) {
-            attempts = 0;
-            boolean overlaps;
-            double x, y;
-            do {
-                overlaps = false;
-                x = random.nextDouble(0, GAME_WIDTH - 40);
-                y = random.nextDouble(0, GAME_HEIGHT - 40);
-
-                var npcShape = new Rectangle(x, y, 40, 40);
-
-                // Check distance from the character
-                double distanceToCharacter = Math.hypot(x - characterX, y - characterY);
-                if (distanceToCharacter < 200) { // Ensure NPCs are not spawned too close to the player
-                    overlaps = true;
+                updateHud();
+                if (metrics.endFrame(now, world) && showMetrics) {
+                    sceneSync.updateMetrics(metrics.format());
                 }
-
-                // Check overlap with buildings
-                if (!overlaps) {
-                    for (Building building : buildings) {
-                        if (npcShape.getBoundsInParent().intersects(building.getShape().getBoundsInParent())) {
-                            overlaps = true;
-                            break;
-                        }
-                    }
+                long syncStart = System.nanoTime();
+                metrics.record(Phase.HUD, syncStart - hudStart);
+
+                // Apply everything that changed in this frame to the nodes
+                sceneSync.apply();
+                long frameEnd = System.nanoTime();
+                metrics.record(Phase.SCENE_SYNC, frameEnd - syncStart);
+                metrics.record(Phase.FRAME, frameEnd - frameStart);
+                if (isGameEnded()) {
+                    showGameOver();
                 }
-
-                // Check overlap with existing NPCs
-                if (!overlaps) {
-                    for (NPC existingNpc : npcs) {
-                        if (npcShape.getBoundsInParent()
-                                .intersects(existingNpc.getShape().getBoundsInParent())) {
-                            overlaps = true;
-                            break;
-                        }
-                    }
-                }
-                attempts++;
-            } while (overlaps && attempts < 100);
-
-            if (attempts < 100) {
-                var npc = new NPC(x, y, this);
-                npcs.add(npc);
-                getChildren().add(npc.getShape());
             }
-        }
+        };
+        timer.start();
     }
 
     /**
@@ -371,142 +254,201 @@ public class GamePanel extends Pane {
     private void addEventHandlers() {
         setOnKeyPressed(e -> {
             KeyCode keyCode = e.getCode();
-            if (gameOver) {
+            if (keyCode == KeyCode.F3) {
+                toggleMetrics();
+                return;
+            }
+            if (keyCode == KeyCode.F5) {
+                quickSave();
+                return;
+            }
+            if (keyCode == KeyCode.F9) {
+                quickLoad();
+                return;
+            }
+            if (client != null) {
+                Input input = toInput(keyCode);
+                if (input != null) {
+                    clientInputs |= 1 << input.ordinal();
+                }
+                return;
+            }
+            if (isGameEnded()) {
                 if (keyCode == KeyCode.SPACE || keyCode == KeyCode.ENTER) {
                     initializeGame(); // Restart the game
                 }
                 return;
             }
+            if (replay != null) {
+                return;
+            }
 
             switch (keyCode) {
-                case UP -> movingUp = true;
-                case DOWN -> movingDown = true;
-                case LEFT -> movingLeft = true;
-                case RIGHT -> movingRight = true;
+                case UP -> world.setMovingUp(true);
+                case DOWN -> world.setMovingDown(true);
+                case LEFT -> world.setMovingLeft(true);
+                case RIGHT -> world.setMovingRight(true);
                 default -> {
                 }
             }
-            if (walkingAnimation.getStatus() != Animation.Status.RUNNING) {
-                walkingAnimation.play();
-            }
         });
 
         setOnKeyReleased(e -> {
             KeyCode keyCode = e.getCode();
-            if (gameOver) {
+            if (client != null) {
+                Input input = toInput(keyCode);
+                if (input != null) {
+                    clientInputs &= ~(1 << input.ordinal());
+                }
+                return;
+            }
+            if (isGameEnded() || replay != null) {
                 return;
             }
 
             switch (keyCode) {
-                case UP -> movingUp = false;
-                case DOWN -> movingDown = false;
-                case LEFT -> movingLeft = false;
-                case RIGHT -> movingRight = false;
+                case UP -> world.setMovingUp(false);
+                case DOWN -> world.setMovingDown(false);
+                case LEFT -> world.setMovingLeft(false);
+                case RIGHT -> world.setMovingRight(false);
                 default -> {
                 }
             }
-            if (!movingUp && !movingDown && !movingLeft && !movingRight) {
-                walkingAnimation.stop();
-                // Reset to idle image
-                character.setImage(new Image(getClass().getResource("/player_idle.png").toExternalForm()));
-            }
         });
     }
 
     /**
-     * Moves the player character based on input.
+     * Gets the input an arrow key stands for.
+     *
+     * @param keyCode The key.
+     * @return The input, or null if the key is not an arrow key.
      */
-    private void moveCharacter() {
-        double oldX = characterX;
-        double oldY = characterY;
+    private static Input toInput(KeyCode keyCode) {
+        return switch (keyCode) {
+            case UP -> Input.UP;
+            case DOWN -> Input.DOWN;
+            case LEFT -> Input.LEFT;
+            case RIGHT -> Input.RIGHT;
+            default -> null;
+        };
+    }
 
-        if (movingUp) {
-            characterY -= SPEED;
-        }
-        if (movingDown) {
-            characterY += SPEED;
+    /**
+     * Runs a frame in client mode: sends the pressed inputs, applies the newest snapshot from the
+     * server and draws the world between the last two snapshots. The server restarts finished
+     * games by itself, so a game over only shows a message until the next game arrives.
+     *
+     * @param now The time of the frame in nanoseconds.
+     */
+    private void updateClient(long now) {
+        long frameStart = System.nanoTime();
+        try {
+            client.sendInput(clientInputs);
+            if (client.poll(now)) {
+                // The server started a new game on another map
+                initializeGame();
+                return;
+            }
+        } catch (IOException e) {
+            System.err.println("Lost the connection to the server: " + e.getMessage());
+            timer.stop();
+            return;
         }
-        if (movingLeft) {
-            characterX -= SPEED;
+        long renderStart = System.nanoTime();
+        metrics.record(Phase.SIMULATION, renderStart - frameStart);
+
+        renderer.render(client.getAlpha(now));
+        long hudStart = System.nanoTime();
+        metrics.record(Phase.RENDER, hudStart - renderStart);
+
+        updateHud();
+        if (metrics.endFrame(now, world) && showMetrics) {
+            sceneSync.updateMetrics(metrics.format());
         }
-        if (movingRight) {
-            characterX += SPEED;
+        long syncStart = System.nanoTime();
+        metrics.record(Phase.HUD, syncStart - hudStart);
+
+        sceneSync.apply();
+        long frameEnd = System.nanoTime();
+        metrics.record(Phase.SCENE_SYNC, frameEnd - syncStart);
+        metrics.record(Phase.FRAME, frameEnd - frameStart);
+        if (world.isGameOver() && gameOverText == null) {
+            gameOverText = new Text("GAME OVER\nWaiting for the server to start the next game");
+            gameOverText.setFill(Color.RED);
+            gameOverText.setFont(Font.font("Verdana", 50));
+            gameOverText.setX(GAME_WIDTH / 2 - 200);
+            gameOverText.setY(GAME_HEIGHT / 2);
+            getChildren().add(gameOverText);
         }
+    }
 
-        // Calculate velocity
-        playerVelocityX = characterX - oldX;
-        playerVelocityY = characterY - oldY;
-
-        // Keep the character within bounds using Math.clamp (Java 21 feature)
-        characterX = Math.clamp(characterX, 0, GAME_WIDTH - CHARACTER_SIZE);
-        characterY = Math.clamp(characterY, 0, GAME_HEIGHT - CHARACTER_SIZE);
-
-        character.setX(characterX);
-        character.setY(characterY);
-
-        // Handle collisions with buildings
-        for (Building building : buildings) {
-            if (character.getBoundsInParent().intersects(building.getShape().getBoundsInParent())) {
-                characterX = oldX;
-                characterY = oldY;
-                character.setX(characterX);
-                character.setY(characterY);
-                // Reset velocity due to collision
-                playerVelocityX = 0;
-                playerVelocityY = 0;
-                break;
+    /**
+     * Times the CSS and layout part of every scene pulse, which runs after the animation timer.
+     */
+    private void addPulseListeners() {
+        sceneProperty().addListener((observable, oldScene, scene) -> {
+            if (scene != null) {
+                scene.addPreLayoutPulseListener(() -> pulseStart = System.nanoTime());
+                scene.addPostLayoutPulseListener(() -> metrics.record(Phase.PULSE, System.nanoTime() - pulseStart));
             }
-        }
+        });
     }
 
     /**
-     * Creates the walking animation for the player.
+     * Shows or hides the metrics overlay.
      */
-    private Animation createWalkingAnimation() {
-        // Load the walking frames
-        var walkingFrames = new Image[]{
-                new Image(getClass().getResource("/player_walk1.png").toExternalForm()),
-                new Image(getClass().getResource("/player_walk2.png").toExternalForm())
-        };
-
-        // Create a Timeline to cycle through the frames
-        var timeline = new Timeline();
-        timeline.setCycleCount(Animation.INDEFINITE);
-        var frameDuration = Duration.millis(200); // Adjust the frame duration as needed
-
-        var keyFrame1 = new KeyFrame(Duration.ZERO, e -> character.setImage(walkingFrames[0]));
-        var keyFrame2 = new KeyFrame(frameDuration, e -> character.setImage(walkingFrames[1]));
-
-        timeline.getKeyFrames().addAll(keyFrame1, keyFrame2);
-
-        return timeline;
+    private void toggleMetrics() {
+        showMetrics = !showMetrics;
+        if (showMetrics) {
+            sceneSync.updateMetrics(metrics.format());
+            sceneSync.apply();
+        }
+        metricsText.setVisible(showMetrics);
     }
 
     /**
-     * Moves all NPCs towards the player.
+     * Saves the current game to the quick save file.
      */
-    private void moveNPCs() {
-        for (NPC npc : npcs) {
-            npc.moveTowardsTarget();
-            npc.updatePosition();
+    private void quickSave() {
+        if (client != null) {
+            return;
+        }
+        try {
+            WorldSnapshot.save(world, QUICK_SAVE_FILE);
+        } catch (IOException e) {
+            System.err.println("Could not save the game: " + e.getMessage());
         }
     }
 
     /**
-     * Handles collisions between the player and NPCs.
+     * Replaces the current game with the quick save and continues it. A recorded game ends here,
+     * since the loaded game cannot be replayed from a seed; recording resumes with the next game.
      */
-    private void handleCollisions() {
-        if (gameOver) {
+    private void quickLoad() {
+        if (replay != null || client != null) {
+            return;
+        }
+        if (recorder != null) {
+            recorder.endGame(world);
+        }
+        try {
+            WorldSnapshot.load(world, QUICK_SAVE_FILE);
+        } catch (IOException e) {
+            System.err.println("Could not load the game: " + e.getMessage());
             return;
         }
 
-        // Handle collision with NPCs
-        for (NPC npc : npcs) {
-            if (character.getBoundsInParent().intersects(npc.getShape().getBoundsInParent())) {
-                gameOver = true;
-                showGameOver();
-                break;
-            }
+        // Show the loaded game and resume the loop if it stopped at a game over
+        getChildren().remove(gameOverText);
+        renderer.render(1);
+        updateHud();
+        sceneSync.apply();
+        timer.stop();
+        clock.reset();
+        if (!world.isGameOver()) {
+            timer.start();
+        } else {
+            showGameOver();
         }
     }
 
@@ -516,12 +458,20 @@ public class GamePanel extends Pane {
     private void showGameOver() {
         // Stop the timer
         timer.stop();
+        if (recorder != null) {
+            recorder.endGame(world);
+        }
 
-        // Stop animations
-        walkingAnimation.stop();
-
-        // Display GAME OVER message
-        gameOverText = new Text("GAME OVER\nPress SPACE or ENTER to restart");
+        // Display GAME OVER message, or how the replayed game compares to the recording
+        String message = "GAME OVER\nPress SPACE or ENTER to restart";
+        if (replayFinished) {
+            message = "REPLAY FINISHED";
+        } else if (replay != null) {
+            message = "REPLAY " + (!replay.hasRecordedEnd() ? "UNCHECKED"
+                    : replay.matchesRecording(world) ? "IDENTICAL" : "DIVERGED")
+                    + "\nPress SPACE or ENTER for the next game";
+        }
+        gameOverText = new Text(message);
         gameOverText.setFill(Color.RED);
         gameOverText.setFont(Font.font("Verdana", 50));
         gameOverText.setX(GAME_WIDTH / 2 - 200);
@@ -530,158 +480,72 @@ public class GamePanel extends Pane {
     }
 
     /**
-     * Updates the on-screen timer.
+     * Checks if the current game has ended, either by a game over or, in a replay, by reaching the
+     * end of the recorded game.
+     *
+     * @return True if no more steps should be simulated; false otherwise.
      */
-    private void updateTimer() {
-        long currentTime = System.currentTimeMillis();
-        long elapsedTime = currentTime - startTime;
-        long elapsedSeconds = elapsedTime / 1000;
-        long minutes = elapsedSeconds / 60;
-        long seconds = elapsedSeconds % 60;
-        timerText.setText(String.format("Time: %02d:%02d", minutes, seconds));
+    private boolean isGameEnded() {
+        return world.isGameOver() || replay != null && (replayFinished || replay.isGameFinished(world));
     }
 
     /**
-     * Updates the NPC count display.
+     * Starts recording into a file, beginning with a new game.
+     *
+     * @param recorder The recorder to write the games to.
      */
-    private void updateNpcCount() {
-        npcCountText.setText("NPCs: " + npcs.size());
+    public void record(Recorder recorder) {
+        this.recorder = recorder;
+        initializeGame();
     }
 
     /**
-     * Checks if peace time has ended.
+     * Plays back recorded games instead of taking keyboard input, beginning with the first game.
+     *
+     * @param replay The recorded games.
      */
-    private void checkPeaceTime() {
-        long currentTime = System.currentTimeMillis();
-        if (currentTime - peaceStartTime >= PEACE_TIME_DURATION) {
-            peaceTime = false;
-            npcs.forEach(npc -> npc.setPeaceTime(false));
-        }
+    public void replay(Replay replay) {
+        this.replay = replay;
+        world = null;
+        initializeGame();
     }
 
     /**
-     * Checks if it's time to add new NPCs and increases spawn count every interval.
+     * Shows the world of a game server instead of a local game, from its next snapshot on.
+     *
+     * @param client The connection to the server.
      */
-    private void checkAndAddNPCs() {
-        long currentTime = System.currentTimeMillis();
-
-        // Spawn NPCs at intervals
-        if (currentTime - lastNPCSpawnTime >= NPC_SPAWN_INTERVAL) {
-            for (int i = 0; i < npcsToSpawn; i++) {
-                addNewNPC();
-            }
-            lastNPCSpawnTime = currentTime;
-        }
-
-        // Increase the number of NPCs to spawn every interval
-        if (currentTime >= nextSpawnIncreaseTime) {
-            npcsToSpawn++;
-            nextSpawnIncreaseTime += SPAWN_INCREASE_INTERVAL;
-        }
+    public void connect(GameClient client) {
+        this.client = client;
+        world = null;
+        initializeGame();
     }
 
     /**
-     * Adds a new NPC near the player to the game.
+     * Ends the game being recorded, if any, and closes the recording and the server connection.
+     *
+     * @throws IOException If the recording cannot be written or the connection cannot be closed.
      */
-    private void addNewNPC() {
-        var random = ThreadLocalRandom.current();
-        int attempts = 0;
-        boolean overlaps;
-        double x = 0, y = 0;
-
-        // Define minimum and maximum spawn distances from the player
-        final double MIN_SPAWN_DISTANCE = 200; // Minimum distance from the player
-        final double MAX_SPAWN_DISTANCE = 400; // Maximum distance from the player
-
-        do {
-            overlaps = false;
-
-            // Generate a random angle
-            double angle = random.nextDouble(0, 2 * Math.PI);
-
-            // Generate a random distance within the specified range
-            double distance = random.nextDouble(MIN_SPAWN_DISTANCE, MAX_SPAWN_DISTANCE);
-
-            // Calculate NPC position based on angle and distance from player
-            x = characterX + distance * Math.cos(angle);
-            y = characterY + distance * Math.sin(angle);
-
-            // Ensure the NPC is within the game bounds
-            x = Math.clamp(x, 0, GAME_WIDTH - 40);
-            y = Math.clamp(y, 0, GAME_HEIGHT - 40);
-
-            var npcShape = new Rectangle(x, y, 40, 40);
-
-            // Check overlap with buildings
-            for (Building building : buildings) {
-                if (npcShape.getBoundsInParent()
-                        .intersects(building.getShape().getBoundsInParent())) {
-                    overlaps = true;
-                    break;
-                }
-            }
-
-            // Check overlap with existing NPCs
-            if (!overlaps) {
-                for (NPC existingNpc : npcs) {
-                    if (npcShape.getBoundsInParent()
-                            .intersects(existingNpc.getShape().getBoundsInParent())) {
-                        overlaps = true;
-                        break;
-                    }
-                }
-            }
-
-            attempts++;
-        } while ((overlaps || distanceToEdge(x, y) < MIN_SPAWN_DISTANCE) && attempts < 100);
-
-        if (attempts < 100) {
-            var npc = new NPC(x, y, this);
-            // Set peaceTime flag according to current game state
-            npc.setPeaceTime(this.peaceTime);
-            npcs.add(npc);
-            getChildren().add(npc.getShape());
+    public void close() throws IOException {
+        if (recorder != null) {
+            recorder.endGame(world);
+            recorder.close();
+        }
+        if (client != null) {
+            client.close();
         }
     }
 
     /**
-     * Calculates the minimum distance from the given point to the edges of the game area.
-     *
-     * @param x The x-coordinate.
-     * @param y The y-coordinate.
-     * @return The minimum distance to the edge.
+     * Records the on-screen timer and NPC count for the scene sync stage.
      */
-    private double distanceToEdge(double x, double y) {
-        double distanceRight = GAME_WIDTH - x;
-        double distanceBottom = GAME_HEIGHT - y;
-        return Math.min(Math.min(x, distanceRight), Math.min(y, distanceBottom));
-    }
-
-    public double getCharacterX() {
-        return characterX;
-    }
-
-    public double getCharacterY() {
-        return characterY;
-    }
-
-    public double getPlayerVelocityX() {
-        return playerVelocityX;
-    }
-
-    public double getPlayerVelocityY() {
-        return playerVelocityY;
-    }
-
-    public List<Building> getBuildings() {
-        return buildings;
-    }
-
-    public List<NPC> getNpcs() {
-        return npcs;
+    private void updateHud() {
+        long elapsedTime = (long) world.getTime();
+        sceneSync.updateTimer(elapsedTime / 1000);
+        sceneSync.updateNpcCount(world.getNpcs().size());
     }
 
-    public boolean isPeaceTime() {
-        return peaceTime;
+    public World getWorld() {
+        return world;
     }
 }
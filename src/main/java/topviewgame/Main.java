@@ -4,15 +4,61 @@ package topviewgame;
 import javafx.application.Application;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
+import topviewgame.net.GameClient;
+import topviewgame.render.RenderMode;
+import topviewgame.replay.Recorder;
+import topviewgame.replay.Replay;
+import topviewgame.world.SimulationClock;
+import topviewgame.world.SteeringMode;
+import topviewgame.world.World;
+import topviewgame.world.WorldSettings;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
 
 public class Main extends Application {
+    private GamePanel gamePane;
+
     public static void main(String[] args) {
         launch(args);
     }
 
     @Override
-    public void start(Stage primaryStage) {
-        GamePanel gamePane = new GamePanel();
+    public void start(Stage primaryStage) throws IOException {
+        // Select the renderer with --renderer=nodes|canvas
+        var renderMode = RenderMode.parse(getParameters().getNamed().get("renderer"));
+        // Run the simulation faster or slower than real time with --time-scale=<factor>
+        var clock = new SimulationClock();
+        clock.setTimeScale(Double.parseDouble(getParameters().getNamed().getOrDefault("time-scale", "1")));
+        // Make the world larger than the screen with --world-scale=<factor>
+        var worldScale = Double.parseDouble(getParameters().getNamed().getOrDefault("world-scale", "1"));
+        var named = getParameters().getNamed();
+        var settings = new WorldSettings(
+                // Move the simulation level of detail boundaries with --lod-mid=<px> and --lod-far=<px>
+                Double.parseDouble(named.getOrDefault("lod-mid", String.valueOf(World.DEFAULT_LOD_MID_DISTANCE))),
+                Double.parseDouble(named.getOrDefault("lod-far", String.valueOf(World.DEFAULT_LOD_FAR_DISTANCE))),
+                // Let NPCs steer through crowds with --steering=crowd (default: --steering=probe)
+                SteeringMode.parse(named.get("steering")),
+                // Spread spawn bursts with --job-budget=<microseconds per step>; 0 runs all work when it falls due
+                Integer.parseInt(named.getOrDefault("job-budget", String.valueOf(World.DEFAULT_JOB_BUDGET_MICROS))));
+        gamePane = new GamePanel(renderMode, clock, worldScale, settings);
+        // Record the games into a file with --record=<file>, or play a recording with --replay=<file>
+        if (named.containsKey("record")) {
+            gamePane.record(new Recorder(Path.of(named.get("record"))));
+        }
+        if (named.containsKey("replay")) {
+            gamePane.replay(Replay.load(Path.of(named.get("replay"))));
+        }
+        // Join a game server with --connect=<host>:<port>
+        if (named.containsKey("connect")) {
+            String address = named.get("connect");
+            int colon = address.lastIndexOf(':');
+            gamePane.connect(GameClient.connect(
+                    new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))),
+                    TimeUnit.SECONDS.toNanos(5), true));
+        }
         Scene scene = new Scene(gamePane, 800, 600);
 
         primaryStage.setTitle("Top View Game");
@@ -21,4 +67,9 @@ public class Main extends Application {
 
         gamePane.requestFocus();
     }
+
+    @Override
+    public void stop() throws IOException {
+        gamePane.close();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,287 @@
+package topviewgame.env;
+
+import topviewgame.world.Input;
+import topviewgame.world.NpcStore;
+import topviewgame.world.ObstacleIndex;
+import topviewgame.world.World;
+
+import java.util.SplittableRandom;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * A batch of independent headless games for training and evaluating bots, stepped together.
+ * <p>
+ * Every game is a {@link World} with the same rules as the game on screen. {@link #step(int[])}
+ * applies one action per game, advances each game by a fixed number of simulation steps and writes
+ * the observations, rewards and done flags into buffers that are allocated once and overwritten by
+ * every call, so a training loop can read them without copying. Games are stepped in shards of
+ * {@link #SHARD_SIZE} on the common fork/join pool, like the NPC movement of a single world; each
+ * game only depends on its own seeds and actions, so the results do not depend on the number of
+ * cores.
+ * <p>
+ * An action holds the pressed inputs, one bit per {@link Input} ordinal. The reward is the time
+ * survived during the step in seconds, so the return of an episode is its survival time. A game
+ * that ends is reset in place with the next seed of its seed sequence: the world with its chunks,
+ * NPC storage, obstacle and spawn indices and flow field is rebuilt in place, and only the buildings
+ * of the new map are created as new objects. The observations of a finished game
+ * are those of its next episode, and {@link #getEpisodeTimes()} holds the survival time of the
+ * episode that ended.
+ * <p>
+ * The observation of a game is {@link #OBSERVATION_SIZE} floats:
+ * <ul>
+ *     <li>the player position relative to the world size, from 0 to 1;</li>
+ *     <li>the player velocity relative to the player speed, from -1 to 1;</li>
+ *     <li>1 during peace time, 0 otherwise;</li>
+ *     <li>for up, down, left and right, 1 if a step in that direction is blocked, 0 otherwise;</li>
+ *     <li>for the {@link #NEAREST_NPCS} NPCs nearest to the player within
+ *     {@link #OBSERVATION_RADIUS}, nearest first, the offset from the player relative to the
+ *     radius and 1; missing NPCs are all zeros.</li>
+ * </ul>
+ */
+public final class VectorEnv {
+    // Number of games stepped by one parallel task
+    public static final int SHARD_SIZE = 8;
+
+    // NPCs in the observation and how far from the player they are seen
+    public static final int NEAREST_NPCS = 8;
+    public static final double OBSERVATION_RADIUS = 400;
+
+    // Floats per observation: position, velocity, peace time, blocked directions and the nearest NPCs
+    public static final int OBSERVATION_SIZE = 2 + 2 + 1 + 4 + 3 * NEAREST_NPCS;
+
+    // Offsets of the player box probed for blocked directions, in up, down, left, right order
+    private static final double[] PROBE_X = {0, 0, -World.SPEED, World.SPEED};
+    private static final double[] PROBE_Y = {-World.SPEED, World.SPEED, 0, 0};
+
+    // NPCs considered per observation at most; more crowded surroundings are cut off
+    private static final int MAX_CANDIDATES = 1024;
+
+    private static final Input[] INPUTS = Input.values();
+
+    private final World[] worlds;
+    private final SplittableRandom[] seeds;
+    private final int stepsPerAction;
+
+    // Results of the last step, one entry (or one observation) per game
+    private final float[] observations;
+    private final float[] rewards;
+    private final boolean[] dones;
+    private final float[] episodeTimes;
+
+    // Scratch space for finding the nearest NPCs, one set per shard
+    private final int[][] candidates;
+    private final double[][] nearestDistances;
+    private final int[][] nearest;
+
+    // Actions of the running step and the task stepping one shard
+    private int[] actions;
+    private final IntConsumer stepShard = this::stepShard;
+
+    /**
+     * Constructs a batch of games and starts their first episodes.
+     *
+     * @param count          The number of games.
+     * @param width          The width of every world.
+     * @param height         The height of every world.
+     * @param seed           The seed of the seed sequences of all games.
+     * @param stepsPerAction The number of simulation steps every action is held for.
+     */
+    public VectorEnv(int count, double width, double height, long seed, int stepsPerAction) {
+        if (count < 1 || stepsPerAction < 1) {
+            throw new IllegalArgumentException("Need at least one game and one step per action");
+        }
+        this.stepsPerAction = stepsPerAction;
+        worlds = new World[count];
+        seeds = new SplittableRandom[count];
+        var root = new SplittableRandom(seed);
+        for (int i = 0; i < count; i++) {
+            worlds[i] = new World(width, height);
+            seeds[i] = root.split();
+        }
+        observations = new float[count * OBSERVATION_SIZE];
+        rewards = new float[count];
+        dones = new boolean[count];
+        episodeTimes = new float[count];
+
+        int shards = (count + SHARD_SIZE - 1) / SHARD_SIZE;
+        candidates = new int[shards][MAX_CANDIDATES];
+        nearestDistances = new double[shards][NEAREST_NPCS];
+        nearest = new int[shards][NEAREST_NPCS];
+        reset();
+    }
+
+    /**
+     * Starts a new episode in every game and observes them. Rewards and done flags are cleared.
+     */
+    public void reset() {
+        for (int i = 0; i < worlds.length; i++) {
+            worlds[i].reset(seeds[i].nextLong());
+            rewards[i] = 0;
+            dones[i] = false;
+            episodeTimes[i] = 0;
+            observe(i, i / SHARD_SIZE);
+        }
+    }
+
+    /**
+     * Applies an action to every game, holds it for the configured number of simulation steps and
+     * observes the results. Games that end are reset for their next episode.
+     *
+     * @param actions The pressed inputs for each game, one bit per {@link Input} ordinal.
+     */
+    public void step(int[] actions) {
+        if (actions.length != worlds.length) {
+            throw new IllegalArgumentException("Expected " + worlds.length + " actions, got " + actions.length);
+        }
+        this.actions = actions;
+        int shards = candidates.length;
+        if (shards == 1) {
+            stepShard(0);
+        } else {
+            IntStream.range(0, shards).parallel().forEach(stepShard);
+        }
+    }
+
+    /**
+     * Steps the games of one shard.
+     *
+     * @param shard The index of the shard.
+     */
+    private void stepShard(int shard) {
+        int end = Math.min(worlds.length, (shard + 1) * SHARD_SIZE);
+        for (int i = shard * SHARD_SIZE; i < end; i++) {
+            World world = worlds[i];
+            int action = actions[i];
+            for (Input input : INPUTS) {
+                boolean pressed = (action & 1 << input.ordinal()) != 0;
+                if (world.isPressed(input) != pressed) {
+                    world.applyInput(input, pressed);
+                }
+            }
+
+            int survived = 0;
+            while (survived < stepsPerAction && !world.isGameOver()) {
+                world.tick();
+                if (!world.isGameOver()) {
+                    survived++;
+                }
+            }
+            rewards[i] = (float) (survived * World.STEP_MILLIS / 1000);
+            dones[i] = world.isGameOver();
+            if (dones[i]) {
+                episodeTimes[i] = (float) (world.getTime() / 1000);
+                world.reset(seeds[i].nextLong());
+            }
+            observe(i, shard);
+        }
+    }
+
+    /**
+     * Writes the observation of a game into the observation buffer.
+     *
+     * @param i     The index of the game.
+     * @param shard The shard whose scratch space to use.
+     */
+    private void observe(int i, int shard) {
+        World world = worlds[i];
+        double playerX = world.getCharacterX();
+        double playerY = world.getCharacterY();
+        int offset = i * OBSERVATION_SIZE;
+        observations[offset++] = (float) (playerX / world.getWidth());
+        observations[offset++] = (float) (playerY / world.getHeight());
+        observations[offset++] = (float) (world.getPlayerVelocityX() / World.SPEED);
+        observations[offset++] = (float) (world.getPlayerVelocityY() / World.SPEED);
+        observations[offset++] = world.isPeaceTime() ? 1 : 0;
+
+        // Buildings and map edges next to the player
+        ObstacleIndex obstacles = world.getObstacles();
+        for (int d = 0; d < PROBE_X.length; d++) {
+            double x = playerX + PROBE_X[d];
+            double y = playerY + PROBE_Y[d];
+            boolean blocked = x < 0 || y < 0 || x > world.getWidth() - World.CHARACTER_SIZE
+                    || y > world.getHeight() - World.CHARACTER_SIZE
+                    || obstacles.intersects(x, y, World.CHARACTER_SIZE, World.CHARACTER_SIZE);
+            observations[offset++] = blocked ? 1 : 0;
+        }
+
+        // Nearest NPCs, kept sorted by distance by insertion
+        NpcStore npcs = world.getNpcs();
+        int[] found = candidates[shard];
+        double[] distances = nearestDistances[shard];
+        int[] closest = nearest[shard];
+        int count = npcs.query(playerX - OBSERVATION_RADIUS, playerY - OBSERVATION_RADIUS,
+                2 * OBSERVATION_RADIUS, 2 * OBSERVATION_RADIUS, found);
+        int kept = 0;
+        for (int k = 0; k < count; k++) {
+            int npc = found[k];
+            double dx = npcs.getX(npc) - playerX;
+            double dy = npcs.getY(npc) - playerY;
+            double distance = dx * dx + dy * dy;
+            if (distance > OBSERVATION_RADIUS * OBSERVATION_RADIUS
+                    || kept == NEAREST_NPCS && distance >= distances[kept - 1]) {
+                continue;
+            }
+            int slot = kept < NEAREST_NPCS ? kept++ : kept - 1;
+            while (slot > 0 && distances[slot - 1] > distance) {
+                distances[slot] = distances[slot - 1];
+                closest[slot] = closest[slot - 1];
+                slot--;
+            }
+            distances[slot] = distance;
+            closest[slot] = npc;
+        }
+        for (int k = 0; k < NEAREST_NPCS; k++) {
+            boolean present = k < kept;
+            observations[offset++] = present ? (float) ((npcs.getX(closest[k]) - playerX) / OBSERVATION_RADIUS) : 0;
+            observations[offset++] = present ? (float) ((npcs.getY(closest[k]) - playerY) / OBSERVATION_RADIUS) : 0;
+            observations[offset++] = present ? 1 : 0;
+        }
+    }
+
+    public int size() {
+        return worlds.length;
+    }
+
+    public World getWorld(int i) {
+        return worlds[i];
+    }
+
+    /**
+     * Gets the observations of all games, {@link #OBSERVATION_SIZE} floats per game in game order.
+     * The buffer is overwritten by every step.
+     *
+     * @return The observation buffer.
+     */
+    public float[] getObservations() {
+        return observations;
+    }
+
+    /**
+     * Gets the rewards of the last step: the seconds each game survived during it.
+     *
+     * @return The reward buffer.
+     */
+    public float[] getRewards() {
+        return rewards;
+    }
+
+    /**
+     * Gets the done flags of the last step: true for games that ended and were reset.
+     *
+     * @return The done buffer.
+     */
+    public boolean[] getDones() {
+        return dones;
+    }
+
+    /**
+     * Gets the survival time in seconds of the episode each game finished in the last step; only
+     * meaningful where the done flag is set.
+     *
+     * @return The episode time buffer.
+     */
+    public float[] getEpisodeTimes() {
+        return episodeTimes;
+    }
+}
@@ -0,0 +1,107 @@
+package topviewgame.headless;
+
+import topviewgame.world.AllocationMeter;
+import topviewgame.world.World;
+
+/**
+ * Verifies that simulation ticks do not allocate on the heap.
+ * <p>
+ * Runs headless worlds with a scripted player, measures the bytes allocated by each tick with
+ * the thread MXBean and exits with status 1 if the measured ticks allocated anything. The first
+ * world fits the screen; the second is streamed in chunks, so the player keeps moving the simulated
+ * region. Ticks that end the game are skipped, since restarting a game legitimately builds a new
+ * map, and so are ticks that generate a chunk, which creates the buildings of the chunk.
+ */
+public class AllocationCheck {
+    private static final double WIDTH = 1920;
+    private static final double HEIGHT = 1080;
+    private static final double STREAMED_SCALE = 10;
+    private static final int WARMUP_TICKS = 50_000;
+    private static final int MEASURED_TICKS = 20_000;
+
+    public static void main(String[] args) {
+        var meter = new AllocationMeter();
+        if (meter.currentThreadAllocatedBytes() < 0) {
+            System.err.println("Thread allocation measurement is not supported by this JVM.");
+            System.exit(1);
+        }
+
+        // The player walks short legs on the screen-sized world and long legs across the streamed one,
+        // and cannot be caught there, so it gets far enough to move the simulated region
+        boolean allocated = check(meter, "Screen-sized world", new World(WIDTH, HEIGHT), 120, 90);
+        var streamed = new World(WIDTH * STREAMED_SCALE, HEIGHT * STREAMED_SCALE);
+        streamed.setInvulnerable(true);
+        allocated |= check(meter, "Streamed world", streamed, 1500, 700);
+        if (allocated) {
+            System.err.println("The simulation tick allocated on the heap.");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Warms up a world, then measures the bytes allocated by its ticks and prints them.
+     *
+     * @param meter            The allocation meter.
+     * @param name             The name of the world in the report.
+     * @param world            The world.
+     * @param horizontalTicks  The ticks the player walks left or right before turning.
+     * @param verticalTicks    The ticks the player walks up or down before turning.
+     * @return True if the measured ticks allocated anything; false otherwise.
+     */
+    private static boolean check(AllocationMeter meter, String name, World world, int horizontalTicks,
+                                 int verticalTicks) {
+        // Let the JIT compile the hot path before measuring
+        for (int tick = 0; tick < WARMUP_TICKS; tick++) {
+            step(world, tick, horizontalTicks, verticalTicks);
+        }
+
+        long allocatedBytes = 0;
+        int measuredTicks = 0;
+        int regionMoves = 0;
+        for (int tick = 0; tick < MEASURED_TICKS; tick++) {
+            int capacity = world.getNpcs().capacity();
+            long generatedChunks = world.getChunks().getGeneratedChunks();
+            double regionX = world.getRegionX();
+            double regionY = world.getRegionY();
+            long before = meter.currentThreadAllocatedBytes();
+            boolean restarted = step(world, tick, horizontalTicks, verticalTicks);
+            long after = meter.currentThreadAllocatedBytes();
+
+            // Restarts, chunk generation and NPC store growth are not part of the per-tick budget
+            if (!restarted && world.getChunks().getGeneratedChunks() == generatedChunks
+                    && world.getNpcs().capacity() == capacity) {
+                allocatedBytes += after - before;
+                measuredTicks++;
+                if (world.getRegionX() != regionX || world.getRegionY() != regionY) {
+                    regionMoves++;
+                }
+            }
+        }
+
+        System.out.printf("%s: measured %d ticks with %d region moves: %d bytes allocated (%.2f bytes/tick)%n",
+                name, measuredTicks, regionMoves, allocatedBytes, (double) allocatedBytes / Math.max(1, measuredTicks));
+        return allocatedBytes > 0;
+    }
+
+    /**
+     * Moves the player back and forth and advances the world by one tick.
+     *
+     * @param world           The world.
+     * @param tick            The number of the tick.
+     * @param horizontalTicks The ticks the player walks left or right before turning.
+     * @param verticalTicks   The ticks the player walks up or down before turning.
+     * @return True if the world had to be restarted after a game over; false otherwise.
+     */
+    private static boolean step(World world, int tick, int horizontalTicks, int verticalTicks) {
+        boolean left = (tick / horizontalTicks) % 2 == 0;
+        world.setMovingLeft(left);
+        world.setMovingRight(!left);
+        world.setMovingUp((tick / verticalTicks) % 2 == 0);
+        world.tick();
+        if (world.isGameOver()) {
+            world.reset();
+            return true;
+        }
+        return false;
+    }
+}
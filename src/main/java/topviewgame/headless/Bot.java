@@ -0,0 +1,180 @@
+package topviewgame.headless;
+
+import topviewgame.world.World;
+
+import java.util.SplittableRandom;
+
+/**
+ * Drives the player of a headless world through its movement inputs, like a player at the keyboard.
+ * <p>
+ * All decisions come from a seeded random source and the world state, so the same seed gives the
+ * same inputs for the same world.
+ */
+public class Bot {
+    /**
+     * Available driving strategies.
+     */
+    public enum Strategy {
+        /**
+         * Runs away from the NPCs close to the player, wandering when none are near.
+         */
+        EVADE,
+        /**
+         * Runs in a wide circle around the center of the map.
+         */
+        CIRCLE,
+        /**
+         * Picks a random direction, including standing still, every half to two seconds.
+         */
+        RANDOM;
+
+        /**
+         * Parses a strategy name, case-insensitively.
+         *
+         * @param name The name of the strategy, or null.
+         * @return The matching strategy, or {@link #EVADE} if the name is null.
+         */
+        public static Strategy parse(String name) {
+            return name == null ? EVADE : valueOf(name.toUpperCase());
+        }
+    }
+
+    // NPCs closer than this push an evading bot away
+    private static final double EVADE_RADIUS = 300;
+
+    // Range of the time a random direction is kept, in milliseconds
+    private static final double MIN_WANDER_TIME = 500;
+    private static final double MAX_WANDER_TIME = 2000;
+
+    // A direction component smaller than this fraction of the direction is not pressed (about 22.5 degrees)
+    private static final double AXIS_THRESHOLD = 0.38;
+
+    private final Strategy strategy;
+    private final SplittableRandom random;
+
+    // Current random walk direction and when to pick the next one
+    private double wanderX;
+    private double wanderY;
+    private double nextWanderTime;
+
+    /**
+     * Constructs a new bot.
+     *
+     * @param strategy The driving strategy.
+     * @param seed     The seed for all random decisions.
+     */
+    public Bot(Strategy strategy, long seed) {
+        this.strategy = strategy;
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Sets the movement inputs of the world for the next tick.
+     *
+     * @param world The world to drive.
+     */
+    public void drive(World world) {
+        switch (strategy) {
+            case EVADE -> evade(world);
+            case CIRCLE -> circle(world);
+            case RANDOM -> wander(world);
+        }
+    }
+
+    /**
+     * Moves away from the nearby NPCs, weighting closer NPCs more.
+     *
+     * @param world The world.
+     */
+    private void evade(World world) {
+        var npcs = world.getNpcs();
+        double playerX = world.getCharacterX();
+        double playerY = world.getCharacterY();
+        double awayX = 0;
+        double awayY = 0;
+        for (int i = 0; i < npcs.size(); i++) {
+            double deltaX = playerX - npcs.getX(i);
+            double deltaY = playerY - npcs.getY(i);
+            double distanceSquared = deltaX * deltaX + deltaY * deltaY;
+            if (distanceSquared < EVADE_RADIUS * EVADE_RADIUS && distanceSquared > 0) {
+                awayX += deltaX / distanceSquared;
+                awayY += deltaY / distanceSquared;
+            }
+        }
+        if (awayX == 0 && awayY == 0) {
+            wander(world);
+            return;
+        }
+
+        // Steer back towards the center when pushed against the edge of the map
+        awayX += edgePush(playerX, world.getWidth());
+        awayY += edgePush(playerY, world.getHeight());
+        press(world, awayX, awayY);
+    }
+
+    /**
+     * Moves along a circle around the center of the map, correcting towards the circle.
+     *
+     * @param world The world.
+     */
+    private void circle(World world) {
+        double radius = Math.min(world.getWidth(), world.getHeight()) / 3;
+        double deltaX = world.getCharacterX() - world.getWidth() / 2;
+        double deltaY = world.getCharacterY() - world.getHeight() / 2;
+        double distance = Math.max(1, Math.hypot(deltaX, deltaY));
+
+        // Tangent plus a radial correction towards the circle
+        double correction = (radius - distance) / radius;
+        double directionX = -deltaY / distance + correction * deltaX / distance;
+        double directionY = deltaX / distance + correction * deltaY / distance;
+        press(world, directionX, directionY);
+    }
+
+    /**
+     * Keeps a random direction for a random time, then picks a new one.
+     *
+     * @param world The world.
+     */
+    private void wander(World world) {
+        if (world.getTime() >= nextWanderTime) {
+            int direction = random.nextInt(9);
+            wanderX = direction % 3 - 1;
+            wanderY = direction / 3 - 1;
+            nextWanderTime = world.getTime() + random.nextDouble(MIN_WANDER_TIME, MAX_WANDER_TIME);
+        }
+        press(world, wanderX, wanderY);
+    }
+
+    /**
+     * Presses the arrow keys closest to the given direction.
+     *
+     * @param world      The world.
+     * @param directionX The x-component of the direction.
+     * @param directionY The y-component of the direction.
+     */
+    private static void press(World world, double directionX, double directionY) {
+        double length = Math.hypot(directionX, directionY);
+        double threshold = AXIS_THRESHOLD * length;
+        world.setMovingLeft(length > 0 && directionX < -threshold);
+        world.setMovingRight(length > 0 && directionX > threshold);
+        world.setMovingUp(length > 0 && directionY < -threshold);
+        world.setMovingDown(length > 0 && directionY > threshold);
+    }
+
+    /**
+     * Computes a push away from the edges of one axis of the map.
+     *
+     * @param position The position on the axis.
+     * @param size     The size of the map on the axis.
+     * @return A positive push near the low edge, a negative one near the high edge, else 0.
+     */
+    private static double edgePush(double position, double size) {
+        if (position < EVADE_RADIUS) {
+            return 1 / Math.max(1, position);
+        }
+        if (position > size - EVADE_RADIUS) {
+            return -1 / Math.max(1, size - position);
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,235 @@
+package topviewgame.headless;
+
+import topviewgame.metrics.Histogram;
+import topviewgame.net.GameClient;
+import topviewgame.net.GameServer;
+import topviewgame.world.Input;
+import topviewgame.world.World;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Connects many headless clients to a {@link GameServer} and reports the bandwidth and snapshot
+ * rate each of them gets as the NPC count of the server grows.
+ * <p>
+ * Usage: {@code NetLoadTest [--clients=N] [--seconds=S] [--server=HOST:PORT] [--warmup=MINUTES]
+ * [--seed=S] [--width=W] [--height=H]}. Without {@code --server}, a server with an invulnerable
+ * player runs in-process on a loopback port, after simulating the warm-up minutes as fast as
+ * possible so that the test starts with a late-game NPC population. The first client steers the
+ * player with random inputs; the others only receive. Every second the test prints the NPC
+ * counts, the received bytes and snapshots per client, lost and undecodable snapshots, and the
+ * time clients spend decoding.
+ */
+public class NetLoadTest {
+    private static final long FRAME_NANOS = World.STEP_NANOS;
+    private static final long CONNECT_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    // Range of the time a random direction is kept, in frames
+    private static final int MIN_WANDER_FRAMES = 30;
+    private static final int MAX_WANDER_FRAMES = 120;
+
+    // Run configuration
+    private int clientCount = 32;
+    private double seconds = 30;
+    private InetSocketAddress serverAddress;
+    private double warmupMinutes = 5;
+    private long seed = 1;
+    private double width = 1920;
+    private double height = 1080;
+
+    // Time spent in client polls, in nanoseconds
+    private final Histogram pollTimes = new Histogram();
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        var loadTest = new NetLoadTest();
+        loadTest.parseArguments(args);
+        loadTest.run();
+    }
+
+    /**
+     * Reads the run configuration from {@code --name=value} arguments.
+     *
+     * @param args The command-line arguments.
+     */
+    private void parseArguments(String[] args) {
+        for (String arg : args) {
+            String name = arg.contains("=") ? arg.substring(0, arg.indexOf('=')) : arg;
+            String value = arg.substring(name.length()).replaceFirst("^=", "");
+            switch (name) {
+                case "--clients" -> clientCount = Integer.parseInt(value);
+                case "--seconds" -> seconds = Double.parseDouble(value);
+                case "--server" -> serverAddress = new InetSocketAddress(value.substring(0, value.lastIndexOf(':')),
+                        Integer.parseInt(value.substring(value.lastIndexOf(':') + 1)));
+                case "--warmup" -> warmupMinutes = Double.parseDouble(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                case "--width" -> width = Double.parseDouble(value);
+                case "--height" -> height = Double.parseDouble(value);
+                default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+    }
+
+    /**
+     * Starts the server if needed, connects the clients and runs them for the configured time.
+     *
+     * @throws IOException          If a socket fails or the server does not answer.
+     * @throws InterruptedException If interrupted while waiting for the server to stop.
+     */
+    private void run() throws IOException, InterruptedException {
+        GameServer server = null;
+        Thread serverThread = null;
+        if (serverAddress == null) {
+            var runningServer = startServer();
+            server = runningServer;
+            serverThread = new Thread(() -> {
+                try {
+                    runningServer.run();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, "game-server");
+            serverThread.start();
+            serverAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+        }
+
+        List<GameClient> clients = new ArrayList<>();
+        try {
+            for (int c = 0; c < clientCount; c++) {
+                clients.add(GameClient.connect(serverAddress, CONNECT_TIMEOUT_NANOS, false));
+            }
+            System.out.printf("%d clients connected to %s%n", clients.size(), serverAddress);
+            System.out.println("second  npcs  in view  kB/s/client  snapshots/s/client  lost  dropped  poll p99 us");
+            runClients(clients);
+        } finally {
+            for (GameClient client : clients) {
+                client.close();
+            }
+            if (server != null) {
+                server.close();
+                serverThread.join();
+            }
+        }
+    }
+
+    /**
+     * Creates a server on a loopback port whose world has been simulated through the warm-up.
+     *
+     * @return The server, not yet running.
+     * @throws IOException If the socket cannot be opened.
+     */
+    private GameServer startServer() throws IOException {
+        var world = new World(width, height);
+        world.setInvulnerable(true);
+        world.reset(seed);
+        long warmupSteps = (long) (warmupMinutes * 60 * 60);
+        var random = new SplittableRandom(seed);
+        int inputs = 0;
+        for (long step = 0; step < warmupSteps; step++) {
+            if (step % MIN_WANDER_FRAMES == 0) {
+                inputs = randomInputs(random);
+                for (Input input : Input.values()) {
+                    world.applyInput(input, (inputs & 1 << input.ordinal()) != 0);
+                }
+            }
+            world.tick();
+        }
+        System.out.printf("Warmed up for %.1f minutes to %d NPCs%n", warmupMinutes, world.getNpcs().size());
+        return new GameServer(world, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2560, 1440);
+    }
+
+    /**
+     * Runs all clients at the frame rate of the game for the configured time, printing a row
+     * every second and a summary at the end.
+     *
+     * @param clients The connected clients; the first one steers.
+     * @throws IOException If a socket fails.
+     */
+    private void runClients(List<GameClient> clients) throws IOException {
+        var random = new SplittableRandom(seed);
+        int inputs = 0;
+        int nextWanderFrame = 0;
+        long frames = (long) (seconds * 60);
+        long start = System.nanoTime();
+        long rowBytes = 0;
+        long rowSnapshots = 0;
+        long totalBytes = 0;
+        long totalSnapshots = 0;
+        for (long frame = 1; frame <= frames; frame++) {
+            long due = start + frame * FRAME_NANOS;
+            for (long now = System.nanoTime(); now < due; now = System.nanoTime()) {
+                LockSupport.parkNanos(due - now);
+            }
+            if (frame >= nextWanderFrame) {
+                inputs = randomInputs(random);
+                nextWanderFrame += random.nextInt(MIN_WANDER_FRAMES, MAX_WANDER_FRAMES + 1);
+            }
+
+            long now = System.nanoTime();
+            for (int c = 0; c < clients.size(); c++) {
+                GameClient client = clients.get(c);
+                long bytes = client.getBytesReceived();
+                long snapshots = client.getSnapshotsReceived();
+                long pollStart = System.nanoTime();
+                client.poll(now);
+                pollTimes.record(System.nanoTime() - pollStart);
+                client.sendInput(c == 0 ? inputs : 0);
+                rowBytes += client.getBytesReceived() - bytes;
+                rowSnapshots += client.getSnapshotsReceived() - snapshots;
+            }
+
+            if (frame % 60 == 0) {
+                printRow(frame / 60, clients, rowBytes, rowSnapshots);
+                totalBytes += rowBytes;
+                totalSnapshots += rowSnapshots;
+                rowBytes = 0;
+                rowSnapshots = 0;
+                pollTimes.reset();
+            }
+        }
+
+        double elapsed = frames / 60.0;
+        long lost = 0;
+        long dropped = 0;
+        for (GameClient client : clients) {
+            lost += client.getSnapshotsLost();
+            dropped += client.getSnapshotsDropped();
+        }
+        System.out.printf("Average over %.0f s: %.2f kB/s and %.1f snapshots/s per client, %d lost, %d dropped%n",
+                elapsed, totalBytes / 1024.0 / elapsed / clients.size(),
+                totalSnapshots / elapsed / clients.size(), lost, dropped);
+    }
+
+    private void printRow(long second, List<GameClient> clients, long bytes, long snapshots) {
+        long lost = 0;
+        long dropped = 0;
+        for (GameClient client : clients) {
+            lost += client.getSnapshotsLost();
+            dropped += client.getSnapshotsDropped();
+        }
+        GameClient first = clients.getFirst();
+        System.out.printf("%6d  %4d  %7d  %11.2f  %18.1f  %4d  %7d  %11.1f%n", second, first.getTotalNpcs(),
+                first.getVisibleNpcs(), bytes / 1024.0 / clients.size(), snapshots / (double) clients.size(),
+                lost, dropped, pollTimes.getValueAtPercentile(99) / 1e3);
+    }
+
+    /**
+     * Picks a random combination of one vertical and one horizontal input, each possibly released.
+     *
+     * @param random The source of the choice.
+     * @return The pressed inputs, one bit per {@link Input} ordinal.
+     */
+    private static int randomInputs(SplittableRandom random) {
+        int vertical = random.nextInt(3);
+        int horizontal = random.nextInt(3);
+        return (vertical == 1 ? 1 << Input.UP.ordinal() : vertical == 2 ? 1 << Input.DOWN.ordinal() : 0)
+                | (horizontal == 1 ? 1 << Input.LEFT.ordinal() : horizontal == 2 ? 1 << Input.RIGHT.ordinal() : 0);
+    }
+}
@@ -0,0 +1,86 @@
+package topviewgame.headless;
+
+import topviewgame.metrics.Histogram;
+import topviewgame.replay.Replay;
+import topviewgame.world.World;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a recording headless and checks that every game comes out bit-identical.
+ * <p>
+ * Usage: {@code ReplayRunner FILE [--realtime]}. By default the steps run as fast as possible;
+ * with {@code --realtime} they are paced at 60 steps per second like the game. For every game the
+ * runner prints tick time percentiles and the slowest tick with the step it happened at, so a spike
+ * seen while playing can be reproduced under a profiler. Exits with status 1 if a game diverged.
+ */
+public class ReplayRunner {
+    public static void main(String[] args) throws IOException {
+        Path file = null;
+        boolean realtime = false;
+        for (String arg : args) {
+            if (arg.equals("--realtime")) {
+                realtime = true;
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            } else {
+                file = Path.of(arg);
+            }
+        }
+        if (file == null) {
+            throw new IllegalArgumentException("Usage: ReplayRunner FILE [--realtime]");
+        }
+
+        var replay = Replay.load(file);
+        World world = replay.createWorld();
+        var tickTimes = new Histogram();
+        int games = 0;
+        int diverged = 0;
+        while (replay.startNextGame(world)) {
+            games++;
+            tickTimes.reset();
+            long slowestTick = 0;
+            long slowestStep = 0;
+            long wallStart = System.nanoTime();
+            while (!replay.isGameFinished(world)) {
+                if (realtime) {
+                    long due = wallStart + world.getSteps() * World.STEP_NANOS;
+                    for (long now = System.nanoTime(); now < due; now = System.nanoTime()) {
+                        LockSupport.parkNanos(due - now);
+                    }
+                }
+                replay.applyInputs(world);
+                long start = System.nanoTime();
+                world.tick();
+                long elapsed = System.nanoTime() - start;
+                tickTimes.record(elapsed);
+                if (elapsed > slowestTick) {
+                    slowestTick = elapsed;
+                    slowestStep = world.getSteps();
+                }
+            }
+            double wallSeconds = (System.nanoTime() - wallStart) / 1e9;
+
+            String result;
+            if (!replay.hasRecordedEnd()) {
+                result = "unchecked (recorded without an end)";
+            } else if (replay.matchesRecording(world)) {
+                result = "bit-identical";
+            } else {
+                result = "DIVERGED (recorded " + replay.getRecordedSteps() + " steps)";
+                diverged++;
+            }
+            System.out.printf("Game %d: seed %d, %d steps in %.2f s, tick p50 %.1f us, p99 %.1f us, "
+                            + "max %.1f us at step %d: %s%n",
+                    games, world.getSeed(), world.getSteps(), wallSeconds,
+                    tickTimes.getValueAtPercentile(50) / 1000.0, tickTimes.getValueAtPercentile(99) / 1000.0,
+                    slowestTick / 1000.0, slowestStep, result);
+        }
+        System.out.printf("Replayed %d games, %d diverged%n", games, diverged);
+        if (diverged > 0) {
+            System.exit(1);
+        }
+    }
+}
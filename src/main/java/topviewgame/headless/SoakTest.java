@@ -0,0 +1,258 @@
+package topviewgame.headless;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import topviewgame.metrics.Histogram;
+import topviewgame.replay.Recorder;
+import topviewgame.world.LodTier;
+import topviewgame.world.SteeringMode;
+import topviewgame.world.World;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Runs the game loop headless, as fast as possible, with a {@link Bot} at the controls and
+ * reports how the tick cost develops as the NPC population ramps up.
+ * <p>
+ * Usage: {@code SoakTest [--minutes=N] [--bot=evade|circle|random] [--seed=S] [--width=W]
+ * [--height=H] [--lod-mid=D] [--lod-far=D] [--steering=probe|crowd] [--job-budget=MICROS] [--mortal]
+ * [--report=FILE] [--record=FILE]}. By default the player is invulnerable, so the run always reaches the late-game
+ * spawn rates; with {@code --mortal} the game restarts after every game over instead. The seed drives both the bot and the world, so a
+ * run can be repeated exactly, and {@code --record} writes it to a file for the {@link ReplayRunner}.
+ * The report lists tick time percentiles, the NPC count per level of detail, the job queue
+ * and tick times per simulated minute, GC pauses and the peak heap.
+ */
+public class SoakTest {
+    private static final long TICKS_PER_MINUTE = 60 * 60;
+    private static final long TICKS_PER_SECOND = 60;
+
+    // Run configuration
+    private double minutes = 10;
+    private Bot.Strategy strategy = Bot.Strategy.EVADE;
+    private long seed = 1;
+    private double width = 1920;
+    private double height = 1080;
+    private double lodMidDistance = World.DEFAULT_LOD_MID_DISTANCE;
+    private double lodFarDistance = World.DEFAULT_LOD_FAR_DISTANCE;
+    private SteeringMode steeringMode = SteeringMode.PROBE;
+    private int jobBudget = World.DEFAULT_JOB_BUDGET_MICROS;
+    private boolean mortal = false;
+    private Path reportFile;
+    private Path recordFile;
+
+    // Tick times in nanoseconds, for the whole run and the current simulated minute
+    private final Histogram tickTimes = new Histogram();
+    private final Histogram minuteTickTimes = new Histogram();
+    private final List<String> minuteRows = new ArrayList<>();
+
+    // Deepest job queue and longest job deferral in steps of the current simulated minute
+    private int minuteQueuedJobs;
+    private long minuteJobDeferral;
+
+    // GC pauses in milliseconds, recorded from the notification thread
+    private final Histogram gcPauses = new Histogram();
+    private long gcPauseMillis;
+
+    // Heap samples and game restarts
+    private long peakHeapUsed;
+    private long peakHeapCommitted;
+    private int restarts;
+
+    public static void main(String[] args) throws IOException {
+        var soakTest = new SoakTest();
+        soakTest.parseArguments(args);
+        soakTest.run();
+    }
+
+    /**
+     * Reads the run configuration from {@code --name=value} arguments.
+     *
+     * @param args The command-line arguments.
+     */
+    private void parseArguments(String[] args) {
+        for (String arg : args) {
+            String name = arg.contains("=") ? arg.substring(0, arg.indexOf('=')) : arg;
+            String value = arg.substring(name.length()).replaceFirst("^=", "");
+            switch (name) {
+                case "--minutes" -> minutes = Double.parseDouble(value);
+                case "--bot" -> strategy = Bot.Strategy.parse(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                case "--width" -> width = Double.parseDouble(value);
+                case "--height" -> height = Double.parseDouble(value);
+                case "--lod-mid" -> lodMidDistance = Double.parseDouble(value);
+                case "--lod-far" -> lodFarDistance = Double.parseDouble(value);
+                case "--steering" -> steeringMode = SteeringMode.parse(value);
+                case "--job-budget" -> jobBudget = Integer.parseInt(value);
+                case "--mortal" -> mortal = true;
+                case "--report" -> reportFile = Path.of(value);
+                case "--record" -> recordFile = Path.of(value);
+                default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+    }
+
+    /**
+     * Runs the configured number of simulated minutes and writes the report.
+     *
+     * @throws IOException If the report file cannot be written.
+     */
+    private void run() throws IOException {
+        listenForGcPauses();
+        var world = new World(width, height);
+        world.setInvulnerable(!mortal);
+        world.setLodDistances(lodMidDistance, lodFarDistance);
+        world.setSteeringMode(steeringMode);
+        world.setJobBudget(jobBudget);
+        var bot = new Bot(strategy, seed);
+        var worldSeeds = new SplittableRandom(seed);
+        world.reset(worldSeeds.nextLong());
+        var recorder = recordFile == null ? null : new Recorder(recordFile);
+        if (recorder != null) {
+            recorder.startGame(world);
+        }
+
+        long totalTicks = (long) (minutes * TICKS_PER_MINUTE);
+        long wallStart = System.nanoTime();
+        for (long tick = 1; tick <= totalTicks; tick++) {
+            bot.drive(world);
+            if (recorder != null) {
+                recorder.captureInputs(world);
+            }
+            long start = System.nanoTime();
+            world.tick();
+            long elapsed = System.nanoTime() - start;
+            tickTimes.record(elapsed);
+            minuteTickTimes.record(elapsed);
+            minuteQueuedJobs = Math.max(minuteQueuedJobs, world.getQueuedJobs());
+            minuteJobDeferral = Math.max(minuteJobDeferral, world.getJobDeferralSteps());
+
+            if (world.isGameOver()) {
+                restarts++;
+                if (recorder != null) {
+                    recorder.endGame(world);
+                }
+                world.reset(worldSeeds.nextLong());
+                if (recorder != null) {
+                    recorder.startGame(world);
+                }
+            }
+            if (tick % TICKS_PER_SECOND == 0) {
+                sampleHeap();
+            }
+            if (tick % TICKS_PER_MINUTE == 0 || tick == totalTicks) {
+                minuteRows.add(String.format("%8.1f %8d %6d %6d %6d %6d %9.1f %10.1f %10.1f %10.1f",
+                        tick / (double) TICKS_PER_MINUTE, world.getNpcs().size(), world.getLodCount(LodTier.NEAR),
+                        world.getLodCount(LodTier.MID), world.getLodCount(LodTier.FAR), minuteQueuedJobs,
+                        minuteJobDeferral * World.STEP_MILLIS,
+                        minuteTickTimes.getValueAtPercentile(50) / 1000.0,
+                        minuteTickTimes.getValueAtPercentile(99) / 1000.0,
+                        minuteTickTimes.getMax() / 1000.0));
+                minuteTickTimes.reset();
+                minuteQueuedJobs = 0;
+                minuteJobDeferral = 0;
+            }
+        }
+        double wallSeconds = (System.nanoTime() - wallStart) / 1e9;
+        if (recorder != null) {
+            recorder.endGame(world);
+            recorder.close();
+        }
+
+        String report = formatReport(totalTicks, wallSeconds);
+        System.out.print(report);
+        if (reportFile != null) {
+            Files.writeString(reportFile, report);
+        }
+    }
+
+    /**
+     * Records the duration of every stop-the-world GC pause. Notifications of whole concurrent
+     * cycles are skipped, since most of such a cycle runs next to the application.
+     */
+    private void listenForGcPauses() {
+        for (var collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (!(collector instanceof NotificationEmitter emitter)) {
+                continue;
+            }
+            emitter.addNotificationListener((notification, handback) -> {
+                if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                    return;
+                }
+                var info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                if (info.getGcAction().contains("cycle")) {
+                    return;
+                }
+                synchronized (gcPauses) {
+                    gcPauses.record(info.getGcInfo().getDuration());
+                    gcPauseMillis += info.getGcInfo().getDuration();
+                }
+            }, null, null);
+        }
+    }
+
+    private void sampleHeap() {
+        var heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        peakHeapUsed = Math.max(peakHeapUsed, heap.getUsed());
+        peakHeapCommitted = Math.max(peakHeapCommitted, heap.getCommitted());
+    }
+
+    /**
+     * Formats the report of a finished run.
+     *
+     * @param totalTicks  The number of simulated ticks.
+     * @param wallSeconds The wall-clock duration of the run in seconds.
+     * @return The report text.
+     */
+    private String formatReport(long totalTicks, double wallSeconds) {
+        var text = new StringWriter();
+        var out = new PrintWriter(text);
+        out.printf("Soak test: %.1f simulated minutes, bot %s, seed %d, map %.0fx%.0f, LOD %.0f/%.0f, %s steering, "
+                        + "job budget %d us, %s%n",
+                minutes, strategy.name().toLowerCase(), seed, width, height, lodMidDistance, lodFarDistance,
+                steeringMode.name().toLowerCase(), jobBudget,
+                mortal ? "mortal (" + restarts + " restarts)" : "invulnerable");
+        out.printf("Ran %d ticks in %.1f s (%.1fx real time)%n%n",
+                totalTicks, wallSeconds, totalTicks / (double) TICKS_PER_SECOND / wallSeconds);
+
+        out.println("Tick time (us)");
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            out.printf("  p%-5s %10.1f%n", formatPercentile(percentile),
+                    tickTimes.getValueAtPercentile(percentile) / 1000.0);
+        }
+        out.printf("  max    %10.1f%n", tickTimes.getMax() / 1000.0);
+        out.printf("  mean   %10.1f%n%n", tickTimes.getMean() / 1000.0);
+
+        out.println("Per simulated minute");
+        out.printf("%8s %8s %6s %6s %6s %6s %9s %10s %10s %10s%n",
+                "minute", "npcs", "near", "mid", "far", "jobs", "wait (ms)", "p50 (us)", "p99 (us)", "max (us)");
+        minuteRows.forEach(out::println);
+        out.println();
+
+        synchronized (gcPauses) {
+            out.println("GC pauses");
+            out.printf("  count  %10d%n", gcPauses.getTotalCount());
+            out.printf("  total  %10d ms%n", gcPauseMillis);
+            out.printf("  p99    %10d ms%n", gcPauses.getValueAtPercentile(99));
+            out.printf("  max    %10d ms%n%n", gcPauses.getMax());
+        }
+
+        out.println("Heap (sampled every simulated second)");
+        out.printf("  peak used      %8.1f MB%n", peakHeapUsed / (1024.0 * 1024));
+        out.printf("  peak committed %8.1f MB%n", peakHeapCommitted / (1024.0 * 1024));
+        out.flush();
+        return text.toString();
+    }
+
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+}
@@ -1,12 +1,8 @@
 package topviewgame.item;
 
-import javafx.scene.paint.Color;
-import javafx.scene.shape.Rectangle;
-
 public class Building {
     private final double x, y;
     private final double width, height;
-    private final Rectangle shape;
 
     /**
      * Constructs a new Building at the specified coordinates with default size.
@@ -31,12 +27,6 @@ public class Building {
         this.y = y;
         this.width = width;
         this.height = height;
-
-        // Use a Rectangle for borders or custom-sized buildings
-        shape = new Rectangle(x, y, width, height);
-
-        // Optionally, set the fill color or style
-        shape.setFill(Color.DARKGRAY);
     }
 
     /**
@@ -58,11 +48,20 @@ public class Building {
     }
 
     /**
-     * Gets the ImageView representing the building.
+     * Gets the width of the building.
+     *
+     * @return The width.
+     */
+    public double getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the building.
      *
-     * @return The ImageView of the building.
+     * @return The height.
      */
-    public Rectangle getShape() {
-        return shape;
+    public double getHeight() {
+        return height;
     }
 }
@@ -0,0 +1,216 @@
+package topviewgame.metrics;
+
+import topviewgame.world.AllocationMeter;
+import topviewgame.world.LodTier;
+import topviewgame.world.World;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects per-phase frame timings of the game loop and publishes them once per interval.
+ * <p>
+ * Phases are recorded into one {@link Histogram} each from the game loop thread. At the end of
+ * every interval the histograms are summarized into immutable statistics, together with the
+ * frame rate, NPC counts per simulation level of detail, allocation rate of the loop thread and
+ * the job queue of the world, and then cleared. The published
+ * values are what the overlay shows and what the platform MBean reports, so JMX clients never
+ * read the histograms while the loop writes them.
+ */
+public class GameMetrics implements GameMetricsMXBean {
+    // Name of the MBean in the platform MBean server
+    public static final String OBJECT_NAME = "topviewgame:type=GameMetrics";
+
+    // Length of a metrics interval
+    private static final long INTERVAL_NANOS = 1_000_000_000L;
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final LodTier[] TIERS = LodTier.values();
+
+    // Histograms of the current interval, in nanoseconds, indexed by phase
+    private final Histogram[] histograms = new Histogram[PHASES.length];
+
+    // Time deferred jobs waited in the queue, in nanoseconds, and the deepest queue seen at the end
+    // of a frame in the current interval
+    private final Histogram jobDeferrals = new Histogram();
+    private int intervalQueuedJobs;
+
+    // Current interval
+    private final AllocationMeter allocationMeter = new AllocationMeter();
+    private long intervalStart = -1;
+    private long intervalStartAllocatedBytes;
+    private int frames;
+
+    // Values of the last completed interval
+    private volatile Map<String, PhaseStatistics> phases = Map.of();
+    private volatile double framesPerSecond;
+    private volatile int npcCount;
+    private volatile Map<String, Integer> npcsPerTier = Map.of();
+    private volatile double allocatedBytesPerSecond;
+    private volatile int peakQueuedJobs;
+    private volatile PhaseStatistics jobDeferral = new PhaseStatistics(new Histogram());
+
+    public GameMetrics() {
+        for (int i = 0; i < PHASES.length; i++) {
+            histograms[i] = new Histogram();
+        }
+    }
+
+    /**
+     * Records the duration of a phase.
+     *
+     * @param phase The phase.
+     * @param nanos The duration in nanoseconds.
+     */
+    public void record(Phase phase, long nanos) {
+        histograms[phase.ordinal()].record(nanos);
+    }
+
+    /**
+     * Records how long a deferred job waited before it ran.
+     *
+     * @param nanos The wait in nanoseconds of simulation time.
+     */
+    public void recordJobDeferral(long nanos) {
+        jobDeferrals.record(nanos);
+    }
+
+    /**
+     * Counts a finished frame and publishes the interval if it is complete.
+     *
+     * @param now   The current time in nanoseconds.
+     * @param world The world whose NPC counts are published with the interval.
+     * @return True if new values were published; false otherwise.
+     */
+    public boolean endFrame(long now, World world) {
+        frames++;
+        intervalQueuedJobs = Math.max(intervalQueuedJobs, world.getQueuedJobs());
+        if (intervalStart < 0) {
+            startInterval(now);
+            return false;
+        }
+        long elapsed = now - intervalStart;
+        if (elapsed < INTERVAL_NANOS) {
+            return false;
+        }
+
+        var statistics = new LinkedHashMap<String, PhaseStatistics>();
+        for (int i = 0; i < PHASES.length; i++) {
+            statistics.put(PHASES[i].getLabel(), new PhaseStatistics(histograms[i]));
+            histograms[i].reset();
+        }
+        double seconds = elapsed / 1e9;
+        long allocatedBytes = allocationMeter.currentThreadAllocatedBytes();
+        allocatedBytesPerSecond = allocatedBytes < 0 ? -1
+                : (allocatedBytes - intervalStartAllocatedBytes) / seconds;
+        framesPerSecond = frames / seconds;
+        var tiers = new LinkedHashMap<String, Integer>();
+        for (LodTier tier : TIERS) {
+            tiers.put(tier.getLabel(), world.getLodCount(tier));
+        }
+        npcCount = world.getNpcs().size();
+        npcsPerTier = tiers;
+        peakQueuedJobs = intervalQueuedJobs;
+        jobDeferral = new PhaseStatistics(jobDeferrals);
+        jobDeferrals.reset();
+        phases = statistics;
+        startInterval(now);
+        return true;
+    }
+
+    /**
+     * Forgets the current interval, e.g. after the game loop was paused.
+     */
+    public void restart() {
+        for (var histogram : histograms) {
+            histogram.reset();
+        }
+        jobDeferrals.reset();
+        intervalStart = -1;
+    }
+
+    /**
+     * Formats the last published values for the on-screen overlay.
+     *
+     * @return The overlay text.
+     */
+    public String format() {
+        var text = new StringBuilder();
+        text.append(String.format("FPS %5.1f  NPCs %d  alloc %.1f MB/s%n",
+                framesPerSecond, npcCount, allocatedBytesPerSecond / (1024 * 1024)));
+        text.append("LOD");
+        npcsPerTier.forEach((tier, count) -> text.append(String.format("  %s %d", tier, count)));
+        text.append(System.lineSeparator());
+        text.append(String.format("Jobs  queued %d  wait p99 %.1f ms  max %.1f ms%n", peakQueuedJobs,
+                jobDeferral.getP99Micros() / 1000, jobDeferral.getMaxMicros() / 1000));
+        text.append(String.format("%-17s %8s %8s %8s%n", "phase (ms)", "p50", "p99", "max"));
+        for (var entry : phases.entrySet()) {
+            var statistics = entry.getValue();
+            text.append(String.format("%-17s %8.3f %8.3f %8.3f%n", entry.getKey(),
+                    statistics.getP50Micros() / 1000, statistics.getP99Micros() / 1000,
+                    statistics.getMaxMicros() / 1000));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Registers these metrics in the platform MBean server, replacing an earlier registration.
+     */
+    public void registerMBean() {
+        try {
+            var server = ManagementFactory.getPlatformMBeanServer();
+            var name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            System.err.println("Could not register the game metrics MBean: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public double getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    @Override
+    public int getNpcCount() {
+        return npcCount;
+    }
+
+    @Override
+    public Map<String, Integer> getNpcsPerTier() {
+        return npcsPerTier;
+    }
+
+    @Override
+    public double getAllocatedBytesPerSecond() {
+        return allocatedBytesPerSecond;
+    }
+
+    @Override
+    public Map<String, PhaseStatistics> getPhases() {
+        return phases;
+    }
+
+    @Override
+    public int getPeakQueuedJobs() {
+        return peakQueuedJobs;
+    }
+
+    @Override
+    public PhaseStatistics getJobDeferral() {
+        return jobDeferral;
+    }
+
+    private void startInterval(long now) {
+        intervalStart = now;
+        intervalStartAllocatedBytes = allocationMeter.currentThreadAllocatedBytes();
+        intervalQueuedJobs = 0;
+        frames = 0;
+    }
+}
@@ -0,0 +1,44 @@
+package topviewgame.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of the game loop metrics, for JConsole, VisualVM and other JMX clients.
+ * <p>
+ * All values describe the last completed metrics interval.
+ */
+public interface GameMetricsMXBean {
+    double getFramesPerSecond();
+
+    int getNpcCount();
+
+    /**
+     * Gets the number of NPCs simulated at each level of detail.
+     *
+     * @return The NPC counts, keyed by tier label.
+     */
+    Map<String, Integer> getNpcsPerTier();
+
+    double getAllocatedBytesPerSecond();
+
+    /**
+     * Gets the timing statistics of every phase of the game loop.
+     *
+     * @return The statistics, keyed by phase label.
+     */
+    Map<String, PhaseStatistics> getPhases();
+
+    /**
+     * Gets the largest number of jobs the world had queued at the end of a frame.
+     *
+     * @return The peak queue depth.
+     */
+    int getPeakQueuedJobs();
+
+    /**
+     * Gets how long deferred jobs, such as spawns, waited in the queue of the world before they ran.
+     *
+     * @return The statistics of the waits in simulation time.
+     */
+    PhaseStatistics getJobDeferral();
+}
@@ -0,0 +1,120 @@
+package topviewgame.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size log-linear histogram of non-negative values, in the style of HdrHistogram.
+ * <p>
+ * Values below 64 get one bucket each; above that, every power of two is split into 32 linear
+ * buckets, so any recorded value is reported within about 3% of its true value. Recording is a
+ * few shifts and an array increment and never allocates.
+ */
+public class Histogram {
+    // Linear buckets per power of two are SUB_BUCKET_COUNT / 2
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+
+    // Largest trackable value; larger values are recorded as this value
+    private static final long MAX_VALUE = (1L << 40) - 1;
+
+    private final long[] counts = new long[bucketIndex(MAX_VALUE) + 1];
+    private long totalCount;
+    private long max;
+    private long sum;
+
+    /**
+     * Records a value.
+     *
+     * @param value The value; negative values are recorded as 0.
+     */
+    public void record(long value) {
+        long clamped = Math.clamp(value, 0, MAX_VALUE);
+        counts[bucketIndex(clamped)]++;
+        totalCount++;
+        sum += clamped;
+        max = Math.max(max, clamped);
+    }
+
+    /**
+     * Adds all values recorded by another histogram to this one.
+     *
+     * @param other The other histogram.
+     */
+    public void add(Histogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Gets the value below or at which the given percentage of the recorded values fall.
+     *
+     * @param percentile The percentile, from 0 to 100.
+     * @return The highest value equivalent to the percentile, or 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Gets the mean of the recorded values.
+     *
+     * @return The mean, or 0 if nothing was recorded.
+     */
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    /**
+     * Forgets all recorded values.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        // Keep the top SUB_BUCKET_BITS bits of the value
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        int subBucket = (int) (value >>> shift);
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + (subBucket - SUB_BUCKET_HALF);
+    }
+
+    private static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int offset = index - SUB_BUCKET_COUNT;
+        int shift = offset / SUB_BUCKET_HALF + 1;
+        long subBucket = offset % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,33 @@
+package topviewgame.metrics;
+
+/**
+ * The timed phases of a frame of the game loop.
+ */
+public enum Phase {
+    FRAME("frame"),
+    SIMULATION("simulation"),
+    MOVE_CHARACTER("moveCharacter"),
+    MOVE_NPCS("moveNPCs"),
+    SPAWN_NPCS("checkAndAddNPCs"),
+    JOBS("runJobs"),
+    COLLISIONS("handleCollisions"),
+    RENDER("render"),
+    HUD("updateTimer"),
+    SCENE_SYNC("sceneSync"),
+    PULSE("pulse");
+
+    private final String label;
+
+    Phase(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Gets the name the phase is shown and exported under.
+     *
+     * @return The label.
+     */
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,39 @@
+package topviewgame.metrics;
+
+/**
+ * Timing statistics of one phase over a metrics interval, in microseconds.
+ */
+public class PhaseStatistics {
+    private final long count;
+    private final double p50Micros;
+    private final double p99Micros;
+    private final double maxMicros;
+
+    /**
+     * Constructs the statistics of the values recorded by a histogram of nanoseconds.
+     *
+     * @param histogram The histogram.
+     */
+    PhaseStatistics(Histogram histogram) {
+        this.count = histogram.getTotalCount();
+        this.p50Micros = histogram.getValueAtPercentile(50) / 1000.0;
+        this.p99Micros = histogram.getValueAtPercentile(99) / 1000.0;
+        this.maxMicros = histogram.getMax() / 1000.0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getP50Micros() {
+        return p50Micros;
+    }
+
+    public double getP99Micros() {
+        return p99Micros;
+    }
+
+    public double getMaxMicros() {
+        return maxMicros;
+    }
+}
@@ -0,0 +1,253 @@
+package topviewgame.net;
+
+import topviewgame.world.Input;
+import topviewgame.world.NpcStore;
+import topviewgame.world.World;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Quantized state of the part of a world around the player, as sent from the server to clients.
+ * <p>
+ * A snapshot holds the player, the game flags and the NPCs in a view area around the player,
+ * sorted by their identifiers. It is encoded as a delta against a baseline snapshot the client
+ * already has: NPCs that left the view are listed by identifier, NPCs that entered it are sent
+ * with their full position, and NPCs that moved are sent as a position delta. NPCs that stand
+ * still cost nothing, and NPCs out of view are never sent, so the size of a snapshot follows the
+ * activity on screen rather than the total number of NPCs. Identifiers are gap-coded, so each
+ * entry mostly takes three to four bytes.
+ * <p>
+ * Snapshots are mutable and reused, so neither capturing nor decoding allocates once the arrays
+ * have grown to the usual NPC count.
+ */
+final class EntitySnapshot {
+    // Bits of the flags byte; the pressed inputs follow in the bits above
+    static final int GAME_OVER = 1;
+    static final int PEACE_TIME = 2;
+    static final int INPUT_SHIFT = 2;
+
+    private static final Input[] INPUTS = Input.values();
+
+    int sequence = -1;
+    long seed;
+    long step;
+    int playerX;
+    int playerY;
+    int flags;
+    int totalNpcs;
+
+    // NPCs in view, sorted by identifier, with quantized positions
+    int count;
+    int[] ids = new int[64];
+    int[] xs = new int[64];
+    int[] ys = new int[64];
+
+    // Identifiers of the NPCs that left the view, while decoding
+    private int[] removed = new int[64];
+
+    /**
+     * Captures the state of a world.
+     *
+     * @param world      The world.
+     * @param sequence   The sequence number of the snapshot.
+     * @param viewWidth  The width of the view area centered on the player.
+     * @param viewHeight The height of the view area centered on the player.
+     * @param indices    Scratch space for the NPC indices; its length caps the NPCs in the snapshot.
+     * @param keys       Scratch space for sorting, at least as long as the indices.
+     */
+    void capture(World world, int sequence, double viewWidth, double viewHeight, int[] indices, long[] keys) {
+        this.sequence = sequence;
+        seed = world.getSeed();
+        step = world.getSteps();
+        playerX = NetProtocol.quantize(world.getCharacterX());
+        playerY = NetProtocol.quantize(world.getCharacterY());
+        flags = (world.isGameOver() ? GAME_OVER : 0) | (world.isPeaceTime() ? PEACE_TIME : 0);
+        for (Input input : INPUTS) {
+            if (world.isPressed(input)) {
+                flags |= 1 << INPUT_SHIFT + input.ordinal();
+            }
+        }
+
+        // NPCs overlapping the view, found through the spatial hash and sorted by identifier
+        NpcStore npcs = world.getNpcs();
+        totalNpcs = npcs.size();
+        double left = world.getCharacterX() + World.CHARACTER_SIZE / 2.0 - viewWidth / 2 - World.CHARACTER_SIZE;
+        double top = world.getCharacterY() + World.CHARACTER_SIZE / 2.0 - viewHeight / 2 - World.CHARACTER_SIZE;
+        int found = npcs.query(left, top, viewWidth + World.CHARACTER_SIZE, viewHeight + World.CHARACTER_SIZE, indices);
+        for (int k = 0; k < found; k++) {
+            keys[k] = (long) npcs.getId(indices[k]) << 32 | indices[k];
+        }
+        Arrays.sort(keys, 0, found);
+        ensureCapacity(found);
+        for (int k = 0; k < found; k++) {
+            int i = (int) keys[k];
+            ids[k] = (int) (keys[k] >>> 32);
+            xs[k] = NetProtocol.quantize(npcs.getX(i));
+            ys[k] = NetProtocol.quantize(npcs.getY(i));
+        }
+        count = found;
+    }
+
+    /**
+     * Writes the snapshot as a packet, delta-compressed against a baseline.
+     *
+     * @param out      The buffer to write to.
+     * @param baseline The snapshot the receiver already has, or null to send everything.
+     */
+    void encode(ByteBuffer out, EntitySnapshot baseline) {
+        out.put(NetProtocol.SNAPSHOT);
+        out.putInt(sequence);
+        out.putInt(baseline == null ? -1 : baseline.sequence);
+        out.putLong(seed);
+        out.putLong(step);
+        out.putInt(playerX);
+        out.putInt(playerY);
+        out.put((byte) flags);
+        NetProtocol.putVarInt(out, totalNpcs);
+        int baseCount = baseline == null ? 0 : baseline.count;
+
+        // NPCs of the baseline that are no longer in view
+        int countPosition = out.position();
+        out.putInt(0);
+        int removedCount = 0;
+        int previousId = 0;
+        for (int i = 0, j = 0; i < baseCount; ) {
+            if (j < count && ids[j] < baseline.ids[i]) {
+                j++;
+            } else if (j < count && ids[j] == baseline.ids[i]) {
+                i++;
+                j++;
+            } else {
+                NetProtocol.putVarInt(out, baseline.ids[i] - previousId);
+                previousId = baseline.ids[i++];
+                removedCount++;
+            }
+        }
+        out.putInt(countPosition, removedCount);
+
+        // NPCs that entered the view or moved since the baseline
+        countPosition = out.position();
+        out.putInt(0);
+        int changedCount = 0;
+        previousId = 0;
+        for (int j = 0, i = 0; j < count; j++) {
+            while (i < baseCount && baseline.ids[i] < ids[j]) {
+                i++;
+            }
+            boolean known = i < baseCount && baseline.ids[i] == ids[j];
+            int x = known ? xs[j] - baseline.xs[i] : xs[j];
+            int y = known ? ys[j] - baseline.ys[i] : ys[j];
+            if (known && x == 0 && y == 0) {
+                continue;
+            }
+            NetProtocol.putVarInt(out, ids[j] - previousId);
+            NetProtocol.putSignedVarInt(out, x);
+            NetProtocol.putSignedVarInt(out, y);
+            previousId = ids[j];
+            changedCount++;
+        }
+        out.putInt(countPosition, changedCount);
+    }
+
+    /**
+     * Reads a snapshot packet, applying its changes to the baseline it was encoded against. If the
+     * packet turns out to be malformed, the snapshot is left unusable until the next decode.
+     *
+     * @param in       The packet, positioned after the sequence numbers.
+     * @param sequence The sequence number of the snapshot.
+     * @param baseline The baseline named by the packet, or null if it was sent in full.
+     * @throws ProtocolException If the packet holds implausible counts or values.
+     */
+    void decode(ByteBuffer in, int sequence, EntitySnapshot baseline) throws ProtocolException {
+        this.sequence = -1;
+        seed = in.getLong();
+        step = in.getLong();
+        playerX = in.getInt();
+        playerY = in.getInt();
+        flags = in.get() & 0xFF;
+        totalNpcs = NetProtocol.getVarInt(in);
+        int baseCount = baseline == null ? 0 : baseline.count;
+
+        // Every entry takes at least one byte per varint
+        int removedCount = NetProtocol.getCount(in, baseCount, 1);
+        if (removed.length < removedCount) {
+            removed = new int[removedCount];
+        }
+        for (int r = 0, id = 0; r < removedCount; r++) {
+            id += NetProtocol.getVarInt(in);
+            removed[r] = id;
+        }
+        int changedCount = NetProtocol.getCount(in, NetProtocol.MAX_SNAPSHOT_NPCS, 3);
+        ensureCapacity(baseCount + changedCount);
+
+        // Merge the baseline with the changes, both sorted by identifier
+        int n = 0;
+        int i = 0;
+        int r = 0;
+        int c = 0;
+        int changeId = 0;
+        int changeX = 0;
+        int changeY = 0;
+        if (changedCount > 0) {
+            changeId = NetProtocol.getVarInt(in);
+            changeX = NetProtocol.getSignedVarInt(in);
+            changeY = NetProtocol.getSignedVarInt(in);
+        }
+        while (i < baseCount || c < changedCount) {
+            if (c < changedCount && (i == baseCount || changeId <= baseline.ids[i])) {
+                boolean known = i < baseCount && changeId == baseline.ids[i];
+                checkRoom(n);
+                ids[n] = changeId;
+                xs[n] = known ? baseline.xs[i] + changeX : changeX;
+                ys[n] = known ? baseline.ys[i] + changeY : changeY;
+                n++;
+                if (known) {
+                    i++;
+                }
+                if (++c < changedCount) {
+                    changeId += NetProtocol.getVarInt(in);
+                    changeX = NetProtocol.getSignedVarInt(in);
+                    changeY = NetProtocol.getSignedVarInt(in);
+                }
+            } else {
+                if (r < removedCount && removed[r] == baseline.ids[i]) {
+                    r++;
+                } else {
+                    checkRoom(n);
+                    ids[n] = baseline.ids[i];
+                    xs[n] = baseline.xs[i];
+                    ys[n] = baseline.ys[i];
+                    n++;
+                }
+                i++;
+            }
+        }
+        count = n;
+
+        // Set last, so a truncated packet never leaves a snapshot that looks usable as a baseline
+        this.sequence = sequence;
+    }
+
+    /**
+     * Checks that a decoded snapshot has room for one more NPC.
+     *
+     * @param n The number of NPCs decoded so far.
+     * @throws ProtocolException If the snapshot already holds the most NPCs a snapshot may have.
+     */
+    private static void checkRoom(int n) throws ProtocolException {
+        if (n == NetProtocol.MAX_SNAPSHOT_NPCS) {
+            throw new ProtocolException("More than " + NetProtocol.MAX_SNAPSHOT_NPCS + " NPCs in a snapshot");
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (ids.length < capacity) {
+            int length = Math.max(capacity, ids.length * 2);
+            ids = Arrays.copyOf(ids, length);
+            xs = Arrays.copyOf(xs, length);
+            ys = Arrays.copyOf(ys, length);
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package topviewgame.net;
+
+import topviewgame.world.World;
+import topviewgame.world.WorldMirror;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.ProtocolException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Connection to a {@link GameServer}. Sends the pressed inputs and receives snapshots of the world
+ * around the player.
+ * <p>
+ * Received snapshots are kept for as long as the server may use them as delta baselines, and the
+ * newest one is acknowledged with every input packet. Lost snapshots need no retransmission: the
+ * server keeps encoding against the last acknowledged snapshot until a newer one gets through.
+ * With a mirror, every new snapshot is applied to a local {@link World} through a
+ * {@link WorldMirror}, which the game renders while interpolating towards the newest snapshot.
+ */
+public class GameClient implements AutoCloseable {
+    private static final long HELLO_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final long SNAPSHOT_NANOS = NetProtocol.SNAPSHOT_INTERVAL * World.STEP_NANOS;
+
+    private final DatagramChannel channel;
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocate(NetProtocol.MAX_PACKET_SIZE);
+    private final ByteBuffer sendBuffer = ByteBuffer.allocate(16);
+
+    // Local copy of the remote world, if the client shows it
+    private final WorldMirror mirror;
+    private boolean mirrorStarted;
+    private double[] npcX = new double[0];
+    private double[] npcY = new double[0];
+
+    // Received snapshots by sequence number, the newest one and when it arrived
+    private final EntitySnapshot[] received = new EntitySnapshot[NetProtocol.SNAPSHOT_HISTORY];
+    private EntitySnapshot latest;
+    private long latestArrival;
+
+    // Statistics
+    private long bytesReceived;
+    private long snapshotsReceived;
+    private long snapshotsLost;
+    private long snapshotsDropped;
+
+    private GameClient(DatagramChannel channel, WorldMirror mirror) {
+        this.channel = channel;
+        this.mirror = mirror;
+    }
+
+    /**
+     * Connects to a server, repeating the greeting until the server answers.
+     *
+     * @param server       The address of the server.
+     * @param timeoutNanos The time to wait for an answer.
+     * @param mirror       True to keep a local copy of the remote world for rendering; false to
+     *                     only receive snapshots, like a load test client.
+     * @return The connected client.
+     * @throws IOException If the socket fails or the server does not answer in time.
+     */
+    public static GameClient connect(InetSocketAddress server, long timeoutNanos, boolean mirror) throws IOException {
+        var channel = DatagramChannel.open();
+        try {
+            channel.connect(server);
+            channel.configureBlocking(false);
+            var buffer = ByteBuffer.allocate(NetProtocol.MAX_PACKET_SIZE);
+            long deadline = System.nanoTime() + timeoutNanos;
+            long nextHello = System.nanoTime();
+            while (System.nanoTime() < deadline) {
+                if (System.nanoTime() >= nextHello) {
+                    buffer.clear();
+                    buffer.put(NetProtocol.HELLO);
+                    buffer.putShort(NetProtocol.VERSION);
+                    buffer.flip();
+                    send(channel, buffer);
+                    nextHello += HELLO_INTERVAL_NANOS;
+                }
+                buffer.clear();
+                if (receive(channel, buffer) > 0) {
+                    buffer.flip();
+                    if (buffer.get() == NetProtocol.WELCOME) {
+                        WorldMirror worldMirror = null;
+                        if (mirror) {
+                            var world = new World(buffer.getDouble(), buffer.getDouble(),
+                                    buffer.getDouble(), buffer.getInt());
+                            worldMirror = new WorldMirror(world);
+                        }
+                        return new GameClient(channel, worldMirror);
+                    }
+                } else {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                }
+            }
+            throw new IOException("No answer from " + server);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Sends the pressed inputs along with the acknowledgement of the newest snapshot.
+     *
+     * @param inputs The pressed inputs, one bit per {@link topviewgame.world.Input} ordinal.
+     * @throws IOException If the socket fails.
+     */
+    public void sendInput(int inputs) throws IOException {
+        sendBuffer.clear();
+        sendBuffer.put(NetProtocol.INPUT);
+        sendBuffer.put((byte) inputs);
+        sendBuffer.putInt(latest == null ? -1 : latest.sequence);
+        sendBuffer.flip();
+        send(channel, sendBuffer);
+    }
+
+    /**
+     * Reads all snapshots that arrived since the last poll and applies the newest one to the mirror.
+     * Snapshots older than the newest one, and snapshots whose baseline is no longer kept, are
+     * dropped.
+     *
+     * @param now The current time in nanoseconds.
+     * @return True if a new game started on the server; false otherwise.
+     * @throws IOException If the socket fails.
+     */
+    public boolean poll(long now) throws IOException {
+        EntitySnapshot newest = null;
+        while (true) {
+            receiveBuffer.clear();
+            int read = receive(channel, receiveBuffer);
+            if (read <= 0) {
+                break;
+            }
+            bytesReceived += read;
+            receiveBuffer.flip();
+            try {
+                EntitySnapshot snapshot = decode(receiveBuffer);
+                if (snapshot != null) {
+                    newest = snapshot;
+                }
+            } catch (BufferUnderflowException | ProtocolException e) {
+                // Truncated or malformed packet
+                snapshotsDropped++;
+            }
+        }
+        // A malformed packet may have reused the slot of a snapshot decoded earlier in this poll
+        if (newest == null || newest != latest) {
+            return false;
+        }
+        latestArrival = now;
+        return mirror != null && applyToMirror(newest);
+    }
+
+    /**
+     * Decodes a snapshot packet against the baseline it names.
+     *
+     * @param in The packet.
+     * @return The decoded snapshot, or null if the packet is not a new snapshot or its baseline is gone.
+     * @throws ProtocolException If the packet is malformed.
+     */
+    private EntitySnapshot decode(ByteBuffer in) throws ProtocolException {
+        if (in.get() != NetProtocol.SNAPSHOT) {
+            return null;
+        }
+        int sequence = in.getInt();
+        int baselineSequence = in.getInt();
+        if (latest != null && sequence <= latest.sequence) {
+            return null;
+        }
+
+        // The baseline must still be kept and must not share its slot with the new snapshot
+        EntitySnapshot baseline = null;
+        if (baselineSequence >= 0) {
+            baseline = received[baselineSequence % NetProtocol.SNAPSHOT_HISTORY];
+            if (baseline == null || baseline.sequence != baselineSequence
+                    || sequence - baselineSequence >= NetProtocol.SNAPSHOT_HISTORY) {
+                snapshotsDropped++;
+                return null;
+            }
+        }
+        int slot = sequence % NetProtocol.SNAPSHOT_HISTORY;
+        if (received[slot] == null) {
+            received[slot] = new EntitySnapshot();
+        }
+        EntitySnapshot snapshot = received[slot];
+        int latestSequence = latest == null ? -1 : latest.sequence;
+        if (snapshot == latest) {
+            // A failed decode leaves the snapshot unusable, so it must not stay the newest one
+            latest = null;
+        }
+        snapshot.decode(in, sequence, baseline);
+        if (latestSequence >= 0) {
+            snapshotsLost += sequence - latestSequence - 1;
+        }
+        snapshotsReceived++;
+        latest = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * Applies a snapshot to the mirror, switching maps when the server started a new game.
+     *
+     * @param snapshot The snapshot.
+     * @return True if a new game started; false otherwise.
+     */
+    private boolean applyToMirror(EntitySnapshot snapshot) {
+        boolean newGame = !mirrorStarted || snapshot.seed != mirror.getSeed();
+        if (newGame) {
+            mirror.reset(snapshot.seed);
+            mirrorStarted = true;
+        }
+        if (npcX.length < snapshot.count) {
+            npcX = new double[snapshot.ids.length];
+            npcY = new double[snapshot.ids.length];
+        }
+        for (int k = 0; k < snapshot.count; k++) {
+            npcX[k] = NetProtocol.dequantize(snapshot.xs[k]);
+            npcY[k] = NetProtocol.dequantize(snapshot.ys[k]);
+        }
+        mirror.update(snapshot.step, NetProtocol.dequantize(snapshot.playerX),
+                NetProtocol.dequantize(snapshot.playerY), snapshot.flags >>> EntitySnapshot.INPUT_SHIFT,
+                (snapshot.flags & EntitySnapshot.GAME_OVER) != 0, (snapshot.flags & EntitySnapshot.PEACE_TIME) != 0,
+                snapshot.count, snapshot.ids, npcX, npcY);
+        return newGame;
+    }
+
+    /**
+     * Gets the interpolation factor between the last two snapshots, rising from 0 when the newest
+     * snapshot arrived to 1 when the next one is due.
+     *
+     * @param now The current time in nanoseconds.
+     * @return The interpolation factor.
+     */
+    public double getAlpha(long now) {
+        return Math.clamp((now - latestArrival) / (double) SNAPSHOT_NANOS, 0, 1);
+    }
+
+    /**
+     * Gets the mirrored world.
+     *
+     * @return The world, or null if the client was connected without a mirror.
+     */
+    public World getWorld() {
+        return mirror == null ? null : mirror.getWorld();
+    }
+
+    public boolean hasSnapshot() {
+        return latest != null;
+    }
+
+    public int getVisibleNpcs() {
+        return latest == null ? 0 : latest.count;
+    }
+
+    public int getTotalNpcs() {
+        return latest == null ? 0 : latest.totalNpcs;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getSnapshotsReceived() {
+        return snapshotsReceived;
+    }
+
+    public long getSnapshotsLost() {
+        return snapshotsLost;
+    }
+
+    public long getSnapshotsDropped() {
+        return snapshotsDropped;
+    }
+
+    /**
+     * Tells the server the client leaves and closes the socket.
+     *
+     * @throws IOException If the socket cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            sendBuffer.clear();
+            sendBuffer.put(NetProtocol.BYE);
+            sendBuffer.flip();
+            send(channel, sendBuffer);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Sends a packet, ignoring that the server is not reachable; the client keeps sending until it is.
+     */
+    private static void send(DatagramChannel channel, ByteBuffer packet) throws IOException {
+        try {
+            channel.write(packet);
+        } catch (PortUnreachableException e) {
+            // No server listening yet, or it went away
+        }
+    }
+
+    /**
+     * Reads a packet if one is pending, treating an unreachable server as no packet.
+     */
+    private static int receive(DatagramChannel channel, ByteBuffer packet) throws IOException {
+        try {
+            return channel.read(packet);
+        } catch (PortUnreachableException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package topviewgame.net;
+
+import topviewgame.metrics.Histogram;
+import topviewgame.world.Input;
+import topviewgame.world.World;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the authoritative simulation of one world and streams it to clients over UDP.
+ * <p>
+ * The server ticks the world at the fixed step rate like the game, with the inputs of the client
+ * that joined first; the world has a single player, so later clients watch until they are first
+ * in line. Every {@link NetProtocol#SNAPSHOT_INTERVAL} steps it captures an {@link EntitySnapshot}
+ * of the view area around the player and sends it to every client, delta-compressed against the
+ * last snapshot that client acknowledged. A snapshot packet depends only on its baseline, so it is
+ * encoded once per distinct baseline and shared by all clients on it; clients that keep up all
+ * acknowledge the same few snapshots. The cost per snapshot therefore grows with the NPCs in view
+ * and the number of distinct baselines, not with the total NPC count or the number of clients.
+ * <p>
+ * All networking goes through one non-blocking {@link DatagramChannel} polled once per step, so
+ * the server runs on a single thread. Snapshots are captured and encoded into reused buffers, so
+ * sending allocates nothing per packet; receiving allocates the sender address the channel returns
+ * for every datagram, and a new client entry on each first HELLO. A game over restarts the
+ * game after a few seconds, and clients that stay silent for a few seconds are dropped.
+ * <p>
+ * Usage: {@code GameServer [--port=P] [--width=W] [--height=H] [--view=WxH] [--invulnerable]}.
+ */
+public class GameServer implements AutoCloseable {
+    private static final long CLIENT_TIMEOUT_STEPS = 5 * 60;
+    private static final long RESTART_DELAY_STEPS = 3 * 60;
+    private static final long REPORT_INTERVAL_STEPS = 5 * 60;
+
+    private static final Input[] INPUTS = Input.values();
+
+    private final World world;
+    private final DatagramChannel channel;
+
+    // Size of the area around the player sent to clients
+    private final double viewWidth;
+    private final double viewHeight;
+
+    // Connected clients in the order they joined; the first one controls the player
+    private final Map<SocketAddress, Client> clients = new LinkedHashMap<>();
+
+    // Recently sent snapshots, which clients acknowledge and the next snapshots are encoded against
+    private final EntitySnapshot[] history = new EntitySnapshot[NetProtocol.SNAPSHOT_HISTORY];
+    private int sequence = -1;
+    // Scratch space for capturing, whose length caps the NPCs per snapshot so that every snapshot
+    // fits into a datagram, as checked by NetProtocol#MAX_SNAPSHOT_SIZE
+    private final int[] indices = new int[NetProtocol.MAX_SNAPSHOT_NPCS];
+    private final long[] keys = new long[NetProtocol.MAX_SNAPSHOT_NPCS];
+
+    // Packets of the current snapshot by baseline slot, plus one sent in full, and the snapshot each holds
+    private final ByteBuffer[] packets = new ByteBuffer[NetProtocol.SNAPSHOT_HISTORY + 1];
+    private final int[] packetSequence = new int[NetProtocol.SNAPSHOT_HISTORY + 1];
+
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocate(NetProtocol.MAX_PACKET_SIZE);
+    private final ByteBuffer welcomeBuffer = ByteBuffer.allocate(64);
+
+    // Steps since the server started, including game over time, and the step the game ended at
+    private long serverSteps;
+    private long gameOverStep = -1;
+    private volatile boolean running = true;
+
+    // Statistics since the last report
+    private final Histogram tickTimes = new Histogram();
+    private final Histogram snapshotTimes = new Histogram();
+    private long bytesSent;
+    private long packetsSent;
+    private long packetsEncoded;
+    private long npcsInView;
+    private long snapshotsCaptured;
+
+    /**
+     * A connected client.
+     */
+    private static class Client {
+        final SocketAddress address;
+        int inputs;
+        int acknowledgedSequence = -1;
+        long lastHeardStep;
+
+        Client(SocketAddress address) {
+            this.address = address;
+        }
+    }
+
+    /**
+     * Constructs a server and opens its socket.
+     *
+     * @param world      The world to simulate.
+     * @param address    The address to listen on; port 0 picks a free port.
+     * @param viewWidth  The width of the area around the player sent to clients.
+     * @param viewHeight The height of the area around the player sent to clients.
+     * @throws IOException If the socket cannot be opened.
+     */
+    public GameServer(World world, InetSocketAddress address, double viewWidth, double viewHeight) throws IOException {
+        this.world = world;
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+        channel = DatagramChannel.open();
+        channel.bind(address);
+        channel.configureBlocking(false);
+        for (int slot = 0; slot < packets.length; slot++) {
+            packets[slot] = ByteBuffer.allocate(NetProtocol.MAX_PACKET_SIZE);
+            packetSequence[slot] = -1;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = NetProtocol.DEFAULT_PORT;
+        double width = 1920;
+        double height = 1080;
+        double viewWidth = 2560;
+        double viewHeight = 1440;
+        boolean invulnerable = false;
+        for (String arg : args) {
+            String name = arg.contains("=") ? arg.substring(0, arg.indexOf('=')) : arg;
+            String value = arg.substring(name.length()).replaceFirst("^=", "");
+            switch (name) {
+                case "--port" -> port = Integer.parseInt(value);
+                case "--width" -> width = Double.parseDouble(value);
+                case "--height" -> height = Double.parseDouble(value);
+                case "--view" -> {
+                    viewWidth = Double.parseDouble(value.substring(0, value.indexOf('x')));
+                    viewHeight = Double.parseDouble(value.substring(value.indexOf('x') + 1));
+                }
+                case "--invulnerable" -> invulnerable = true;
+                default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+
+        var world = new World(width, height);
+        world.setInvulnerable(invulnerable);
+        try (var server = new GameServer(world, new InetSocketAddress(port), viewWidth, viewHeight)) {
+            System.out.printf("Serving a %.0fx%.0f world on UDP port %d%n", width, height, server.getPort());
+            server.run();
+        }
+    }
+
+    /**
+     * Runs the server paced at the fixed step rate until it is closed, reporting its load every
+     * few seconds.
+     *
+     * @throws IOException If the socket fails.
+     */
+    public void run() throws IOException {
+        long start = System.nanoTime();
+        try {
+            while (running) {
+                long due = start + serverSteps * World.STEP_NANOS;
+                for (long now = System.nanoTime(); now < due; now = System.nanoTime()) {
+                    LockSupport.parkNanos(due - now);
+                }
+                step();
+                if (serverSteps % REPORT_INTERVAL_STEPS == 0) {
+                    System.out.println(report());
+                }
+            }
+        } catch (ClosedChannelException e) {
+            if (running) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Runs one step: reads the pending packets, ticks the world with the inputs of the controlling
+     * client and sends a snapshot when one is due.
+     *
+     * @throws IOException If the socket fails.
+     */
+    public void step() throws IOException {
+        serverSteps++;
+        receivePackets();
+        dropSilentClients();
+        applyControllingInputs();
+
+        long start = System.nanoTime();
+        world.tick();
+        tickTimes.record(System.nanoTime() - start);
+
+        // Restart a few seconds after a game over, so clients can show it
+        if (world.isGameOver()) {
+            if (gameOverStep < 0) {
+                gameOverStep = serverSteps;
+            } else if (serverSteps - gameOverStep >= RESTART_DELAY_STEPS) {
+                world.reset();
+                gameOverStep = -1;
+            }
+        }
+
+        if (serverSteps % NetProtocol.SNAPSHOT_INTERVAL == 0 && !clients.isEmpty()) {
+            sendSnapshots();
+        }
+    }
+
+    /**
+     * Handles all packets that arrived since the last step. Malformed packets are ignored.
+     *
+     * @throws IOException If the socket fails.
+     */
+    private void receivePackets() throws IOException {
+        while (true) {
+            receiveBuffer.clear();
+            SocketAddress from = channel.receive(receiveBuffer);
+            if (from == null) {
+                return;
+            }
+            receiveBuffer.flip();
+            try {
+                handlePacket(from, receiveBuffer);
+            } catch (BufferUnderflowException e) {
+                // Truncated packet
+            }
+        }
+    }
+
+    private void handlePacket(SocketAddress from, ByteBuffer in) throws IOException {
+        byte type = in.get();
+        if (type == NetProtocol.HELLO) {
+            if (in.getShort() != NetProtocol.VERSION) {
+                return;
+            }
+            clients.computeIfAbsent(from, Client::new).lastHeardStep = serverSteps;
+            sendWelcome(from);
+            return;
+        }
+
+        Client client = clients.get(from);
+        if (client == null) {
+            return;
+        }
+        client.lastHeardStep = serverSteps;
+        if (type == NetProtocol.INPUT) {
+            client.inputs = in.get();
+            // Datagrams can arrive out of order; keep the newest acknowledgement
+            client.acknowledgedSequence = Math.max(client.acknowledgedSequence, in.getInt());
+        } else if (type == NetProtocol.BYE) {
+            clients.remove(from);
+        }
+    }
+
+    private void sendWelcome(SocketAddress to) throws IOException {
+        welcomeBuffer.clear();
+        welcomeBuffer.put(NetProtocol.WELCOME);
+        welcomeBuffer.putDouble(world.getWidth());
+        welcomeBuffer.putDouble(world.getHeight());
+        welcomeBuffer.putDouble(world.getBuildingDensity());
+        welcomeBuffer.putInt(world.getActiveChunks());
+        welcomeBuffer.flip();
+        channel.send(welcomeBuffer, to);
+    }
+
+    private void dropSilentClients() {
+        for (Iterator<Client> iterator = clients.values().iterator(); iterator.hasNext(); ) {
+            if (serverSteps - iterator.next().lastHeardStep > CLIENT_TIMEOUT_STEPS) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Applies the inputs of the client that joined first to the player, or releases all inputs
+     * when no client is connected.
+     */
+    private void applyControllingInputs() {
+        int inputs = clients.isEmpty() ? 0 : clients.values().iterator().next().inputs;
+        for (Input input : INPUTS) {
+            boolean pressed = (inputs & 1 << input.ordinal()) != 0;
+            if (world.isPressed(input) != pressed) {
+                world.applyInput(input, pressed);
+            }
+        }
+    }
+
+    /**
+     * Captures a snapshot and sends it to every client, encoded against the client's baseline.
+     *
+     * @throws IOException If the socket fails.
+     */
+    private void sendSnapshots() throws IOException {
+        long start = System.nanoTime();
+        sequence++;
+        int slot = sequence % NetProtocol.SNAPSHOT_HISTORY;
+        if (history[slot] == null) {
+            history[slot] = new EntitySnapshot();
+        }
+        EntitySnapshot snapshot = history[slot];
+        snapshot.capture(world, sequence, viewWidth, viewHeight, indices, keys);
+        snapshotsCaptured++;
+        npcsInView += snapshot.count;
+
+        for (Client client : clients.values()) {
+            EntitySnapshot baseline = baselineOf(client);
+            int packetSlot = baseline == null ? NetProtocol.SNAPSHOT_HISTORY
+                    : baseline.sequence % NetProtocol.SNAPSHOT_HISTORY;
+            ByteBuffer packet = packets[packetSlot];
+            if (packetSequence[packetSlot] != sequence) {
+                packet.clear();
+                snapshot.encode(packet, baseline);
+                packet.flip();
+                packetSequence[packetSlot] = sequence;
+                packetsEncoded++;
+            }
+            packet.rewind();
+            bytesSent += channel.send(packet, client.address);
+            packetsSent++;
+        }
+        snapshotTimes.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Gets the snapshot a client acknowledged last, if it is still in the history.
+     *
+     * @param client The client.
+     * @return The baseline snapshot, or null if the next snapshot has to be sent in full.
+     */
+    private EntitySnapshot baselineOf(Client client) {
+        int acknowledged = client.acknowledgedSequence;
+        if (acknowledged < 0 || acknowledged >= sequence || sequence - acknowledged >= NetProtocol.SNAPSHOT_HISTORY) {
+            return null;
+        }
+        EntitySnapshot baseline = history[acknowledged % NetProtocol.SNAPSHOT_HISTORY];
+        return baseline != null && baseline.sequence == acknowledged ? baseline : null;
+    }
+
+    /**
+     * Formats the load since the last report and starts a new reporting interval.
+     *
+     * @return The report line.
+     */
+    public String report() {
+        double seconds = REPORT_INTERVAL_STEPS * World.STEP_MILLIS / 1000;
+        String report = String.format("clients %d, npcs %d, in view %.0f, tick p50 %.2f ms p99 %.2f ms, "
+                        + "snapshot p99 %.3f ms, %d encodes for %d packets, out %.1f kB/s (%.2f kB/s per client)",
+                clients.size(), world.getNpcs().size(), npcsInView / (double) Math.max(1, snapshotsCaptured),
+                tickTimes.getValueAtPercentile(50) / 1e6, tickTimes.getValueAtPercentile(99) / 1e6,
+                snapshotTimes.getValueAtPercentile(99) / 1e6, packetsEncoded, packetsSent,
+                bytesSent / 1024.0 / seconds, bytesSent / 1024.0 / seconds / Math.max(1, clients.size()));
+        tickTimes.reset();
+        snapshotTimes.reset();
+        bytesSent = 0;
+        packetsSent = 0;
+        packetsEncoded = 0;
+        npcsInView = 0;
+        snapshotsCaptured = 0;
+        return report;
+    }
+
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    /**
+     * Stops {@link #run()} and closes the socket.
+     *
+     * @throws IOException If the socket cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        channel.close();
+    }
+}
@@ -0,0 +1,123 @@
+package topviewgame.net;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * Packet layout and value encodings shared by the {@link GameServer} and the {@link GameClient}.
+ * <p>
+ * Every datagram starts with a type byte:
+ * <ul>
+ *     <li>{@link #HELLO}, client to server: the protocol version as a short. Repeated until the
+ *     server answers.</li>
+ *     <li>{@link #WELCOME}, server to client: the world layout, as width, height and building
+ *     density doubles and the active chunk count as an int.</li>
+ *     <li>{@link #INPUT}, client to server: the pressed inputs as a byte, one bit per
+ *     {@link topviewgame.world.Input} ordinal, and the sequence number of the last snapshot the
+ *     client received as an int. Sent every frame, so a lost packet is replaced by the next one.</li>
+ *     <li>{@link #SNAPSHOT}, server to client: an {@link EntitySnapshot}, delta-compressed against
+ *     the last snapshot the client acknowledged.</li>
+ *     <li>{@link #BYE}, client to server: the client leaves.</li>
+ * </ul>
+ * Positions are quantized to {@link #POSITION_SCALE} units per pixel. Varints are unsigned LEB128;
+ * signed values are zigzag-encoded first, so small deltas of either sign take one byte. Packets are
+ * read from untrusted senders, so readers reject varints longer than {@link #MAX_VARINT_BYTES} and
+ * counts that the rest of the packet cannot hold with a {@link ProtocolException}.
+ */
+final class NetProtocol {
+    static final short VERSION = 1;
+    static final int DEFAULT_PORT = 47_000;
+
+    // Packet types
+    static final byte HELLO = 1;
+    static final byte WELCOME = 2;
+    static final byte INPUT = 3;
+    static final byte SNAPSHOT = 4;
+    static final byte BYE = 5;
+
+    // Largest datagram sent or received; snapshots are capped to fit
+    static final int MAX_PACKET_SIZE = 60_000;
+
+    // NPCs in a snapshot at most, and the longest varint, which holds any int
+    static final int MAX_SNAPSHOT_NPCS = 2048;
+    static final int MAX_VARINT_BYTES = 5;
+
+    // Largest snapshot packet: the fixed fields and the two entry counts, then every NPC of the
+    // baseline removed and every NPC in view changed, with all varints at their longest
+    static final int MAX_SNAPSHOT_SIZE = 1 + 2 * Integer.BYTES + 2 * Long.BYTES + 2 * Integer.BYTES + 1
+            + MAX_VARINT_BYTES + 2 * Integer.BYTES + MAX_SNAPSHOT_NPCS * 4 * MAX_VARINT_BYTES;
+
+    static {
+        if (MAX_SNAPSHOT_SIZE > MAX_PACKET_SIZE) {
+            throw new AssertionError("A full snapshot does not fit into a packet: " + MAX_SNAPSHOT_SIZE + " bytes");
+        }
+    }
+
+    // Steps between two snapshots (20 snapshots per second), and snapshots kept as delta baselines
+    static final int SNAPSHOT_INTERVAL = 3;
+    static final int SNAPSHOT_HISTORY = 32;
+
+    // Quantization steps per pixel
+    static final double POSITION_SCALE = 4;
+
+    private NetProtocol() {
+    }
+
+    static int quantize(double position) {
+        return (int) Math.round(position * POSITION_SCALE);
+    }
+
+    static double dequantize(int position) {
+        return position / POSITION_SCALE;
+    }
+
+    static void putVarInt(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static int getVarInt(ByteBuffer in) throws ProtocolException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (shift == 7 * MAX_VARINT_BYTES) {
+                throw new ProtocolException("Varint longer than " + MAX_VARINT_BYTES + " bytes");
+            }
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    static void putSignedVarInt(ByteBuffer out, int value) {
+        putVarInt(out, value << 1 ^ value >> 31);
+    }
+
+    static int getSignedVarInt(ByteBuffer in) throws ProtocolException {
+        int value = getVarInt(in);
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    /**
+     * Reads an entry count and checks that it is plausible.
+     *
+     * @param in       The packet.
+     * @param limit    The largest allowed count.
+     * @param minBytes The fewest bytes each entry takes in the packet.
+     * @return The count.
+     * @throws ProtocolException If the count is negative, above the limit or does not fit into the
+     *                           rest of the packet.
+     */
+    static int getCount(ByteBuffer in, int limit, int minBytes) throws ProtocolException {
+        int count = in.getInt();
+        if (count < 0 || count > limit || (long) count * minBytes > in.remaining()) {
+            throw new ProtocolException("Invalid entry count: " + count);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,70 @@
+package topviewgame.render;
+
+import topviewgame.world.World;
+
+/**
+ * The part of the world shown on screen. Follows the player and stops at the world edges.
+ */
+public class Camera {
+    // Size of the visible area
+    private final double viewportWidth;
+    private final double viewportHeight;
+
+    // Top-left corner of the visible area in world coordinates
+    private double x;
+    private double y;
+
+    /**
+     * Constructs a new camera.
+     *
+     * @param viewportWidth  The width of the visible area.
+     * @param viewportHeight The height of the visible area.
+     */
+    public Camera(double viewportWidth, double viewportHeight) {
+        this.viewportWidth = viewportWidth;
+        this.viewportHeight = viewportHeight;
+    }
+
+    /**
+     * Centers the view on the player between the last two simulation steps, keeping it inside the world.
+     *
+     * @param world The world to show.
+     * @param alpha The interpolation factor; 0 is the previous step and 1 the current one.
+     */
+    public void follow(World world, double alpha) {
+        double centerX = world.getCharacterX(alpha) + World.CHARACTER_SIZE / 2.0;
+        double centerY = world.getCharacterY(alpha) + World.CHARACTER_SIZE / 2.0;
+        x = Math.clamp(centerX - viewportWidth / 2, 0, Math.max(0, world.getWidth() - viewportWidth));
+        y = Math.clamp(centerY - viewportHeight / 2, 0, Math.max(0, world.getHeight() - viewportHeight));
+    }
+
+    /**
+     * Checks if any part of a box is in view.
+     *
+     * @param x      The x-coordinate of the box.
+     * @param y      The y-coordinate of the box.
+     * @param width  The width of the box.
+     * @param height The height of the box.
+     * @return True if the box is at least partly visible; false otherwise.
+     */
+    public boolean isVisible(double x, double y, double width, double height) {
+        return x < this.x + viewportWidth && x + width > this.x
+                && y < this.y + viewportHeight && y + height > this.y;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getViewportWidth() {
+        return viewportWidth;
+    }
+
+    public double getViewportHeight() {
+        return viewportHeight;
+    }
+}
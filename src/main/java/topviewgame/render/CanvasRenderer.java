@@ -0,0 +1,145 @@
+package topviewgame.render;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import topviewgame.item.Building;
+import topviewgame.world.Chunk;
+import topviewgame.world.NpcStore;
+import topviewgame.world.World;
+
+/**
+ * Renders the world into two canvases instead of one node per entity.
+ * <p>
+ * Borders and buildings never move, so they are drawn once into a background canvas that reaches
+ * {@link #BACKGROUND_MARGIN} beyond the view on every side, which is shifted as the camera moves.
+ * The background is only redrawn when chunks are loaded or evicted or the view leaves the drawn
+ * area, and then only with the buildings of the chunks it covers. All visible NPC and player
+ * sprites are redrawn each frame in a single pass over a screen-sized sprite canvas.
+ */
+public class CanvasRenderer implements Renderer {
+    private static final int CHARACTER_SIZE = World.CHARACTER_SIZE;
+
+    // Extent of the background beyond the view on each side
+    private static final double BACKGROUND_MARGIN = 256;
+
+    private final Pane layer;
+    private final Camera camera;
+    private World world;
+
+    // Background layer with the map and the per-frame sprite layer
+    private Canvas background;
+    private Canvas sprites;
+
+    // World position of the top-left corner of the background, and the chunk map version it was
+    // drawn for
+    private double backgroundX;
+    private double backgroundY;
+    private int backgroundVersion;
+
+    // Shared sprites
+    private final SpriteAtlas spriteAtlas = SpriteAtlas.get();
+
+    /**
+     * Constructs a new canvas renderer.
+     *
+     * @param layer  The pane the canvases are added to.
+     * @param camera The camera selecting the visible part of the world.
+     */
+    public CanvasRenderer(Pane layer, Camera camera) {
+        this.layer = layer;
+        this.camera = camera;
+    }
+
+    @Override
+    public void attach(World world) {
+        this.world = world;
+        background = new Canvas(camera.getViewportWidth() + 2 * BACKGROUND_MARGIN,
+                camera.getViewportHeight() + 2 * BACKGROUND_MARGIN);
+        sprites = new Canvas(camera.getViewportWidth(), camera.getViewportHeight());
+        layer.getChildren().addAll(background, sprites);
+        backgroundVersion = -1;
+    }
+
+    @Override
+    public void render(double alpha) {
+        camera.follow(world, alpha);
+        if (camera.getX() < backgroundX || camera.getY() < backgroundY
+                || camera.getX() + camera.getViewportWidth() > backgroundX + background.getWidth()
+                || camera.getY() + camera.getViewportHeight() > backgroundY + background.getHeight()
+                || world.getChunks().getVersion() != backgroundVersion) {
+            drawBackground();
+        }
+        background.setTranslateX(backgroundX - camera.getX());
+        background.setTranslateY(backgroundY - camera.getY());
+
+        GraphicsContext gc = sprites.getGraphicsContext2D();
+        gc.clearRect(0, 0, camera.getViewportWidth(), camera.getViewportHeight());
+
+        // Same stacking as the node renderer: NPCs are drawn over the player
+        drawSprite(gc, Sprite.player(world.getPlayerFrame()), world.getCharacterX(alpha), world.getCharacterY(alpha));
+        NpcStore npcs = world.getNpcs();
+        for (int i = 0; i < npcs.size(); i++) {
+            double x = npcs.getX(i, alpha);
+            double y = npcs.getY(i, alpha);
+            if (camera.isVisible(x, y, CHARACTER_SIZE, CHARACTER_SIZE)) {
+                drawSprite(gc, Sprite.npc(world.getNpcFrame(i)), x, y);
+            }
+        }
+    }
+
+    /**
+     * Draws the borders and buildings of the chunks around the view into the background canvas,
+     * centering the canvas on the view.
+     */
+    private void drawBackground() {
+        backgroundX = camera.getX() - BACKGROUND_MARGIN;
+        backgroundY = camera.getY() - BACKGROUND_MARGIN;
+        backgroundVersion = world.getChunks().getVersion();
+
+        GraphicsContext gc = background.getGraphicsContext2D();
+        gc.clearRect(0, 0, background.getWidth(), background.getHeight());
+        gc.setFill(Color.DARKGRAY);
+        for (Chunk chunk : world.getChunks().getLoadedChunks()) {
+            if (!isInBackground(chunk.getX(), chunk.getY(), chunk.getWidth(), chunk.getHeight())) {
+                continue;
+            }
+            for (Building building : chunk.getBuildings()) {
+                if (isInBackground(building.getX(), building.getY(), building.getWidth(), building.getHeight())) {
+                    gc.fillRect(building.getX() - backgroundX, building.getY() - backgroundY,
+                            building.getWidth(), building.getHeight());
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if any part of a box lies in the area covered by the background canvas.
+     *
+     * @param x      The x-coordinate of the box.
+     * @param y      The y-coordinate of the box.
+     * @param width  The width of the box.
+     * @param height The height of the box.
+     * @return True if the box is at least partly covered; false otherwise.
+     */
+    private boolean isInBackground(double x, double y, double width, double height) {
+        return x < backgroundX + background.getWidth() && x + width > backgroundX
+                && y < backgroundY + background.getHeight() && y + height > backgroundY;
+    }
+
+    /**
+     * Draws a character-sized sprite from the atlas at a position in world coordinates.
+     *
+     * @param gc     The graphics context to draw into.
+     * @param sprite The sprite to draw.
+     * @param x      The x-coordinate of the sprite in the world.
+     * @param y      The y-coordinate of the sprite in the world.
+     */
+    private void drawSprite(GraphicsContext gc, Sprite sprite, double x, double y) {
+        var region = spriteAtlas.getRegion(sprite);
+        gc.drawImage(spriteAtlas.getImage(),
+                region.getMinX(), region.getMinY(), region.getWidth(), region.getHeight(),
+                x - camera.getX(), y - camera.getY(), CHARACTER_SIZE, CHARACTER_SIZE);
+    }
+}
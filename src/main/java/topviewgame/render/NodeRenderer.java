@@ -0,0 +1,205 @@
+package topviewgame.render;
+
+import javafx.scene.Group;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import topviewgame.item.Building;
+import topviewgame.world.Chunk;
+import topviewgame.world.ChunkMap;
+import topviewgame.world.NpcStore;
+import topviewgame.world.World;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders every NPC, the player and the buildings of the visible chunks as their own scene nodes.
+ * <p>
+ * All nodes live in a world group in world coordinates, which is shifted against the camera.
+ * Buildings are grouped per chunk, and a chunk's group is only in the scene while the chunk is
+ * in view. Sprite and camera state is recorded in a {@link SceneSync}, which touches only the
+ * nodes whose state changed when the frame is committed.
+ */
+public class NodeRenderer implements Renderer {
+    private static final int CHARACTER_SIZE = World.CHARACTER_SIZE;
+
+    private final Pane layer;
+    private final SceneSync sceneSync;
+    private final Camera camera;
+    private World world;
+
+    // World content shifted by the camera, with the buildings below the sprites
+    private Group worldGroup;
+    private Group buildingGroup;
+    private Group spriteGroup;
+
+    // Building groups of the chunks in view, and the chunk range and chunk map version they match
+    private final Map<Chunk, ChunkView> chunkViews = new HashMap<>();
+    private int firstVisibleColumn;
+    private int lastVisibleColumn;
+    private int firstVisibleRow;
+    private int lastVisibleRow;
+    private int chunkVersion;
+
+    // Visual representation of game entities
+    private final List<ImageView> npcViews = new ArrayList<>();
+    private int characterSprite;
+
+    // Shared sprites
+    private final SpriteAtlas sprites = SpriteAtlas.get();
+
+    /**
+     * Constructs a new node renderer.
+     *
+     * @param layer     The pane the nodes are added to.
+     * @param sceneSync The stage that applies node changes at the end of each frame.
+     * @param camera    The camera selecting the visible part of the world.
+     */
+    public NodeRenderer(Pane layer, SceneSync sceneSync, Camera camera) {
+        this.layer = layer;
+        this.sceneSync = sceneSync;
+        this.camera = camera;
+    }
+
+    @Override
+    public void attach(World world) {
+        this.world = world;
+        npcViews.clear();
+        chunkViews.clear();
+        chunkVersion = -1;
+        sceneSync.clearSprites();
+
+        buildingGroup = new Group();
+        spriteGroup = new Group();
+        worldGroup = new Group(buildingGroup, spriteGroup);
+        layer.getChildren().add(worldGroup);
+        sceneSync.attachCamera(worldGroup);
+
+        var character = new ImageView(sprites.getImage());
+        character.setFitWidth(CHARACTER_SIZE);
+        character.setFitHeight(CHARACTER_SIZE);
+        spriteGroup.getChildren().add(character);
+        characterSprite = sceneSync.addSprite(character);
+    }
+
+    @Override
+    public void render(double alpha) {
+        camera.follow(world, alpha);
+        sceneSync.updateCamera(camera.getX(), camera.getY());
+        syncChunkViews();
+        sceneSync.updateSprite(characterSprite, world.getCharacterX(alpha), world.getCharacterY(alpha),
+                sprites.getRegion(Sprite.player(world.getPlayerFrame())));
+        syncNpcViews(alpha);
+    }
+
+    /**
+     * Adds the building groups of the chunks that came into view and removes the groups of chunks
+     * that left the view or were evicted. Does nothing while the visible chunk range and the loaded
+     * chunks stay the same.
+     */
+    private void syncChunkViews() {
+        ChunkMap chunks = world.getChunks();
+        int firstColumn = chunks.columnOf(camera.getX());
+        int lastColumn = chunks.columnOf(camera.getX() + camera.getViewportWidth());
+        int firstRow = chunks.rowOf(camera.getY());
+        int lastRow = chunks.rowOf(camera.getY() + camera.getViewportHeight());
+        if (chunks.getVersion() == chunkVersion
+                && firstColumn == firstVisibleColumn && lastColumn == lastVisibleColumn
+                && firstRow == firstVisibleRow && lastRow == lastVisibleRow) {
+            return;
+        }
+        chunkVersion = chunks.getVersion();
+        firstVisibleColumn = firstColumn;
+        lastVisibleColumn = lastColumn;
+        firstVisibleRow = firstRow;
+        lastVisibleRow = lastRow;
+
+        var loaded = chunks.getLoadedChunks();
+        // Chunk objects are reused by the chunk map, so a view only matches the generation it was built for
+        chunkViews.entrySet().removeIf(entry -> {
+            Chunk chunk = entry.getKey();
+            if (loaded.contains(chunk) && isInView(chunk) && entry.getValue().generation == chunk.getGeneration()) {
+                return false;
+            }
+            buildingGroup.getChildren().remove(entry.getValue().group);
+            return true;
+        });
+        for (Chunk chunk : loaded) {
+            if (isInView(chunk) && !chunkViews.containsKey(chunk)) {
+                var view = new Group();
+                for (Building building : chunk.getBuildings()) {
+                    var shape = new Rectangle(building.getX(), building.getY(),
+                            building.getWidth(), building.getHeight());
+                    shape.setFill(Color.DARKGRAY);
+                    view.getChildren().add(shape);
+                }
+                chunkViews.put(chunk, new ChunkView(chunk.getGeneration(), view));
+                buildingGroup.getChildren().add(view);
+            }
+        }
+    }
+
+    /**
+     * Checks if a chunk lies in the visible chunk range.
+     *
+     * @param chunk The chunk.
+     * @return True if the chunk is in view; false otherwise.
+     */
+    private boolean isInView(Chunk chunk) {
+        return chunk.getColumn() >= firstVisibleColumn && chunk.getColumn() <= lastVisibleColumn
+                && chunk.getRow() >= firstVisibleRow && chunk.getRow() <= lastVisibleRow;
+    }
+
+    /**
+     * Matches the pool of NPC views to the NPC store and records each NPC's position and
+     * animation frame for the view with the same index.
+     *
+     * @param alpha The interpolation factor between the last two simulation steps.
+     */
+    private void syncNpcViews(double alpha) {
+        NpcStore npcs = world.getNpcs();
+        while (npcViews.size() < npcs.size()) {
+            var view = new ImageView(sprites.getImage());
+            view.setViewport(sprites.getRegion(Sprite.npc(0)));
+            view.setFitWidth(CHARACTER_SIZE);
+            view.setFitHeight(CHARACTER_SIZE);
+            npcViews.add(view);
+            spriteGroup.getChildren().add(view);
+            sceneSync.addSprite(view);
+        }
+        int excess = npcViews.size() - npcs.size();
+        if (excess > 0) {
+            for (int k = 0; k < excess; k++) {
+                npcViews.removeLast();
+                sceneSync.removeLastSprite();
+            }
+            // NPC views are the last children of the sprite group, so they are removed as one range
+            int children = spriteGroup.getChildren().size();
+            spriteGroup.getChildren().remove(children - excess, children);
+        }
+
+        // NPC views were registered right after the character sprite
+        int firstSprite = characterSprite + 1;
+        for (int i = 0; i < npcs.size(); i++) {
+            sceneSync.updateSprite(firstSprite + i, npcs.getX(i, alpha), npcs.getY(i, alpha),
+                    sprites.getRegion(Sprite.npc(world.getNpcFrame(i))));
+        }
+    }
+
+    /**
+     * The building group of a chunk and the chunk generation it shows.
+     */
+    private static final class ChunkView {
+        private final long generation;
+        private final Group group;
+
+        ChunkView(long generation, Group group) {
+            this.generation = generation;
+            this.group = group;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package topviewgame.render;
+
+import javafx.scene.layout.Pane;
+
+/**
+ * Available rendering strategies, selected at startup.
+ */
+public enum RenderMode {
+    /**
+     * One scene node per NPC and player, and per building of the visible chunks.
+     */
+    NODES,
+    /**
+     * Buildings drawn into a background canvas larger than the view that moves with the camera, and
+     * all sprites drawn in one canvas pass.
+     */
+    CANVAS;
+
+    /**
+     * Creates a renderer of this mode that adds its nodes to the given pane.
+     *
+     * @param layer     The pane to render into.
+     * @param sceneSync The stage that applies node changes at the end of each frame.
+     * @param camera    The camera selecting the visible part of the world.
+     * @return The new renderer.
+     */
+    public Renderer createRenderer(Pane layer, SceneSync sceneSync, Camera camera) {
+        return switch (this) {
+            case NODES -> new NodeRenderer(layer, sceneSync, camera);
+            case CANVAS -> new CanvasRenderer(layer, camera);
+        };
+    }
+
+    /**
+     * Parses a render mode name, case-insensitively.
+     *
+     * @param name The name of the mode, or null.
+     * @return The matching mode, or {@link #NODES} if the name is null.
+     */
+    public static RenderMode parse(String name) {
+        return name == null ? NODES : valueOf(name.toUpperCase());
+    }
+}
@@ -0,0 +1,24 @@
+package topviewgame.render;
+
+import topviewgame.world.World;
+
+/**
+ * Draws the state of a {@link World} into the scene graph.
+ */
+public interface Renderer {
+    /**
+     * Builds the nodes for a freshly generated world. Called once per map, before any call to
+     * {@link #render(double)}.
+     *
+     * @param world The world to draw.
+     */
+    void attach(World world);
+
+    /**
+     * Draws the part of the attached world in view of the renderer's camera, between its last two
+     * simulation steps.
+     *
+     * @param alpha The interpolation factor; 0 is the previous step and 1 the current one.
+     */
+    void render(double alpha);
+}
@@ -0,0 +1,273 @@
+package topviewgame.render;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Node;
+import javafx.scene.image.ImageView;
+import javafx.scene.text.Text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects the changes a frame makes to sprite and HUD nodes and applies them in one pass.
+ * <p>
+ * Renderers and the HUD record the state each node should show; only values that differ from
+ * what the node already shows are queued, and {@link #apply()} writes the queued values at the
+ * end of the frame. Unchanged state never touches a node.
+ */
+public class SceneSync {
+    // Sprite nodes and the state they currently show
+    private final List<ImageView> sprites = new ArrayList<>();
+    private double[] shownX = new double[64];
+    private double[] shownY = new double[64];
+    private Rectangle2D[] shownViewport = new Rectangle2D[64];
+
+    // State recorded for the sprites changed in this frame
+    private double[] pendingX = new double[64];
+    private double[] pendingY = new double[64];
+    private Rectangle2D[] pendingViewport = new Rectangle2D[64];
+    private boolean[] dirty = new boolean[64];
+    private int[] dirtySprites = new int[64];
+    private int dirtyCount;
+
+    // HUD nodes and the values they show
+    private Text timerText;
+    private Text npcCountText;
+    private long shownSeconds = -1;
+    private int shownNpcCount = -1;
+    private boolean timerDirty;
+    private boolean npcCountDirty;
+
+    // Node holding the world content, and the camera position it is shifted to
+    private Node worldLayer;
+    private double cameraX;
+    private double cameraY;
+    private boolean cameraDirty;
+
+    // Metrics overlay node and the text it shows
+    private Text metricsText;
+    private String shownMetrics;
+    private boolean metricsDirty;
+
+    /**
+     * Sets the HUD nodes for a new game and forgets the values they showed.
+     *
+     * @param timerText    The survival time text.
+     * @param npcCountText The NPC count text.
+     */
+    public void attachHud(Text timerText, Text npcCountText) {
+        this.timerText = timerText;
+        this.npcCountText = npcCountText;
+        shownSeconds = -1;
+        shownNpcCount = -1;
+        timerDirty = false;
+        npcCountDirty = false;
+    }
+
+    /**
+     * Sets the metrics overlay node for a new game.
+     *
+     * @param metricsText The metrics overlay text.
+     */
+    public void attachMetrics(Text metricsText) {
+        this.metricsText = metricsText;
+        shownMetrics = metricsText.getText();
+        metricsDirty = false;
+    }
+
+    /**
+     * Sets the node holding the world content for a new game. The node is shifted against the
+     * camera position, so everything inside it is placed in world coordinates.
+     *
+     * @param worldLayer The world content node.
+     */
+    public void attachCamera(Node worldLayer) {
+        this.worldLayer = worldLayer;
+        cameraX = 0;
+        cameraY = 0;
+        cameraDirty = false;
+    }
+
+    /**
+     * Registers a sprite node.
+     *
+     * @param view The node.
+     * @return The index used to record changes for the node.
+     */
+    public int addSprite(ImageView view) {
+        int i = sprites.size();
+        if (i == shownX.length) {
+            grow();
+        }
+        sprites.add(view);
+        shownX[i] = view.getX();
+        shownY[i] = view.getY();
+        shownViewport[i] = view.getViewport();
+        dirty[i] = false;
+        return i;
+    }
+
+    /**
+     * Unregisters the most recently added sprite node.
+     *
+     * @return The removed node.
+     */
+    public ImageView removeLastSprite() {
+        int i = sprites.size() - 1;
+        if (dirty[i]) {
+            // Drop the pending change of the removed node
+            dirty[i] = false;
+            int write = 0;
+            for (int read = 0; read < dirtyCount; read++) {
+                if (dirtySprites[read] != i) {
+                    dirtySprites[write++] = dirtySprites[read];
+                }
+            }
+            dirtyCount = write;
+        }
+        return sprites.removeLast();
+    }
+
+    /**
+     * Unregisters all sprite nodes.
+     */
+    public void clearSprites() {
+        sprites.clear();
+        Arrays.fill(dirty, false);
+        dirtyCount = 0;
+    }
+
+    /**
+     * Records the state a sprite node should show.
+     *
+     * @param i        The index of the sprite node.
+     * @param x        The x-coordinate.
+     * @param y        The y-coordinate.
+     * @param viewport The atlas region to show.
+     */
+    public void updateSprite(int i, double x, double y, Rectangle2D viewport) {
+        if (x == shownX[i] && y == shownY[i] && viewport == shownViewport[i]) {
+            if (dirty[i]) {
+                // Back to what the node shows: keep the node untouched
+                pendingX[i] = x;
+                pendingY[i] = y;
+                pendingViewport[i] = viewport;
+            }
+            return;
+        }
+        pendingX[i] = x;
+        pendingY[i] = y;
+        pendingViewport[i] = viewport;
+        if (!dirty[i]) {
+            dirty[i] = true;
+            dirtySprites[dirtyCount++] = i;
+        }
+    }
+
+    /**
+     * Records the camera position to show.
+     *
+     * @param x The x-coordinate of the top-left corner of the view.
+     * @param y The y-coordinate of the top-left corner of the view.
+     */
+    public void updateCamera(double x, double y) {
+        if (x != cameraX || y != cameraY) {
+            cameraX = x;
+            cameraY = y;
+            cameraDirty = true;
+        }
+    }
+
+    /**
+     * Records the survival time to show.
+     *
+     * @param seconds The survival time in whole seconds.
+     */
+    public void updateTimer(long seconds) {
+        if (seconds != shownSeconds) {
+            shownSeconds = seconds;
+            timerDirty = true;
+        }
+    }
+
+    /**
+     * Records the NPC count to show.
+     *
+     * @param count The number of NPCs.
+     */
+    public void updateNpcCount(int count) {
+        if (count != shownNpcCount) {
+            shownNpcCount = count;
+            npcCountDirty = true;
+        }
+    }
+
+    /**
+     * Records the text the metrics overlay should show.
+     *
+     * @param text The overlay text.
+     */
+    public void updateMetrics(String text) {
+        if (!text.equals(shownMetrics)) {
+            shownMetrics = text;
+            metricsDirty = true;
+        }
+    }
+
+    /**
+     * Applies all recorded changes to the nodes.
+     */
+    public void apply() {
+        for (int d = 0; d < dirtyCount; d++) {
+            int i = dirtySprites[d];
+            dirty[i] = false;
+            var view = sprites.get(i);
+            if (pendingX[i] != shownX[i]) {
+                view.setX(pendingX[i]);
+                shownX[i] = pendingX[i];
+            }
+            if (pendingY[i] != shownY[i]) {
+                view.setY(pendingY[i]);
+                shownY[i] = pendingY[i];
+            }
+            if (pendingViewport[i] != shownViewport[i]) {
+                view.setViewport(pendingViewport[i]);
+                shownViewport[i] = pendingViewport[i];
+            }
+        }
+        dirtyCount = 0;
+
+        if (cameraDirty) {
+            cameraDirty = false;
+            worldLayer.setTranslateX(-cameraX);
+            worldLayer.setTranslateY(-cameraY);
+        }
+        if (timerDirty) {
+            timerDirty = false;
+            long minutes = shownSeconds / 60;
+            long seconds = shownSeconds % 60;
+            timerText.setText(String.format("Time: %02d:%02d", minutes, seconds));
+        }
+        if (npcCountDirty) {
+            npcCountDirty = false;
+            npcCountText.setText("NPCs: " + shownNpcCount);
+        }
+        if (metricsDirty) {
+            metricsDirty = false;
+            metricsText.setText(shownMetrics);
+        }
+    }
+
+    private void grow() {
+        int capacity = shownX.length * 2;
+        shownX = Arrays.copyOf(shownX, capacity);
+        shownY = Arrays.copyOf(shownY, capacity);
+        shownViewport = Arrays.copyOf(shownViewport, capacity);
+        pendingX = Arrays.copyOf(pendingX, capacity);
+        pendingY = Arrays.copyOf(pendingY, capacity);
+        pendingViewport = Arrays.copyOf(pendingViewport, capacity);
+        dirty = Arrays.copyOf(dirty, capacity);
+        dirtySprites = Arrays.copyOf(dirtySprites, capacity);
+    }
+}
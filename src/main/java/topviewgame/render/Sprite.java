@@ -0,0 +1,50 @@
+package topviewgame.render;
+
+/**
+ * All sprites used by the game, with the resource each one is loaded from.
+ */
+public enum Sprite {
+    PLAYER_IDLE("/player_idle.png"),
+    PLAYER_WALK1("/player_walk1.png"),
+    PLAYER_WALK2("/player_walk2.png"),
+    NPC_WALK1("/npc_walk1.png"),
+    NPC_WALK2("/npc_walk2.png");
+
+    private static final Sprite[] PLAYER_WALKING_FRAMES = {PLAYER_WALK1, PLAYER_WALK2};
+    private static final Sprite[] NPC_WALKING_FRAMES = {NPC_WALK1, NPC_WALK2};
+
+    private final String resource;
+
+    Sprite(String resource) {
+        this.resource = resource;
+    }
+
+    /**
+     * Gets the classpath resource of the sprite.
+     *
+     * @return The resource path.
+     */
+    public String getResource() {
+        return resource;
+    }
+
+    /**
+     * Gets the player sprite for a walking frame.
+     *
+     * @param frame The walking frame, or -1 if the player is standing still.
+     * @return The sprite to draw.
+     */
+    public static Sprite player(int frame) {
+        return frame < 0 ? PLAYER_IDLE : PLAYER_WALKING_FRAMES[frame];
+    }
+
+    /**
+     * Gets the NPC sprite for a walking frame.
+     *
+     * @param frame The walking frame.
+     * @return The sprite to draw.
+     */
+    public static Sprite npc(int frame) {
+        return NPC_WALKING_FRAMES[frame];
+    }
+}
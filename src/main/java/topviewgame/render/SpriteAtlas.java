@@ -0,0 +1,87 @@
+package topviewgame.render;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Central registry of all game sprites.
+ * <p>
+ * Every sprite resource is decoded exactly once and packed into a single atlas image. Renderers
+ * share the atlas and draw sub-regions of it, so spawning entities or switching animation frames
+ * never decodes an image or allocates pixel buffers.
+ */
+public final class SpriteAtlas {
+    private static final int PADDING = 1; // Keeps filtering from bleeding between neighbours
+
+    private static SpriteAtlas instance;
+
+    private final WritableImage atlas;
+    private final Map<Sprite, Rectangle2D> regions = new EnumMap<>(Sprite.class);
+
+    private SpriteAtlas() {
+        // Decode every sprite once
+        Map<Sprite, Image> images = new EnumMap<>(Sprite.class);
+        for (Sprite sprite : Sprite.values()) {
+            images.put(sprite, load(sprite));
+        }
+
+        // Pack the sprites side by side into one strip
+        int width = 0;
+        int height = 0;
+        for (Image image : images.values()) {
+            width += (int) image.getWidth() + PADDING;
+            height = Math.max(height, (int) image.getHeight());
+        }
+        atlas = new WritableImage(width, height);
+
+        int x = 0;
+        for (var entry : images.entrySet()) {
+            var image = entry.getValue();
+            int spriteWidth = (int) image.getWidth();
+            int spriteHeight = (int) image.getHeight();
+            atlas.getPixelWriter().setPixels(x, 0, spriteWidth, spriteHeight, image.getPixelReader(), 0, 0);
+            regions.put(entry.getKey(), new Rectangle2D(x, 0, spriteWidth, spriteHeight));
+            x += spriteWidth + PADDING;
+        }
+    }
+
+    /**
+     * Gets the shared atlas, loading it on first use. Must be called on the JavaFX Application Thread.
+     *
+     * @return The sprite atlas.
+     */
+    public static SpriteAtlas get() {
+        if (instance == null) {
+            instance = new SpriteAtlas();
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the image holding all packed sprites.
+     *
+     * @return The atlas image.
+     */
+    public Image getImage() {
+        return atlas;
+    }
+
+    /**
+     * Gets the region of the atlas that holds a sprite. The same instance is returned on every call.
+     *
+     * @param sprite The sprite.
+     * @return The region of the sprite within the atlas image.
+     */
+    public Rectangle2D getRegion(Sprite sprite) {
+        return regions.get(sprite);
+    }
+
+    private static Image load(Sprite sprite) {
+        // Loaded in the foreground, so the pixels are ready for packing
+        return new Image(SpriteAtlas.class.getResource(sprite.getResource()).toExternalForm());
+    }
+}
@@ -0,0 +1,149 @@
+package topviewgame.replay;
+
+import topviewgame.world.Input;
+import topviewgame.world.World;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Records games into a compact binary file that a {@link Replay} can play back exactly.
+ * <p>
+ * The world is deterministic given its seed, so only the seed of every game and the steps at which
+ * the player inputs change are written, plus a state hash at the end of each game to check the
+ * replay against. Inputs are captured by comparing the input state of the world to the last
+ * recorded one before every step, so it does not matter whether the keyboard or a bot sets them.
+ * The file format is described in {@link ReplayFormat}.
+ */
+public class Recorder implements AutoCloseable {
+    private static final Input[] INPUTS = Input.values();
+
+    private final DataOutputStream out;
+    private boolean headerWritten = false;
+
+    // State of the game being recorded
+    private boolean recording = false;
+    private long lastStep;
+    private final boolean[] pressed = new boolean[INPUTS.length];
+
+    /**
+     * Creates a recording file, replacing any existing file.
+     *
+     * @param file The file to record into.
+     * @throws IOException If the file cannot be created.
+     */
+    public Recorder(Path file) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+    }
+
+    /**
+     * Starts recording a game of a freshly reset world. The world layout is taken from the first
+     * game and has to stay the same for all games of a recording.
+     *
+     * @param world The world, reset with the seed of the new game.
+     */
+    public void startGame(World world) {
+        try {
+            if (!headerWritten) {
+                out.writeInt(ReplayFormat.MAGIC);
+                out.writeShort(ReplayFormat.VERSION);
+                out.writeDouble(world.getWidth());
+                out.writeDouble(world.getHeight());
+                out.writeDouble(world.getBuildingDensity());
+                out.writeInt(world.getActiveChunks());
+                headerWritten = true;
+            }
+            if (recording) {
+                endGame(world);
+            }
+            out.writeByte(ReplayFormat.GAME_START);
+            out.writeLong(world.getSeed());
+            out.writeDouble(world.getLodMidDistance());
+            out.writeDouble(world.getLodFarDistance());
+            out.writeBoolean(world.isInvulnerable());
+            out.writeByte(world.getSteeringMode().ordinal());
+            out.writeInt(world.getJobBudget());
+            out.writeBoolean(world.isStaggeredRetargeting());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        recording = true;
+        lastStep = world.getSteps();
+        for (Input input : INPUTS) {
+            pressed[input.ordinal()] = world.isPressed(input);
+        }
+    }
+
+    /**
+     * Records the inputs that changed since the last call. Called right before every step.
+     *
+     * @param world The recorded world.
+     */
+    public void captureInputs(World world) {
+        if (!recording) {
+            return;
+        }
+        for (Input input : INPUTS) {
+            boolean isPressed = world.isPressed(input);
+            if (isPressed != pressed[input.ordinal()]) {
+                pressed[input.ordinal()] = isPressed;
+                writeRecord(ReplayFormat.inputCode(input.ordinal(), isPressed), world.getSteps());
+            }
+        }
+    }
+
+    /**
+     * Ends the recorded game, storing its length and final state hash. Does nothing if no game is
+     * being recorded.
+     *
+     * @param world The recorded world.
+     */
+    public void endGame(World world) {
+        if (!recording) {
+            return;
+        }
+        recording = false;
+        writeRecord(ReplayFormat.GAME_END, world.getSteps());
+        try {
+            out.writeLong(world.stateHash());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a record code followed by the steps since the previous record.
+     *
+     * @param code The record code.
+     * @param step The step of the record.
+     */
+    private void writeRecord(int code, long step) {
+        try {
+            out.writeByte(code);
+            long delta = step - lastStep;
+            while ((delta & ~0x7FL) != 0) {
+                out.writeByte((int) (delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            out.writeByte((int) delta);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        lastStep = step;
+    }
+
+    /**
+     * Closes the file. A game still being recorded is left without an end record, so its replay
+     * runs until the recorded inputs are used up and cannot be checked.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,264 @@
+package topviewgame.replay;
+
+import topviewgame.world.Input;
+import topviewgame.world.SteeringMode;
+import topviewgame.world.World;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Plays back a recording made by a {@link Recorder}.
+ * <p>
+ * Every recorded game is replayed by resetting a world with the recorded seed and settings and
+ * applying the recorded inputs right before the steps they were captured at. The caller drives the
+ * steps, so a replay can run paced like the game or as fast as possible:
+ * <pre>{@code
+ * while (replay.startNextGame(world)) {
+ *     while (!replay.isGameFinished(world)) {
+ *         replay.applyInputs(world);
+ *         world.tick();
+ *     }
+ *     boolean identical = replay.matchesRecording(world);
+ * }
+ * }</pre>
+ * All records are checked when the recording is loaded, so a corrupt recording is rejected with an
+ * {@link IOException} up front instead of failing in the middle of a replay.
+ */
+public class Replay {
+    private static final Input[] INPUTS = Input.values();
+    private static final SteeringMode[] STEERING_MODES = SteeringMode.values();
+
+    private final ByteBuffer data;
+
+    // World layout from the header
+    private final double width;
+    private final double height;
+    private final double buildingDensity;
+    private final int activeChunks;
+
+    // Next record of the current game: its code, or -1 at the end of the file, and its step
+    private int nextCode;
+    private long nextStep;
+    private long recordedHash;
+
+    /**
+     * Constructs a replay of the recording in a buffer.
+     *
+     * @param data The recording.
+     * @throws IOException If the data is not a recording of a supported version or is corrupt.
+     */
+    public Replay(ByteBuffer data) throws IOException {
+        this.data = data;
+        if (data.remaining() < 6 || data.getInt() != ReplayFormat.MAGIC) {
+            throw new IOException("Not a game recording");
+        }
+        short version = data.getShort();
+        if (version != ReplayFormat.VERSION) {
+            throw new IOException("Unsupported recording version: " + version);
+        }
+        if (data.remaining() < 3 * Double.BYTES + Integer.BYTES) {
+            throw new IOException("Truncated recording header");
+        }
+        width = data.getDouble();
+        height = data.getDouble();
+        buildingDensity = data.getDouble();
+        activeChunks = data.getInt();
+        if (!(width > 0) || !(height > 0) || !(buildingDensity > 0) || activeChunks < 1) {
+            throw new IOException("Invalid world layout in recording: " + width + "x" + height
+                    + ", density " + buildingDensity + ", " + activeChunks + " active chunks");
+        }
+        checkRecords();
+        readNextRecord();
+    }
+
+    /**
+     * Loads a recording file.
+     *
+     * @param file The recording file.
+     * @return The replay, positioned before the first game.
+     * @throws IOException If the file cannot be read or is not a recording.
+     */
+    public static Replay load(Path file) throws IOException {
+        return new Replay(ByteBuffer.wrap(Files.readAllBytes(file)));
+    }
+
+    /**
+     * Creates a world with the recorded layout, ready for {@link #startNextGame(World)}.
+     *
+     * @return The world.
+     */
+    public World createWorld() {
+        return new World(width, height, buildingDensity, activeChunks);
+    }
+
+    /**
+     * Skips the rest of the current game and resets a world to the start of the next recorded game.
+     *
+     * @param world A world created by {@link #createWorld()}.
+     * @return True if a game was started; false if the recording has no more games.
+     */
+    public boolean startNextGame(World world) {
+        while (nextCode != -1 && nextCode != ReplayFormat.GAME_START) {
+            readNextRecord();
+        }
+        if (nextCode == -1 || data.remaining() < ReplayFormat.GAME_START_BYTES) {
+            nextCode = -1;
+            return false;
+        }
+        long seed = data.getLong();
+        double lodMidDistance = data.getDouble();
+        double lodFarDistance = data.getDouble();
+        boolean invulnerable = data.get() != 0;
+        SteeringMode steeringMode = STEERING_MODES[data.get()];
+        int jobBudget = data.getInt();
+        boolean staggeredRetargeting = data.get() != 0;
+
+        world.setLodDistances(lodMidDistance, lodFarDistance);
+        world.setInvulnerable(invulnerable);
+        world.setSteeringMode(steeringMode);
+        world.setJobBudget(jobBudget);
+        world.setStaggeredRetargeting(staggeredRetargeting);
+        world.reset(seed);
+        nextStep = 0;
+        readNextRecord();
+        return true;
+    }
+
+    /**
+     * Applies the inputs recorded for the next step. Called right before every step.
+     *
+     * @param world The replayed world.
+     */
+    public void applyInputs(World world) {
+        while (nextCode >= 0 && nextCode < INPUTS.length << 1 && nextStep <= world.getSteps()) {
+            world.applyInput(INPUTS[nextCode >> 1], (nextCode & 1) != 0);
+            readNextRecord();
+        }
+    }
+
+    /**
+     * Checks if the replayed game is over: the game ended in the world, the recorded game ended
+     * at this step, or, for a game recorded without an end, its inputs are used up.
+     *
+     * @param world The replayed world.
+     * @return True if no more steps should be simulated for this game; false otherwise.
+     */
+    public boolean isGameFinished(World world) {
+        if (world.isGameOver()) {
+            return true;
+        }
+        if (nextCode == ReplayFormat.GAME_END) {
+            return world.getSteps() >= nextStep;
+        }
+        return nextCode == -1 || nextCode == ReplayFormat.GAME_START;
+    }
+
+    /**
+     * Checks if a finished game reproduced the recording exactly: it ended at the recorded step
+     * with the recorded state hash.
+     *
+     * @param world The replayed world.
+     * @return True if the replay is identical to the recording; false if it diverged or the game
+     * was recorded without an end.
+     */
+    public boolean matchesRecording(World world) {
+        return hasRecordedEnd() && world.getSteps() == nextStep && world.stateHash() == recordedHash;
+    }
+
+    /**
+     * Checks if the current game was recorded up to its end, so it can be checked.
+     *
+     * @return True if the game has an end record; false otherwise.
+     */
+    public boolean hasRecordedEnd() {
+        return nextCode == ReplayFormat.GAME_END;
+    }
+
+    /**
+     * Checks every record of the recording, then returns to its first record. A record cut off at
+     * the end of the file, as left by a recording that was not closed, ends the check.
+     *
+     * @throws IOException If a record has an unknown code or a game start has invalid settings.
+     */
+    private void checkRecords() throws IOException {
+        int start = data.position();
+        try {
+            for (readRecord(); nextCode != -1; readRecord()) {
+                if (nextCode != ReplayFormat.GAME_START) {
+                    continue;
+                }
+                if (data.remaining() < ReplayFormat.GAME_START_BYTES) {
+                    break;
+                }
+                int offset = data.position();
+                data.getLong();
+                double lodMidDistance = data.getDouble();
+                double lodFarDistance = data.getDouble();
+                data.get();
+                int steeringMode = data.get();
+                int jobBudget = data.getInt();
+                data.get();
+                if (!(lodMidDistance >= 0) || !(lodFarDistance >= lodMidDistance)
+                        || steeringMode < 0 || steeringMode >= STEERING_MODES.length || jobBudget < 0) {
+                    throw new IOException("Corrupt recording: invalid game settings at byte " + (offset - 1));
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            // The last record was cut off
+        }
+        data.position(start);
+        nextStep = 0;
+    }
+
+    /**
+     * Reads the code and step of the next record. A game start is left for
+     * {@link #startNextGame(World)} to read. A record cut off at the end of the file, as left by a
+     * recording that was not closed, counts as the end of the file.
+     */
+    private void readNextRecord() {
+        try {
+            readRecord();
+        } catch (BufferUnderflowException e) {
+            nextCode = -1;
+        } catch (IOException e) {
+            // Every record was checked when the recording was loaded
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void readRecord() throws IOException {
+        if (!data.hasRemaining()) {
+            nextCode = -1;
+            return;
+        }
+        nextCode = data.get() & 0xFF;
+        if (nextCode == ReplayFormat.GAME_START) {
+            return;
+        }
+        if (nextCode >= INPUTS.length << 1 && nextCode != ReplayFormat.GAME_END) {
+            throw new IOException("Corrupt recording: unknown record " + nextCode
+                    + " at byte " + (data.position() - 1));
+        }
+        long delta = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = data.get();
+            delta |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        nextStep += delta;
+        if (nextCode == ReplayFormat.GAME_END) {
+            recordedHash = data.getLong();
+        }
+    }
+
+    public long getRecordedSteps() {
+        return hasRecordedEnd() ? nextStep : -1;
+    }
+}
@@ -0,0 +1,47 @@
+package topviewgame.replay;
+
+/**
+ * Layout of recording files.
+ * <p>
+ * A recording starts with a header holding {@link #MAGIC}, {@link #VERSION} and the layout of the
+ * world: width and height as doubles, the building density as a double and the number of active
+ * chunks as an int. Then follow the recorded games, each made of records that start with a code byte:
+ * <ul>
+ *     <li>{@link #GAME_START}: the seed as a long, the LOD mid and far distances as doubles,
+  *     the invulnerable flag as a boolean, the {@link topviewgame.world.SteeringMode} ordinal as a
+ *     byte, the {@link topviewgame.world.World#getJobBudget() job budget} as an int and the
+ *     {@link topviewgame.world.World#isStaggeredRetargeting() staggered re-targeting} flag as a
+ *     boolean.</li>
+ *     <li>Input codes, {@code input.ordinal() << 1 | pressed}: the steps since the previous record
+ *     of the game as a varint. The input is applied right before that step is simulated.</li>
+ *     <li>{@link #GAME_END}: the steps since the previous record of the game as a varint and the
+ *     {@link topviewgame.world.World#stateHash() state hash} at the end of the game as a long.</li>
+ * </ul>
+ * All values are big-endian, as written by {@link java.io.DataOutputStream}. Varints are unsigned
+ * LEB128, so the steps between two key presses mostly take one or two bytes.
+ */
+final class ReplayFormat {
+    static final int MAGIC = 0x54564752; // "TVGR"
+    static final short VERSION = 1;
+
+    // Record codes; input codes are below 8
+    static final int GAME_START = 0x10;
+    static final int GAME_END = 0x11;
+
+    // Bytes of a game start record after its code
+    static final int GAME_START_BYTES = Long.BYTES + 2 * Double.BYTES + 1 + 1 + Integer.BYTES + 1;
+
+    private ReplayFormat() {
+    }
+
+    /**
+     * Gets the code of an input record.
+     *
+     * @param ordinal The ordinal of the input.
+     * @param pressed True if the input is pressed; false if released.
+     * @return The record code.
+     */
+    static int inputCode(int ordinal, boolean pressed) {
+        return ordinal << 1 | (pressed ? 1 : 0);
+    }
+}
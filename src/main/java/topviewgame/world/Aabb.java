@@ -0,0 +1,47 @@
+package topviewgame.world;
+
+/**
+ * Allocation-free geometry kernel for axis-aligned bounding boxes given as plain doubles.
+ * <p>
+ * All tests treat touching edges as an intersection, matching {@code Bounds.intersects}.
+ */
+public final class Aabb {
+    private Aabb() {
+    }
+
+    /**
+     * Checks if two boxes given by position and size intersect.
+     *
+     * @param ax The x-coordinate of the first box.
+     * @param ay The y-coordinate of the first box.
+     * @param aw The width of the first box.
+     * @param ah The height of the first box.
+     * @param bx The x-coordinate of the second box.
+     * @param by The y-coordinate of the second box.
+     * @param bw The width of the second box.
+     * @param bh The height of the second box.
+     * @return True if the boxes intersect; false otherwise.
+     */
+    public static boolean intersects(double ax, double ay, double aw, double ah,
+                                     double bx, double by, double bw, double bh) {
+        return ax + aw >= bx && bx + bw >= ax && ay + ah >= by && by + bh >= ay;
+    }
+
+    /**
+     * Checks if two boxes given by their minimum and maximum corners intersect.
+     *
+     * @param aMinX The minimum x-coordinate of the first box.
+     * @param aMinY The minimum y-coordinate of the first box.
+     * @param aMaxX The maximum x-coordinate of the first box.
+     * @param aMaxY The maximum y-coordinate of the first box.
+     * @param bMinX The minimum x-coordinate of the second box.
+     * @param bMinY The minimum y-coordinate of the second box.
+     * @param bMaxX The maximum x-coordinate of the second box.
+     * @param bMaxY The maximum y-coordinate of the second box.
+     * @return True if the boxes intersect; false otherwise.
+     */
+    public static boolean intersectsBounds(double aMinX, double aMinY, double aMaxX, double aMaxY,
+                                           double bMinX, double bMinY, double bMaxX, double bMaxY) {
+        return aMaxX >= bMinX && bMaxX >= aMinX && aMaxY >= bMinY && bMaxY >= aMinY;
+    }
+}
@@ -0,0 +1,23 @@
+package topviewgame.world;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Reads how many bytes the current thread has allocated on the heap.
+ */
+public class AllocationMeter {
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Gets the total number of bytes allocated by the current thread so far.
+     *
+     * @return The allocated bytes, or -1 if the JVM does not support allocation measurement.
+     */
+    public long currentThreadAllocatedBytes() {
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return threads.getCurrentThreadAllocatedBytes();
+    }
+}
@@ -0,0 +1,59 @@
+package topviewgame.world;
+
+/**
+ * Single clock shared by all sprite animations.
+ * <p>
+ * Instead of running a timeline per sprite, each entity stores a phase offset and derives its
+ * current frame from the global animation time, so animating costs nothing per entity until the
+ * frame is actually read.
+ */
+public class AnimationClock {
+    public static final double FRAME_DURATION = 200; // Milliseconds per walking frame
+    public static final int FRAME_COUNT = 2;
+
+    // Animation time in milliseconds
+    private double time;
+
+    /**
+     * Advances the clock.
+     *
+     * @param dt The elapsed time in milliseconds.
+     */
+    public void advance(double dt) {
+        time += dt;
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    public void setTime(double time) {
+        this.time = time;
+    }
+
+    /**
+     * Resets the clock to zero.
+     */
+    public void reset() {
+        time = 0;
+    }
+
+    /**
+     * Gets the phase that makes an animation start at its first frame right now.
+     *
+     * @return The phase offset.
+     */
+    public double startPhase() {
+        return -time;
+    }
+
+    /**
+     * Gets the current frame of an animation with the given phase offset.
+     *
+     * @param phase The phase offset of the animation in milliseconds.
+     * @return The frame index in {@code [0, FRAME_COUNT)}.
+     */
+    public int frame(double phase) {
+        return Math.floorMod((long) Math.floor((time + phase) / FRAME_DURATION), FRAME_COUNT);
+    }
+}
@@ -0,0 +1,128 @@
+package topviewgame.world;
+
+import topviewgame.item.Building;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A square piece of the map with its buildings and the border walls along the world edges it touches.
+ * <p>
+ * Chunks are generated by a {@link ChunkMap} and do not change while loaded. The map reuses the
+ * chunk objects it evicts for the chunks it generates next, so a chunk object is only one piece of
+ * the map as long as its {@link #getGeneration() generation} stays the same.
+ */
+public class Chunk {
+    // Position in the chunk grid
+    private int column;
+    private int row;
+
+    // Covered area; chunks at the far world edges are cut off by the world size
+    private double x;
+    private double y;
+    private double width;
+    private double height;
+
+    // Buildings and border walls inside the chunk
+    private final List<Building> buildings = new ArrayList<>();
+    private final List<Building> buildingsView = Collections.unmodifiableList(buildings);
+
+    // Generated buildings compared to the requested number, without the border walls
+    private int requestedBuildings;
+    private int placedBuildings;
+
+    // Number of chunks the map had generated before this one
+    private long generation;
+
+    /**
+     * Constructs an empty chunk, to be generated by the chunk map.
+     */
+    Chunk() {
+    }
+
+    /**
+     * Moves the chunk to a new place in the grid and removes its buildings, before it is generated
+     * again.
+     *
+     * @param column     The column of the chunk in the chunk grid.
+     * @param row        The row of the chunk in the chunk grid.
+     * @param x          The x-coordinate of the chunk.
+     * @param y          The y-coordinate of the chunk.
+     * @param width      The width of the chunk.
+     * @param height     The height of the chunk.
+     * @param generation The number of chunks the map generated before this one.
+     */
+    void reset(int column, int row, double x, double y, double width, double height, long generation) {
+        this.column = column;
+        this.row = row;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.generation = generation;
+        buildings.clear();
+        requestedBuildings = 0;
+        placedBuildings = 0;
+    }
+
+    /**
+     * Records how many buildings the generator was asked for and placed.
+     *
+     * @param requestedBuildings The number of buildings the generator was asked for.
+     * @param placedBuildings    The number of buildings the generator placed.
+     */
+    void setBuildingCounts(int requestedBuildings, int placedBuildings) {
+        this.requestedBuildings = requestedBuildings;
+        this.placedBuildings = placedBuildings;
+    }
+
+    /**
+     * Gets the list the chunk map generates the buildings and border walls into.
+     *
+     * @return The modifiable list of buildings.
+     */
+    List<Building> getGeneratedBuildings() {
+        return buildings;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    public List<Building> getBuildings() {
+        return buildingsView;
+    }
+
+    public int getRequestedBuildings() {
+        return requestedBuildings;
+    }
+
+    public int getPlacedBuildings() {
+        return placedBuildings;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+}
@@ -0,0 +1,353 @@
+package topviewgame.world;
+
+import topviewgame.item.Building;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Generates the map in square chunks on demand and keeps the chunks around the simulated area loaded.
+ * <p>
+ * The content of a chunk depends only on the map seed and the chunk position, so an evicted chunk
+ * comes back unchanged when it is needed again. Chunks are loaded as soon as they touch the simulated
+ * area, but only evicted once they are more than {@link #EVICTION_MARGIN} chunks away from it, so
+ * walking back and forth over a chunk edge does not regenerate anything. The chunks within that
+ * margin can also be loaded ahead of time, one at a time, so they are ready before the area moves
+ * onto them.
+ * <p>
+ * Loaded chunks are looked up in an array over the chunk grid, so updates that neither load nor
+ * evict a chunk do not allocate. Evicted chunk objects are kept and generated again for the next
+ * chunks that load, so a map that is cleared and regenerated, as by a new game, reuses them.
+ */
+public class ChunkMap {
+    // Width and height of a full chunk
+    public static final double CHUNK_SIZE = 1024;
+
+    // Chunks kept loaded on each side of the simulated area, and loaded ahead of it
+    private static final int EVICTION_MARGIN = 1;
+
+    // Mixed with the map seed to give every chunk its own seed
+    private static final long COLUMN_MIX = 0x9E3779B97F4A7C15L;
+    private static final long ROW_MIX = 0xC2B2AE3D27D4EB4FL;
+
+    // Map layout
+    private final double width;
+    private final double height;
+    private final double border;
+    private final int columns;
+    private final int rows;
+
+    // Building rules
+    private final double spacing;
+    private final double minSize;
+    private final double areaPerBuilding;
+    private final MapGenerator generator;
+
+    // Loaded chunks by their index in the chunk grid, and the same chunks in load order
+    private final Chunk[] grid;
+    private final List<Chunk> loaded = new ArrayList<>();
+    private final Collection<Chunk> loadedView = Collections.unmodifiableCollection(loaded);
+    private final List<Chunk> spare = new ArrayList<>();
+    private long seed;
+
+    // Incremented whenever a chunk is loaded or evicted, and the number of chunks generated so far
+    private int version;
+    private long generatedChunks;
+
+    /**
+     * Constructs an empty chunk map.
+     *
+     * @param width           The width of the map.
+     * @param height          The height of the map.
+     * @param border          The thickness of the border walls around the map.
+     * @param spacing         The gap kept between buildings, and between buildings and borders.
+     * @param minSize         The smallest width and height of a building.
+     * @param maxSize         The largest width and height of a building.
+     * @param areaPerBuilding The map area per building.
+     */
+    public ChunkMap(double width, double height, double border, double spacing,
+                    double minSize, double maxSize, double areaPerBuilding) {
+        this.width = width;
+        this.height = height;
+        this.border = border;
+        this.spacing = spacing;
+        this.minSize = minSize;
+        this.areaPerBuilding = areaPerBuilding;
+        this.columns = Math.max(1, (int) Math.ceil(width / CHUNK_SIZE));
+        this.rows = Math.max(1, (int) Math.ceil(height / CHUNK_SIZE));
+        this.generator = new MapGenerator(spacing, minSize, maxSize);
+        this.grid = new Chunk[columns * rows];
+    }
+
+    /**
+     * Evicts all chunks and switches to a new map.
+     *
+     * @param seed The seed of the new map.
+     */
+    public void reset(long seed) {
+        this.seed = seed;
+        clear();
+    }
+
+    /**
+     * Evicts all chunks, so they are generated again on the next update.
+     */
+    public void clear() {
+        for (int i = 0; i < loaded.size(); i++) {
+            Chunk chunk = loaded.get(i);
+            grid[chunk.getRow() * columns + chunk.getColumn()] = null;
+            spare.add(chunk);
+        }
+        loaded.clear();
+        version++;
+    }
+
+    /**
+     * Loads the chunks touching an area and evicts the chunks far away from it.
+     *
+     * @param minX The left edge of the area.
+     * @param minY The top edge of the area.
+     * @param maxX The right edge of the area.
+     * @param maxY The bottom edge of the area.
+     */
+    public void update(double minX, double minY, double maxX, double maxY) {
+        int firstColumn = columnOf(minX);
+        int lastColumn = columnOf(Math.nextDown(maxX));
+        int firstRow = rowOf(minY);
+        int lastRow = rowOf(Math.nextDown(maxY));
+
+        // Swap-remove the evicted chunks, so the list is not shifted
+        for (int i = loaded.size() - 1; i >= 0; i--) {
+            Chunk chunk = loaded.get(i);
+            if (chunk.getColumn() < firstColumn - EVICTION_MARGIN || chunk.getColumn() > lastColumn + EVICTION_MARGIN
+                    || chunk.getRow() < firstRow - EVICTION_MARGIN || chunk.getRow() > lastRow + EVICTION_MARGIN) {
+                grid[chunk.getRow() * columns + chunk.getColumn()] = null;
+                spare.add(chunk);
+                loaded.set(i, loaded.getLast());
+                loaded.removeLast();
+                version++;
+            }
+        }
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                load(column, row);
+            }
+        }
+    }
+
+    /**
+     * Loads chunks within the eviction margin around an area that are not loaded yet, going row by row.
+     *
+     * @param minX  The left edge of the area.
+     * @param minY  The top edge of the area.
+     * @param maxX  The right edge of the area.
+     * @param maxY  The bottom edge of the area.
+     * @param limit The most chunks to load.
+     * @return The number of chunks loaded.
+     */
+    public int loadAround(double minX, double minY, double maxX, double maxY, int limit) {
+        int count = 0;
+        int lastRow = Math.min(rows - 1, rowOf(Math.nextDown(maxY)) + EVICTION_MARGIN);
+        int lastColumn = Math.min(columns - 1, columnOf(Math.nextDown(maxX)) + EVICTION_MARGIN);
+        for (int row = Math.max(0, rowOf(minY) - EVICTION_MARGIN); row <= lastRow; row++) {
+            for (int column = Math.max(0, columnOf(minX) - EVICTION_MARGIN); column <= lastColumn; column++) {
+                if (count == limit) {
+                    return count;
+                }
+                if (load(column, row)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the chunks within the eviction margin around an area that are not loaded yet.
+     *
+     * @param minX The left edge of the area.
+     * @param minY The top edge of the area.
+     * @param maxX The right edge of the area.
+     * @param maxY The bottom edge of the area.
+     * @return The number of missing chunks.
+     */
+    public int countMissingAround(double minX, double minY, double maxX, double maxY) {
+        int count = 0;
+        int lastRow = Math.min(rows - 1, rowOf(Math.nextDown(maxY)) + EVICTION_MARGIN);
+        int lastColumn = Math.min(columns - 1, columnOf(Math.nextDown(maxX)) + EVICTION_MARGIN);
+        for (int row = Math.max(0, rowOf(minY) - EVICTION_MARGIN); row <= lastRow; row++) {
+            for (int column = Math.max(0, columnOf(minX) - EVICTION_MARGIN); column <= lastColumn; column++) {
+                if (grid[row * columns + column] == null) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the chunks within the eviction margin around an area that were not within the margin
+     * around a previous area. The count depends only on the two areas, not on which chunks happen
+     * to be loaded.
+     *
+     * @param minX         The left edge of the area.
+     * @param minY         The top edge of the area.
+     * @param maxX         The right edge of the area.
+     * @param maxY         The bottom edge of the area.
+     * @param previousMinX The left edge of the previous area.
+     * @param previousMinY The top edge of the previous area.
+     * @param previousMaxX The right edge of the previous area.
+     * @param previousMaxY The bottom edge of the previous area.
+     * @return The number of chunks.
+     */
+    public int countNewAround(double minX, double minY, double maxX, double maxY,
+                              double previousMinX, double previousMinY, double previousMaxX, double previousMaxY) {
+        int firstColumn = Math.max(0, columnOf(minX) - EVICTION_MARGIN);
+        int lastColumn = Math.min(columns - 1, columnOf(Math.nextDown(maxX)) + EVICTION_MARGIN);
+        int firstRow = Math.max(0, rowOf(minY) - EVICTION_MARGIN);
+        int lastRow = Math.min(rows - 1, rowOf(Math.nextDown(maxY)) + EVICTION_MARGIN);
+        int overlapColumns = Math.max(0, Math.min(lastColumn, columnOf(Math.nextDown(previousMaxX)) + EVICTION_MARGIN)
+                - Math.max(firstColumn, columnOf(previousMinX) - EVICTION_MARGIN) + 1);
+        int overlapRows = Math.max(0, Math.min(lastRow, rowOf(Math.nextDown(previousMaxY)) + EVICTION_MARGIN)
+                - Math.max(firstRow, rowOf(previousMinY) - EVICTION_MARGIN) + 1);
+        return (lastColumn - firstColumn + 1) * (lastRow - firstRow + 1) - overlapColumns * overlapRows;
+    }
+
+    /**
+     * Loads a chunk unless it is loaded already.
+     *
+     * @param column The column of the chunk.
+     * @param row    The row of the chunk.
+     * @return True if the chunk was generated; false if it was loaded already.
+     */
+    private boolean load(int column, int row) {
+        int index = row * columns + column;
+        if (grid[index] != null) {
+            return false;
+        }
+        Chunk chunk = spare.isEmpty() ? new Chunk() : spare.removeLast();
+        generate(chunk, column, row);
+        grid[index] = chunk;
+        loaded.add(chunk);
+        version++;
+        generatedChunks++;
+        return true;
+    }
+
+    /**
+     * Adds the buildings and walls of the loaded chunks touching an area to a list.
+     *
+     * @param buildings The list to add the buildings to.
+     * @param minX      The left edge of the area.
+     * @param minY      The top edge of the area.
+     * @param maxX      The right edge of the area.
+     * @param maxY      The bottom edge of the area.
+     */
+    public void collectBuildings(List<Building> buildings, double minX, double minY, double maxX, double maxY) {
+        for (int row = rowOf(minY); row <= rowOf(Math.nextDown(maxY)); row++) {
+            for (int column = columnOf(minX); column <= columnOf(Math.nextDown(maxX)); column++) {
+                Chunk chunk = grid[row * columns + column];
+                if (chunk == null) {
+                    continue;
+                }
+                // Copy by index, since addAll would copy the chunk's list into a temporary array first
+                List<Building> chunkBuildings = chunk.getBuildings();
+                for (int i = 0; i < chunkBuildings.size(); i++) {
+                    buildings.add(chunkBuildings.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Generates the content of a chunk from the map seed.
+     *
+     * @param chunk  The chunk object to generate into.
+     * @param column The column of the chunk.
+     * @param row    The row of the chunk.
+     */
+    private void generate(Chunk chunk, int column, int row) {
+        double x = column * CHUNK_SIZE;
+        double y = row * CHUNK_SIZE;
+        double chunkWidth = Math.min(CHUNK_SIZE, width - x);
+        double chunkHeight = Math.min(CHUNK_SIZE, height - y);
+        var random = new SplittableRandom(seed ^ column * COLUMN_MIX ^ row * ROW_MIX);
+
+        // Border walls along the world edges the chunk lies on
+        chunk.reset(column, row, x, y, chunkWidth, chunkHeight, generatedChunks);
+        List<Building> buildings = chunk.getGeneratedBuildings();
+        if (row == 0) {
+            buildings.add(new Building(x, 0, chunkWidth, border));
+        }
+        if (row == rows - 1) {
+            buildings.add(new Building(x, height - border, chunkWidth, border));
+        }
+        if (column == 0) {
+            buildings.add(new Building(0, y, border, chunkHeight));
+        }
+        if (column == columns - 1) {
+            buildings.add(new Building(width - border, y, border, chunkHeight));
+        }
+
+        // Keep the full spacing to the walls and half of it to each neighboring chunk
+        double minX = column == 0 ? border + spacing : x + spacing / 2;
+        double minY = row == 0 ? border + spacing : y + spacing / 2;
+        double maxX = column == columns - 1 ? width - border - spacing : x + chunkWidth - spacing / 2;
+        double maxY = row == rows - 1 ? height - border - spacing : y + chunkHeight - spacing / 2;
+
+        // Randomized rounding keeps the average density independent of the chunk size; slivers
+        // at the map edges that cannot hold a building get none
+        int requested = maxX - minX < minSize || maxY - minY < minSize ? 0
+                : (int) (chunkWidth * chunkHeight / areaPerBuilding + random.nextDouble());
+        int placed = generator.generate(buildings, minX, minY, maxX, maxY, requested, random.nextLong());
+        chunk.setBuildingCounts(requested, placed);
+    }
+
+    /**
+     * Gets the chunk column containing an x-coordinate, clamped to the map.
+     *
+     * @param x The x-coordinate.
+     * @return The column.
+     */
+    public int columnOf(double x) {
+        return Math.clamp((int) Math.floor(x / CHUNK_SIZE), 0, columns - 1);
+    }
+
+    /**
+     * Gets the chunk row containing a y-coordinate, clamped to the map.
+     *
+     * @param y The y-coordinate.
+     * @return The row.
+     */
+    public int rowOf(double y) {
+        return Math.clamp((int) Math.floor(y / CHUNK_SIZE), 0, rows - 1);
+    }
+
+    public Collection<Chunk> getLoadedChunks() {
+        return loadedView;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public long getGeneratedChunks() {
+        return generatedChunks;
+    }
+}
@@ -0,0 +1,416 @@
+package topviewgame.world;
+
+/**
+ * Crowd steering for a single NPC with optimal reciprocal collision avoidance (ORCA).
+ * <p>
+ * Every close NPC and obstacle rules out the velocities that would lead into it within a time
+ * horizon, as a half-plane in velocity space; NPCs share the avoidance between them, so each one
+ * only gives way half. The NPC then takes the allowed velocity closest to its preferred one, found
+ * by a small incremental linear program. When the constraints contradict each other in a dense
+ * crowd, the velocity that violates the NPC constraints the least is taken instead, while the
+ * obstacle constraints stay hard, so NPCs slow down and slide past each other rather than freeze.
+ * <p>
+ * Only the {@link #NEIGHBORS} nearest NPCs and the obstacles within reach of a few steps are
+ * considered, and the candidates are found through the spatial hash and the obstacle index, so the
+ * cost per NPC is bounded however tightly the crowd is packed. NPCs are treated as discs around
+ * their boxes; the velocities are planned for all NPCs moving at once, while the commit phase of
+ * the {@link NpcMovementSystem} moves them one by one, so the discs are large enough that a planned
+ * move rarely runs into a box that has not moved out of the way yet.
+ * <p>
+ * An instance holds scratch space and serves one thread at a time.
+ */
+final class CrowdSteering {
+    // Nearest NPCs considered, and NPCs looked at to find them at most
+    static final int NEIGHBORS = 8;
+    private static final int MAX_CANDIDATES = 64;
+    private static final int MAX_OBSTACLES = 8;
+
+    // Distance between NPC centers that counts as a collision: two discs around the box diagonal,
+    // so NPCs kept apart never have touching boxes
+    private static final double COMBINED_RADIUS = World.CHARACTER_SIZE * Math.sqrt(2) + 2;
+
+    // Steps ahead within which collisions with NPCs and obstacles are avoided
+    private static final double TIME_HORIZON = 10;
+    private static final double OBSTACLE_TIME_HORIZON = 8;
+
+    // Gap kept to obstacles, since touching one counts as a hit
+    private static final double OBSTACLE_MARGIN = 0.01;
+
+    private static final double EPSILON = 1e-9;
+
+    // Candidates and the nearest NPCs sorted by squared distance
+    private final int[] candidates = new int[MAX_CANDIDATES];
+    private final int[] neighbors = new int[NEIGHBORS];
+    private final double[] neighborDistances = new double[NEIGHBORS];
+    private final int[] obstacleItems = new int[MAX_OBSTACLES];
+
+    // Half-planes of allowed velocities: a point on the boundary and its direction, allowed on the
+    // left; obstacle lines come first
+    private static final int MAX_LINES = MAX_OBSTACLES + 4 + NEIGHBORS;
+    private final double[] pointX = new double[MAX_LINES];
+    private final double[] pointY = new double[MAX_LINES];
+    private final double[] directionX = new double[MAX_LINES];
+    private final double[] directionY = new double[MAX_LINES];
+    private int lineCount;
+    private int obstacleLineCount;
+
+    // Lines projected onto a violated line while minimizing the violation
+    private final double[] projectedPointX = new double[MAX_LINES];
+    private final double[] projectedPointY = new double[MAX_LINES];
+    private final double[] projectedDirectionX = new double[MAX_LINES];
+    private final double[] projectedDirectionY = new double[MAX_LINES];
+
+    // Velocity found by the linear programs
+    private double resultX;
+    private double resultY;
+
+    /**
+     * Steers an NPC towards a preferred direction, avoiding obstacles and other NPCs, and stores
+     * the resulting position as its next position and its velocity relative to its speed as its
+     * heading.
+     *
+     * @param npcs        The NPC store.
+     * @param i           The index of the NPC.
+     * @param preferredX  The x-component of the unit direction the NPC wants to move in.
+     * @param preferredY  The y-component of the unit direction the NPC wants to move in.
+     * @param velocityX   The x-components of the velocities of all NPCs at the start of the step.
+     * @param velocityY   The y-components of the velocities of all NPCs at the start of the step.
+     * @param obstacles   The obstacles of the simulated region.
+     */
+    void steer(NpcStore npcs, int i, double preferredX, double preferredY,
+               double[] velocityX, double[] velocityY, ObstacleIndex obstacles) {
+        double x = npcs.x[i];
+        double y = npcs.y[i];
+        double speed = npcs.speed[i];
+        lineCount = 0;
+        addObstacleLines(x, y, speed, obstacles);
+        obstacleLineCount = lineCount;
+        addNeighborLines(npcs, i, velocityX, velocityY);
+
+        // Closest allowed velocity to the preferred one, or the least violating one
+        double preferredVelocityX = preferredX * speed;
+        double preferredVelocityY = preferredY * speed;
+        int failed = linearProgram2(pointX, pointY, directionX, directionY, lineCount, speed,
+                preferredVelocityX, preferredVelocityY, false);
+        if (failed < lineCount) {
+            linearProgram3(failed, speed);
+        }
+
+        // Fall back to sliding along an axis if the velocity still hits an obstacle
+        double moveX = resultX;
+        double moveY = resultY;
+        if (blocked(obstacles, x + moveX, y + moveY)) {
+            if (!blocked(obstacles, x + moveX, y)) {
+                moveY = 0;
+            } else if (!blocked(obstacles, x, y + moveY)) {
+                moveX = 0;
+            } else {
+                moveX = 0;
+                moveY = 0;
+            }
+        }
+        npcs.nextX[i] = x + moveX;
+        npcs.nextY[i] = y + moveY;
+        npcs.headingX[i] = moveX / speed;
+        npcs.headingY[i] = moveY / speed;
+    }
+
+    private static boolean blocked(ObstacleIndex obstacles, double x, double y) {
+        return obstacles.intersects(x, y, World.CHARACTER_SIZE, World.CHARACTER_SIZE);
+    }
+
+    /**
+     * Adds a half-plane for every obstacle and region edge the NPC could reach within the obstacle
+     * time horizon, limiting the speed towards it so that the NPC stops short of it.
+     */
+    private void addObstacleLines(double x, double y, double speed, ObstacleIndex obstacles) {
+        double reach = speed * OBSTACLE_TIME_HORIZON + OBSTACLE_MARGIN;
+
+        // Edges of the simulated region, which obstacle checks treat as walls
+        addWallLine(1, 0, x - obstacles.getOriginX(), reach);
+        addWallLine(-1, 0, obstacles.getLimitX() - World.CHARACTER_SIZE - x, reach);
+        addWallLine(0, 1, y - obstacles.getOriginY(), reach);
+        addWallLine(0, -1, obstacles.getLimitY() - World.CHARACTER_SIZE - y, reach);
+
+        // Buildings, as the boxes the top-left corner of the NPC has to stay out of
+        int found = obstacles.query(x - reach, y - reach,
+                World.CHARACTER_SIZE + 2 * reach, World.CHARACTER_SIZE + 2 * reach, obstacleItems);
+        for (int k = 0; k < found; k++) {
+            int obstacle = obstacleItems[k];
+            double closestX = Math.clamp(x, obstacles.getMinX(obstacle) - World.CHARACTER_SIZE,
+                    obstacles.getMaxX(obstacle));
+            double closestY = Math.clamp(y, obstacles.getMinY(obstacle) - World.CHARACTER_SIZE,
+                    obstacles.getMaxY(obstacle));
+            double distance = Math.hypot(x - closestX, y - closestY);
+            if (distance > EPSILON) {
+                addWallLine((x - closestX) / distance, (y - closestY) / distance, distance, reach);
+            }
+        }
+    }
+
+    /**
+     * Adds the half-plane of a wall, allowing any speed away from it and along it, and at most the
+     * speed that stops short of it within the obstacle time horizon towards it.
+     *
+     * @param normalX  The x-component of the unit normal pointing from the wall to the NPC.
+     * @param normalY  The y-component of the unit normal pointing from the wall to the NPC.
+     * @param distance The distance from the NPC to the wall.
+     * @param reach    The distance beyond which walls are ignored.
+     */
+    private void addWallLine(double normalX, double normalY, double distance, double reach) {
+        if (distance > reach || lineCount == MAX_LINES) {
+            return;
+        }
+        double limit = (distance - OBSTACLE_MARGIN) / OBSTACLE_TIME_HORIZON;
+        pointX[lineCount] = -normalX * limit;
+        pointY[lineCount] = -normalY * limit;
+        directionX[lineCount] = normalY;
+        directionY[lineCount] = -normalX;
+        lineCount++;
+    }
+
+    /**
+     * Adds the reciprocal avoidance half-plane of each of the nearest NPCs.
+     */
+    private void addNeighborLines(NpcStore npcs, int i, double[] velocityX, double[] velocityY) {
+        double x = npcs.x[i];
+        double y = npcs.y[i];
+        double range = COMBINED_RADIUS + 2 * TIME_HORIZON * npcs.speed[i];
+        int found = npcs.query(x - range, y - range, 2 * range, 2 * range, candidates);
+
+        // Keep the nearest ones, sorted by insertion
+        int kept = 0;
+        for (int k = 0; k < found; k++) {
+            int j = candidates[k];
+            double deltaX = npcs.x[j] - x;
+            double deltaY = npcs.y[j] - y;
+            double distanceSquared = deltaX * deltaX + deltaY * deltaY;
+            if (j == i || distanceSquared > range * range
+                    || kept == NEIGHBORS && distanceSquared >= neighborDistances[kept - 1]) {
+                continue;
+            }
+            int slot = kept < NEIGHBORS ? kept++ : kept - 1;
+            while (slot > 0 && neighborDistances[slot - 1] > distanceSquared) {
+                neighborDistances[slot] = neighborDistances[slot - 1];
+                neighbors[slot] = neighbors[slot - 1];
+                slot--;
+            }
+            neighborDistances[slot] = distanceSquared;
+            neighbors[slot] = j;
+        }
+
+        double ownVelocityX = velocityX[i];
+        double ownVelocityY = velocityY[i];
+        for (int k = 0; k < kept; k++) {
+            int j = neighbors[k];
+            double relativeX = npcs.x[j] - x;
+            double relativeY = npcs.y[j] - y;
+            double relativeVelocityX = ownVelocityX - velocityX[j];
+            double relativeVelocityY = ownVelocityY - velocityY[j];
+            double distanceSquared = neighborDistances[k];
+            double radiusSquared = COMBINED_RADIUS * COMBINED_RADIUS;
+            double lineDirectionX;
+            double lineDirectionY;
+            double uX;
+            double uY;
+
+            if (distanceSquared > radiusSquared) {
+                // Vector from the cutoff center of the velocity obstacle to the relative velocity
+                double wX = relativeVelocityX - relativeX / TIME_HORIZON;
+                double wY = relativeVelocityY - relativeY / TIME_HORIZON;
+                double wLengthSquared = wX * wX + wY * wY;
+                double dotProduct = wX * relativeX + wY * relativeY;
+                if (dotProduct < 0 && dotProduct * dotProduct > radiusSquared * wLengthSquared) {
+                    // Closest to the cutoff circle
+                    double wLength = Math.sqrt(wLengthSquared);
+                    double unitX = wX / wLength;
+                    double unitY = wY / wLength;
+                    lineDirectionX = unitY;
+                    lineDirectionY = -unitX;
+                    uX = (COMBINED_RADIUS / TIME_HORIZON - wLength) * unitX;
+                    uY = (COMBINED_RADIUS / TIME_HORIZON - wLength) * unitY;
+                } else {
+                    // Closest to one of the legs of the cone
+                    double leg = Math.sqrt(distanceSquared - radiusSquared);
+                    if (relativeX * wY - relativeY * wX > 0) {
+                        lineDirectionX = (relativeX * leg - relativeY * COMBINED_RADIUS) / distanceSquared;
+                        lineDirectionY = (relativeX * COMBINED_RADIUS + relativeY * leg) / distanceSquared;
+                    } else {
+                        lineDirectionX = -(relativeX * leg + relativeY * COMBINED_RADIUS) / distanceSquared;
+                        lineDirectionY = -(-relativeX * COMBINED_RADIUS + relativeY * leg) / distanceSquared;
+                    }
+                    double projection = relativeVelocityX * lineDirectionX + relativeVelocityY * lineDirectionY;
+                    uX = projection * lineDirectionX - relativeVelocityX;
+                    uY = projection * lineDirectionY - relativeVelocityY;
+                }
+            } else {
+                // Already too close: separate within one step
+                double wX = relativeVelocityX - relativeX;
+                double wY = relativeVelocityY - relativeY;
+                double wLength = Math.hypot(wX, wY);
+                if (wLength < EPSILON) {
+                    continue;
+                }
+                double unitX = wX / wLength;
+                double unitY = wY / wLength;
+                lineDirectionX = unitY;
+                lineDirectionY = -unitX;
+                uX = (COMBINED_RADIUS - wLength) * unitX;
+                uY = (COMBINED_RADIUS - wLength) * unitY;
+            }
+
+            // Each NPC takes half of the avoidance
+            pointX[lineCount] = ownVelocityX + 0.5 * uX;
+            pointY[lineCount] = ownVelocityY + 0.5 * uY;
+            directionX[lineCount] = lineDirectionX;
+            directionY[lineCount] = lineDirectionY;
+            lineCount++;
+        }
+    }
+
+    /**
+     * Finds the allowed point on a line closest to the optimization velocity, given the lines before it.
+     *
+     * @return True if the line has an allowed point within the speed circle; false otherwise.
+     */
+    private boolean linearProgram1(double[] pX, double[] pY, double[] dX, double[] dY, int line, double radius,
+                                   double optimalX, double optimalY, boolean optimizeDirection) {
+        double dotProduct = pX[line] * dX[line] + pY[line] * dY[line];
+        double discriminant = dotProduct * dotProduct + radius * radius - (pX[line] * pX[line] + pY[line] * pY[line]);
+        if (discriminant < 0) {
+            // The speed circle does not reach the line
+            return false;
+        }
+        double root = Math.sqrt(discriminant);
+        double left = -dotProduct - root;
+        double right = -dotProduct + root;
+
+        for (int other = 0; other < line; other++) {
+            double denominator = dX[line] * dY[other] - dY[line] * dX[other];
+            double numerator = dX[other] * (pY[line] - pY[other]) - dY[other] * (pX[line] - pX[other]);
+            if (Math.abs(denominator) <= EPSILON) {
+                // Parallel lines
+                if (numerator < 0) {
+                    return false;
+                }
+                continue;
+            }
+            double t = numerator / denominator;
+            if (denominator >= 0) {
+                right = Math.min(right, t);
+            } else {
+                left = Math.max(left, t);
+            }
+            if (left > right) {
+                return false;
+            }
+        }
+
+        double t;
+        if (optimizeDirection) {
+            t = optimalX * dX[line] + optimalY * dY[line] > 0 ? right : left;
+        } else {
+            // Not Math.clamp, which rejects the bounds -0.0 and 0.0 of a single allowed point
+            t = Math.max(left, Math.min(right, dX[line] * (optimalX - pX[line]) + dY[line] * (optimalY - pY[line])));
+        }
+        resultX = pX[line] + t * dX[line];
+        resultY = pY[line] + t * dY[line];
+        return true;
+    }
+
+    /**
+     * Finds the allowed velocity within the speed circle closest to the optimization velocity, or
+     * furthest in its direction, adding the lines one by one.
+     *
+     * @return The number of lines if all were satisfied, or the index of the line that failed.
+     */
+    private int linearProgram2(double[] pX, double[] pY, double[] dX, double[] dY, int count, double radius,
+                               double optimalX, double optimalY, boolean optimizeDirection) {
+        double optimalLengthSquared = optimalX * optimalX + optimalY * optimalY;
+        if (optimizeDirection) {
+            resultX = optimalX * radius;
+            resultY = optimalY * radius;
+        } else if (optimalLengthSquared > radius * radius) {
+            double scale = radius / Math.sqrt(optimalLengthSquared);
+            resultX = optimalX * scale;
+            resultY = optimalY * scale;
+        } else {
+            resultX = optimalX;
+            resultY = optimalY;
+        }
+
+        for (int line = 0; line < count; line++) {
+            if (dX[line] * (pY[line] - resultY) - dY[line] * (pX[line] - resultX) > 0) {
+                // The result violates this line; move it onto the line
+                double previousX = resultX;
+                double previousY = resultY;
+                if (!linearProgram1(pX, pY, dX, dY, line, radius, optimalX, optimalY, optimizeDirection)) {
+                    resultX = previousX;
+                    resultY = previousY;
+                    return line;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds the velocity that minimizes the largest violation of the NPC lines from a failed line
+     * on, keeping the obstacle lines satisfied.
+     *
+     * @param firstFailed The first line the allowed region could not satisfy.
+     * @param radius      The speed of the NPC.
+     */
+    private void linearProgram3(int firstFailed, double radius) {
+        double distance = 0;
+        for (int line = firstFailed; line < lineCount; line++) {
+            if (directionX[line] * (pointY[line] - resultY) - directionY[line] * (pointX[line] - resultX) <= distance) {
+                continue;
+            }
+
+            // Project the earlier NPC lines onto this one; obstacle lines stay as they are
+            System.arraycopy(pointX, 0, projectedPointX, 0, obstacleLineCount);
+            System.arraycopy(pointY, 0, projectedPointY, 0, obstacleLineCount);
+            System.arraycopy(directionX, 0, projectedDirectionX, 0, obstacleLineCount);
+            System.arraycopy(directionY, 0, projectedDirectionY, 0, obstacleLineCount);
+            int projected = obstacleLineCount;
+            for (int other = obstacleLineCount; other < line; other++) {
+                double determinant = directionX[line] * directionY[other] - directionY[line] * directionX[other];
+                double newPointX;
+                double newPointY;
+                if (Math.abs(determinant) <= EPSILON) {
+                    if (directionX[line] * directionX[other] + directionY[line] * directionY[other] > 0) {
+                        // Same direction; this line is the stricter one
+                        continue;
+                    }
+                    newPointX = 0.5 * (pointX[line] + pointX[other]);
+                    newPointY = 0.5 * (pointY[line] + pointY[other]);
+                } else {
+                    double t = (directionX[other] * (pointY[line] - pointY[other])
+                            - directionY[other] * (pointX[line] - pointX[other])) / determinant;
+                    newPointX = pointX[line] + t * directionX[line];
+                    newPointY = pointY[line] + t * directionY[line];
+                }
+                double newDirectionX = directionX[other] - directionX[line];
+                double newDirectionY = directionY[other] - directionY[line];
+                double length = Math.hypot(newDirectionX, newDirectionY);
+                projectedPointX[projected] = newPointX;
+                projectedPointY[projected] = newPointY;
+                projectedDirectionX[projected] = newDirectionX / length;
+                projectedDirectionY[projected] = newDirectionY / length;
+                projected++;
+            }
+
+            // Move as far as possible in the direction that reduces the violation of this line
+            double previousX = resultX;
+            double previousY = resultY;
+            if (linearProgram2(projectedPointX, projectedPointY, projectedDirectionX, projectedDirectionY, projected,
+                    radius, -directionY[line], directionX[line], true) < projected) {
+                // Can only fail through rounding; keep the previous result
+                resultX = previousX;
+                resultY = previousY;
+            }
+            distance = directionX[line] * (pointY[line] - resultY) - directionY[line] * (pointX[line] - resultX);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package topviewgame.world;
+
+import java.util.Arrays;
+
+/**
+ * Shared navigation field that leads every NPC towards the player around buildings.
+ * <p>
+ * The simulated area of the map is divided into a navigation grid; a cell is walkable if a
+ * character centered on it does not hit an obstacle. A breadth-first search from the goal cell
+ * gives each reachable cell its path distance, and each cell then stores the direction to its
+ * neighbour closest to the goal. Following the field is a constant-time lookup per NPC,
+ * independent of the NPC count.
+ * <p>
+ * When the simulated area moves, the grid is rebuilt in place, since the size of the area stays
+ * the same.
+ */
+public final class FlowField {
+    // Size of a navigation cell
+    public static final double CELL_SIZE = World.CHARACTER_SIZE / 2.0;
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+    private static final byte NO_DIRECTION = -1;
+
+    // Neighbour offsets, orthogonal directions first
+    private static final int[] OFFSET_COLUMN = {1, -1, 0, 0, 1, 1, -1, -1};
+    private static final int[] OFFSET_ROW = {0, 0, 1, -1, 1, -1, 1, -1};
+    private static final double[] DIRECTION_X = new double[8];
+    private static final double[] DIRECTION_Y = new double[8];
+
+    static {
+        for (int d = 0; d < 8; d++) {
+            double length = Math.hypot(OFFSET_COLUMN[d], OFFSET_ROW[d]);
+            DIRECTION_X[d] = OFFSET_COLUMN[d] / length;
+            DIRECTION_Y[d] = OFFSET_ROW[d] / length;
+        }
+    }
+
+    // Grid layout; the origin moves when the grid is rebuilt
+    private double originX;
+    private double originY;
+    private final int columns;
+    private final int rows;
+
+    // Static walkability and the per-goal search results
+    private final boolean[] walkable;
+    private final int[] distance;
+    private final byte[] direction;
+    private final int[] queue;
+
+    // Cell the field currently leads to
+    private int goalCell = -1;
+
+    /**
+     * Constructs the navigation grid for an area of the map.
+     *
+     * @param originX   The x-coordinate of the area.
+     * @param originY   The y-coordinate of the area.
+     * @param width     The width of the area.
+     * @param height    The height of the area.
+     * @param obstacles The static obstacles of the area.
+     */
+    public FlowField(double originX, double originY, double width, double height, ObstacleIndex obstacles) {
+        this(width, height);
+        rebuild(originX, originY, obstacles);
+    }
+
+    /**
+     * Constructs a navigation grid for an area of the given size, with every cell blocked until it
+     * is rebuilt.
+     *
+     * @param width  The width of the area.
+     * @param height The height of the area.
+     */
+    public FlowField(double width, double height) {
+        columns = columns(width);
+        rows = columns(height);
+
+        walkable = new boolean[columns * rows];
+        distance = new int[columns * rows];
+        direction = new byte[columns * rows];
+        queue = new int[columns * rows];
+        Arrays.fill(distance, UNREACHABLE);
+        Arrays.fill(direction, NO_DIRECTION);
+    }
+
+    /**
+     * Returns the number of cells of the navigation grid for an area of the given size.
+     *
+     * @param width  The width of the area.
+     * @param height The height of the area.
+     * @return The number of cells.
+     */
+    static int cellCount(double width, double height) {
+        return columns(width) * columns(height);
+    }
+
+    private static int columns(double size) {
+        return Math.max(1, (int) Math.ceil(size / CELL_SIZE));
+    }
+
+    /**
+     * Rebuilds the navigation grid for the area at a new position. The field leads nowhere until
+     * it is updated for a goal.
+     *
+     * @param originX   The x-coordinate of the area.
+     * @param originY   The y-coordinate of the area.
+     * @param obstacles The static obstacles of the area.
+     */
+    public void rebuild(double originX, double originY, ObstacleIndex obstacles) {
+        this.originX = originX;
+        this.originY = originY;
+        goalCell = -1;
+        Arrays.fill(distance, UNREACHABLE);
+        Arrays.fill(direction, NO_DIRECTION);
+
+        // A cell is walkable if a character centered on it is clear of the obstacles
+        obstacles.markClear(walkable, columns, rows, originX, originY, CELL_SIZE, 0.5,
+                World.CHARACTER_SIZE / 2.0, World.CHARACTER_SIZE);
+    }
+
+    /**
+     * Recomputes the field so that it leads to the given point.
+     *
+     * @param goalX The x-coordinate of the goal.
+     * @param goalY The y-coordinate of the goal.
+     */
+    public void update(double goalX, double goalY) {
+        update(cellAt(goalX, goalY));
+    }
+
+    /**
+     * Recomputes the field so that it leads to the given cell.
+     *
+     * @param goalCell The goal cell.
+     */
+    public void update(int goalCell) {
+        this.goalCell = goalCell;
+        Arrays.fill(distance, UNREACHABLE);
+        Arrays.fill(direction, NO_DIRECTION);
+
+        // Breadth-first search over orthogonal neighbours
+        int head = 0;
+        int tail = 0;
+        distance[goalCell] = 0;
+        queue[tail++] = goalCell;
+        while (head < tail) {
+            int cell = queue[head++];
+            int column = cell % columns;
+            int row = cell / columns;
+            for (int d = 0; d < 4; d++) {
+                int neighbour = neighbour(column, row, d);
+                if (neighbour >= 0 && walkable[neighbour] && distance[neighbour] == UNREACHABLE) {
+                    distance[neighbour] = distance[cell] + 1;
+                    queue[tail++] = neighbour;
+                }
+            }
+        }
+
+        // Point every reached cell at its closest neighbour, diagonals included
+        for (int i = 0; i < tail; i++) {
+            int cell = queue[i];
+            int column = cell % columns;
+            int row = cell / columns;
+            int best = distance[cell];
+            for (int d = 0; d < 8; d++) {
+                int neighbour = neighbour(column, row, d);
+                if (neighbour >= 0 && distance[neighbour] < best && (d < 4 || canCutCorner(column, row, d))) {
+                    best = distance[neighbour];
+                    direction[cell] = (byte) d;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the navigation cell containing a point.
+     *
+     * @param x The x-coordinate.
+     * @param y The y-coordinate.
+     * @return The index of the cell.
+     */
+    public int cellAt(double x, double y) {
+        int column = Math.clamp((int) Math.floor((x - originX) / CELL_SIZE), 0, columns - 1);
+        int row = Math.clamp((int) Math.floor((y - originY) / CELL_SIZE), 0, rows - 1);
+        return row * columns + column;
+    }
+
+    /**
+     * Gets the cell the field currently leads to.
+     *
+     * @return The goal cell, or -1 if the field was never updated.
+     */
+    public int getGoalCell() {
+        return goalCell;
+    }
+
+    /**
+     * Gets the path length from a cell to the goal.
+     *
+     * @param cell The index of the cell.
+     * @return The number of orthogonal cell steps, or {@link Integer#MAX_VALUE} if unreachable.
+     */
+    public int getDistance(int cell) {
+        return distance[cell];
+    }
+
+    /**
+     * Checks if the field has a direction to follow in a cell.
+     *
+     * @param cell The index of the cell.
+     * @return True if the cell leads towards the goal; false for the goal and unreachable cells.
+     */
+    public boolean hasDirection(int cell) {
+        return direction[cell] != NO_DIRECTION;
+    }
+
+    /**
+     * Gets the x-component of the unit direction to follow in a cell.
+     *
+     * @param cell The index of a cell with a direction.
+     * @return The x-component.
+     */
+    public double getDirectionX(int cell) {
+        return DIRECTION_X[direction[cell]];
+    }
+
+    /**
+     * Gets the y-component of the unit direction to follow in a cell.
+     *
+     * @param cell The index of a cell with a direction.
+     * @return The y-component.
+     */
+    public double getDirectionY(int cell) {
+        return DIRECTION_Y[direction[cell]];
+    }
+
+    private int neighbour(int column, int row, int d) {
+        int neighbourColumn = column + OFFSET_COLUMN[d];
+        int neighbourRow = row + OFFSET_ROW[d];
+        if (neighbourColumn < 0 || neighbourColumn >= columns || neighbourRow < 0 || neighbourRow >= rows) {
+            return -1;
+        }
+        return neighbourRow * columns + neighbourColumn;
+    }
+
+    private boolean canCutCorner(int column, int row, int d) {
+        // A diagonal move is only allowed if both orthogonal cells next to it are walkable
+        return walkable[row * columns + column + OFFSET_COLUMN[d]]
+                && walkable[(row + OFFSET_ROW[d]) * columns + column];
+    }
+}
@@ -0,0 +1,48 @@
+package topviewgame.world;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * SplitMix64 generator whose whole state is a single long, so a game can be saved in a
+ * {@link WorldSnapshot} and continue with exactly the random choices it would have made.
+ * <p>
+ * Gives the same numbers as a {@link java.util.SplittableRandom} with the same seed, which does not
+ * expose its state, so recordings made with it still replay.
+ */
+public final class GameRandom implements RandomGenerator {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long state;
+
+    /**
+     * Constructs a generator.
+     *
+     * @param seed The seed.
+     */
+    public GameRandom(long seed) {
+        this.state = seed;
+    }
+
+    @Override
+    public long nextLong() {
+        long z = state += GOLDEN_GAMMA;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public int nextInt() {
+        long z = state += GOLDEN_GAMMA;
+        z = (z ^ (z >>> 33)) * 0x62A9D9ED799705F5L;
+        return (int) (((z ^ (z >>> 28)) * 0xCB24D0A5C88C35B3L) >>> 32);
+    }
+
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+}
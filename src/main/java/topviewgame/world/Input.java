@@ -0,0 +1,11 @@
+package topviewgame.world;
+
+/**
+ * The directions the player can be moved in, as applied to a {@link World} and stored in replays.
+ */
+public enum Input {
+    UP,
+    DOWN,
+    LEFT,
+    RIGHT
+}
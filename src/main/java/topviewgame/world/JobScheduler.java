@@ -0,0 +1,219 @@
+package topviewgame.world;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Queues expensive simulation work and runs it under a budget per step, so work that falls due at
+ * once, like a burst of spawns, is spread over the following steps instead of stalling one of them.
+ * <p>
+ * The budget and the costs of the jobs are in estimated microseconds. The costs are fixed estimates
+ * rather than measured times, so a game runs the same jobs in the same steps on every machine and
+ * still replays exactly. Jobs run in the order they were queued, and every step runs at least the
+ * oldest job, so the queue always drains. A budget of 0 turns the scheduling off: every job then
+ * runs in the step it was queued in.
+ * <p>
+ * Jobs are kept in a ring of primitive arrays that only grows, so queueing does not allocate once
+ * the ring has reached the largest burst.
+ */
+final class JobScheduler {
+    /**
+     * Kinds of deferrable work, with their estimated cost.
+     */
+    enum Job {
+        /**
+         * Places a new NPC in the spawn ring around the player, which scans the spawn candidates
+         * of the whole ring twice.
+         */
+        SPAWN_NPC(50),
+        /**
+         * Generates one of the chunks next to the simulated region ahead of the player, which places
+         * the buildings of a whole chunk.
+         */
+        LOAD_CHUNK(50);
+
+        private final int costMicros;
+
+        Job(int costMicros) {
+            this.costMicros = costMicros;
+        }
+    }
+
+    private static final Job[] JOBS = Job.values();
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Bytes per queued job in a snapshot: the job ordinal and the step it was queued in
+    static final int SNAPSHOT_BYTES = 1 + Long.BYTES;
+
+    // Queued jobs in a ring, with the step each was queued in
+    private byte[] jobs = new byte[INITIAL_CAPACITY];
+    private long[] queuedSteps = new long[INITIAL_CAPACITY];
+    private int head;
+    private int size;
+
+    // Budget per step, and what the current step has spent of it
+    private int budgetMicros;
+    private int spentMicros;
+
+    // Wait of the job last taken off the queue, and the longest wait of the jobs run in the current
+    // step, in steps
+    private long lastDeferralSteps;
+    private long deferralSteps;
+
+    /**
+     * Constructs an empty scheduler.
+     *
+     * @param budgetMicros The estimated microseconds of jobs to run per step, or 0 to run every job
+     *                     in the step it was queued in.
+     */
+    JobScheduler(int budgetMicros) {
+        setBudgetMicros(budgetMicros);
+    }
+
+    /**
+     * Queues a job.
+     *
+     * @param job  The job.
+     * @param step The current step.
+     */
+    void add(Job job, long step) {
+        if (size == jobs.length) {
+            grow();
+        }
+        int slot = (head + size++) % jobs.length;
+        jobs[slot] = (byte) job.ordinal();
+        queuedSteps[slot] = step;
+    }
+
+    /**
+     * Starts a new step with the full budget.
+     */
+    void startStep() {
+        spentMicros = 0;
+        deferralSteps = 0;
+    }
+
+    /**
+     * Takes the oldest job off the queue if the budget of the current step still covers it.
+     *
+     * @param step The current step.
+     * @return The job to run now, or null if the queue is empty or the budget is spent.
+     */
+    Job next(long step) {
+        if (size == 0) {
+            return null;
+        }
+        Job job = JOBS[jobs[head]];
+        if (budgetMicros > 0 && spentMicros > 0 && spentMicros + job.costMicros > budgetMicros) {
+            return null;
+        }
+        spentMicros += job.costMicros;
+        lastDeferralSteps = step - queuedSteps[head];
+        deferralSteps = Math.max(deferralSteps, lastDeferralSteps);
+        head = (head + 1) % jobs.length;
+        size--;
+        return job;
+    }
+
+    /**
+     * Drops all queued jobs.
+     */
+    void clear() {
+        head = 0;
+        size = 0;
+        deferralSteps = 0;
+    }
+
+    /**
+     * Writes the queued jobs to a snapshot.
+     *
+     * @param out The buffer to write to.
+     */
+    void write(ByteBuffer out) {
+        out.putInt(size);
+        for (int k = 0; k < size; k++) {
+            int slot = (head + k) % jobs.length;
+            out.put(jobs[slot]);
+            out.putLong(queuedSteps[slot]);
+        }
+    }
+
+    /**
+     * Replaces the queued jobs with the ones of a snapshot.
+     *
+     * @param in The buffer to read from.
+     */
+    void read(ByteBuffer in) {
+        clear();
+        int count = in.getInt();
+        for (int k = 0; k < count; k++) {
+            add(JOBS[in.get()], in.getLong());
+        }
+    }
+
+    /**
+     * Checks the queued jobs of a snapshot without reading them into the scheduler.
+     *
+     * @param in The buffer to check, positioned at the jobs; left after them.
+     * @throws IOException If a job is unknown.
+     */
+    static void check(ByteBuffer in) throws IOException {
+        int count = in.getInt();
+        for (int k = 0; k < count; k++) {
+            int job = in.get();
+            if (job < 0 || job >= JOBS.length) {
+                throw new IOException("Corrupt world snapshot: unknown job " + job);
+            }
+            in.position(in.position() + Long.BYTES);
+        }
+    }
+
+    /**
+     * Doubles the capacity of the ring, moving the queued jobs to its start.
+     */
+    private void grow() {
+        byte[] grownJobs = new byte[jobs.length * 2];
+        long[] grownSteps = new long[jobs.length * 2];
+        for (int k = 0; k < size; k++) {
+            int slot = (head + k) % jobs.length;
+            grownJobs[k] = jobs[slot];
+            grownSteps[k] = queuedSteps[slot];
+        }
+        jobs = grownJobs;
+        queuedSteps = grownSteps;
+        head = 0;
+    }
+
+    void setBudgetMicros(int budgetMicros) {
+        if (budgetMicros < 0) {
+            throw new IllegalArgumentException("Negative job budget: " + budgetMicros);
+        }
+        this.budgetMicros = budgetMicros;
+    }
+
+    int getBudgetMicros() {
+        return budgetMicros;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Gets how long the job last returned by {@link #next(long)} waited in the queue.
+     *
+     * @return The wait in steps.
+     */
+    long getLastDeferralSteps() {
+        return lastDeferralSteps;
+    }
+
+    /**
+     * Gets the longest time a job run in the current step waited in the queue.
+     *
+     * @return The wait in steps.
+     */
+    long getDeferralSteps() {
+        return deferralSteps;
+    }
+}
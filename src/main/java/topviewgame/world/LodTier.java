@@ -0,0 +1,34 @@
+package topviewgame.world;
+
+/**
+ * Simulation levels of detail of an NPC, picked every step from its distance to the player.
+ */
+public enum LodTier {
+    /**
+     * Steers and probes for obstacles and other NPCs every step.
+     */
+    NEAR("near"),
+    /**
+     * Steers every few steps with fewer probes and keeps its heading in between.
+     */
+    MID("mid"),
+    /**
+     * Follows the flow field or a straight line on coarse steering updates and only avoids obstacles.
+     */
+    FAR("far");
+
+    private final String label;
+
+    LodTier(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Gets the name the tier is shown and exported under.
+     *
+     * @return The label.
+     */
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,232 @@
+package topviewgame.world;
+
+import topviewgame.item.Building;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Places buildings of variable size with a guaranteed gap between any two of them.
+ * <p>
+ * The given area is split into one stratum per requested building. Strata are
+ * visited in a random order and each gets at most one building at a random position inside it,
+ * so buildings spread evenly without looking like a grid. Placed buildings are bucketed into a
+ * uniform grid, so the spacing check of a candidate only looks at its neighborhood and generation
+ * time grows linearly with the number of buildings. The strata and the grid are kept between calls
+ * and only grow, so generating many small areas, such as chunks, does not allocate them every time;
+ * a generator is therefore not safe to share between threads.
+ */
+public class MapGenerator {
+    // Random positions tried per stratum and pass, and passes over the strata left empty
+    private static final int ATTEMPTS_PER_STRATUM = 30;
+    private static final int PASSES = 6;
+
+    private static final int NONE = -1;
+
+    // Building rules
+    private final double spacing;
+    private final double minSize;
+    private final double maxSize;
+
+    // Strata in visiting order and whether each has a building, kept between calls
+    private int[] strata = new int[0];
+    private boolean[] filled = new boolean[0];
+    private final Grid grid = new Grid();
+
+    /**
+     * Constructs a new map generator.
+     *
+     * @param spacing The gap kept between buildings.
+     * @param minSize The smallest width and height of a building.
+     * @param maxSize The largest width and height of a building.
+     */
+    public MapGenerator(double spacing, double minSize, double maxSize) {
+        this.spacing = spacing;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Generates buildings inside an area and adds them to the given list. The same seed always gives
+     * the same buildings. Callers keep the spacing to walls and to neighboring areas by shrinking the area.
+     *
+     * @param buildings The list to add the buildings to.
+     * @param minX      The left edge of the area.
+     * @param minY      The top edge of the area.
+     * @param maxX      The right edge of the area.
+     * @param maxY      The bottom edge of the area.
+     * @param count     The number of buildings to place.
+     * @param seed      The seed of the layout.
+     * @return The number of buildings placed, which is less than requested if the area is too dense.
+     */
+    public int generate(List<Building> buildings, double minX, double minY, double maxX, double maxY,
+                        int count, long seed) {
+        // Top-left corners that fit the smallest building into the area
+        double regionWidth = maxX - minSize - minX;
+        double regionHeight = maxY - minSize - minY;
+        if (count <= 0 || regionWidth <= 0 || regionHeight <= 0) {
+            return 0;
+        }
+
+        // One stratum per building, visited in a random order
+        var random = new SplittableRandom(seed);
+        double pitch = Math.sqrt(regionWidth * regionHeight / count);
+        int strataColumns = Math.max(1, (int) Math.ceil(regionWidth / pitch));
+        int strataRows = Math.max(1, (int) Math.ceil(regionHeight / pitch));
+        int strataCount = strataColumns * strataRows;
+        if (strata.length < strataCount) {
+            strata = new int[strataCount];
+            filled = new boolean[strataCount];
+        }
+        for (int i = 0; i < strataCount; i++) {
+            strata[i] = i;
+        }
+        Arrays.fill(filled, 0, strataCount, false);
+        for (int i = strataCount - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int stratum = strata[i];
+            strata[i] = strata[j];
+            strata[j] = stratum;
+        }
+
+        // Strata crowded by their neighbors are retried in later passes, once the map has filled up,
+        // with positions spread over more of the surrounding strata in every pass
+        grid.reset(minX, minY, maxX - minX, maxY - minY, count);
+        for (int pass = 0; pass < PASSES && grid.size < count; pass++) {
+            for (int s = 0; s < strataCount && grid.size < count; s++) {
+                if (!filled[s]) {
+                    filled[s] = place(grid, buildings, random, strata[s] % strataColumns,
+                            strata[s] / strataColumns, pitch, pass, minX, minY, maxX, maxY);
+                }
+            }
+        }
+        return grid.size;
+    }
+
+    /**
+     * Tries to place one building with its top-left corner in the given stratum.
+     *
+     * @param grid      The placed buildings.
+     * @param buildings The list to add the building to.
+     * @param random    The source of the size and position.
+     * @param column    The column of the stratum.
+     * @param row       The row of the stratum.
+     * @param pitch     The size of a stratum.
+     * @param reach     The number of neighboring strata on each side the position may also fall in.
+     * @param minX      The left edge of the area, where the first stratum column starts.
+     * @param minY      The top edge of the area, where the first stratum row starts.
+     * @param maxX      The right edge of the area.
+     * @param maxY      The bottom edge of the area.
+     * @return True if a building was placed; false otherwise.
+     */
+    private boolean place(Grid grid, List<Building> buildings, SplittableRandom random,
+                          int column, int row, double pitch, int reach,
+                          double minX, double minY, double maxX, double maxY) {
+        for (int attempt = 0; attempt < ATTEMPTS_PER_STRATUM; attempt++) {
+            double buildingWidth = minSize == maxSize ? minSize : random.nextDouble(minSize, maxSize);
+            double buildingHeight = minSize == maxSize ? minSize : random.nextDouble(minSize, maxSize);
+            double x = minX + (column - reach + random.nextDouble() * (2 * reach + 1)) * pitch;
+            double y = minY + (row - reach + random.nextDouble() * (2 * reach + 1)) * pitch;
+
+            // Keep the building inside the area
+            if (x < minX || y < minY || x + buildingWidth > maxX || y + buildingHeight > maxY) {
+                continue;
+            }
+            if (!grid.conflicts(x, y, buildingWidth, buildingHeight)) {
+                grid.add(x, y, buildingWidth, buildingHeight);
+                buildings.add(new Building(x, y, buildingWidth, buildingHeight));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Uniform grid of the placed buildings, bucketed by their top-left corner.
+     */
+    private class Grid {
+        // Grid layout; a cell is as large as a building plus its spacing
+        private double cellSize;
+        private double originX;
+        private double originY;
+        private int columns;
+        private int rows;
+        private int[] cellHead = new int[0];
+
+        // Placed buildings, chained per cell
+        private double[] x = new double[0];
+        private double[] y = new double[0];
+        private double[] buildingWidth = new double[0];
+        private double[] buildingHeight = new double[0];
+        private int[] next = new int[0];
+        private int size;
+
+        /**
+         * Empties the grid and lays it out over a new area, growing the arrays if needed.
+         */
+        void reset(double originX, double originY, double width, double height, int capacity) {
+            this.originX = originX;
+            this.originY = originY;
+            cellSize = maxSize + spacing;
+            columns = Math.max(1, (int) Math.ceil(width / cellSize));
+            rows = Math.max(1, (int) Math.ceil(height / cellSize));
+            if (cellHead.length < columns * rows) {
+                cellHead = new int[columns * rows];
+            }
+            Arrays.fill(cellHead, 0, columns * rows, NONE);
+            if (x.length < capacity) {
+                x = new double[capacity];
+                y = new double[capacity];
+                buildingWidth = new double[capacity];
+                buildingHeight = new double[capacity];
+                next = new int[capacity];
+            }
+            size = 0;
+        }
+
+        void add(double x, double y, double width, double height) {
+            int cell = row(y) * columns + column(x);
+            this.x[size] = x;
+            this.y[size] = y;
+            buildingWidth[size] = width;
+            buildingHeight[size] = height;
+            next[size] = cellHead[cell];
+            cellHead[cell] = size;
+            size++;
+        }
+
+        /**
+         * Checks if a building would come closer than the spacing to a placed building.
+         */
+        boolean conflicts(double x, double y, double width, double height) {
+            double left = x - spacing;
+            double top = y - spacing;
+            double paddedWidth = width + 2 * spacing;
+            double paddedHeight = height + 2 * spacing;
+
+            // Any conflicting building has its top-left corner at most one building size before the padded box
+            int maxColumn = column(left + paddedWidth);
+            int maxRow = row(top + paddedHeight);
+            for (int row = row(top - maxSize); row <= maxRow; row++) {
+                for (int column = column(left - maxSize); column <= maxColumn; column++) {
+                    for (int i = cellHead[row * columns + column]; i != NONE; i = next[i]) {
+                        if (Aabb.intersects(left, top, paddedWidth, paddedHeight,
+                                this.x[i], this.y[i], buildingWidth[i], buildingHeight[i])) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        private int column(double x) {
+            return Math.clamp((int) Math.floor((x - originX) / cellSize), 0, columns - 1);
+        }
+
+        private int row(double y) {
+            return Math.clamp((int) Math.floor((y - originY) / cellSize), 0, rows - 1);
+        }
+    }
+}
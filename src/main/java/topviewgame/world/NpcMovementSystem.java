@@ -0,0 +1,532 @@
+package topviewgame.world;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Moves all NPCs towards the predicted player location, working directly on the arrays of an
+ * {@link NpcStore}.
+ * <p>
+ * NPCs that are far from the player along the walkable paths follow the shared {@link FlowField},
+ * which routes them around buildings; close NPCs steer straight at the predicted location.
+ * <p>
+ * How much work an NPC gets depends on its {@link LodTier}, picked every step from its distance to
+ * the player. Near NPCs probe up to 16 directions against obstacles and other NPCs every step. Mid
+ * NPCs probe fewer directions every few steps and keep their heading in between. Far NPCs take the
+ * flow field direction, or a straight line, every few steps and only avoid obstacles. Every tier
+ * still moves every step at its full speed, and the commit phase below keeps NPCs of all tiers
+ * from overlapping. In {@link SteeringMode#CROWD}, near NPCs and steering mid NPCs compute one
+ * collision-free velocity from their nearest neighbors with {@link CrowdSteering} instead of
+ * probing directions, so a dense crowd flows around the player rather than jamming.
+ * <p>
+ * Each step runs in two phases. First every NPC computes the position it intends to move to,
+ * reading only a snapshot of the positions; this phase is split into index ranges that run in
+ * parallel once there are enough NPCs. Then the intended moves are committed one by one in index
+ * order, and a move is dropped if it would now overlap an NPC that has already moved. The result
+ * therefore does not depend on how many threads computed the first phase.
+ */
+class NpcMovementSystem {
+    private static final long TARGET_UPDATE_INTERVAL = 500; // Update target every 0.5 seconds
+    private static final long TARGET_UPDATE_STEPS = Math.round(TARGET_UPDATE_INTERVAL / World.STEP_MILLIS);
+    private static final int NUM_ATTEMPTS = 16; // Number of angles to try around the original direction
+    // Path distance to the player, in flow field cells, below which NPCs steer straight at their target
+    private static final int DIRECT_PURSUIT_DISTANCE = 6;
+    private static final double HALF_SIZE = World.CHARACTER_SIZE / 2.0;
+
+    // Steps between steering updates and angles probed by mid NPCs, and steps between updates of far
+    // NPCs, a multiple of the mid interval so one phase per NPC staggers both
+    private static final int MID_UPDATE_INTERVAL = 4;
+    private static final int MID_ATTEMPTS = 8;
+    private static final int FAR_UPDATE_INTERVAL = 8;
+
+    private static final int NEAR = LodTier.NEAR.ordinal();
+    private static final int MID = LodTier.MID.ordinal();
+    private static final int FAR = LodTier.FAR.ordinal();
+
+    // Below this many NPCs the first phase runs on the calling thread
+    private static final int PARALLEL_THRESHOLD = 2048;
+    // Number of NPCs handled by one parallel task
+    private static final int CHUNK_SIZE = 512;
+
+    private final World world;
+
+    // Player location predicted for the current step
+    private double predictedX;
+    private double predictedY;
+
+    // Time the flow field was last recomputed
+    private double lastFlowFieldUpdateTime;
+
+    // Distances to the player where the mid and far tiers start, and their squares
+    private double midDistance = World.DEFAULT_LOD_MID_DISTANCE;
+    private double farDistance = World.DEFAULT_LOD_FAR_DISTANCE;
+    private double midDistanceSquared = World.DEFAULT_LOD_MID_DISTANCE * World.DEFAULT_LOD_MID_DISTANCE;
+    private double farDistanceSquared = World.DEFAULT_LOD_FAR_DISTANCE * World.DEFAULT_LOD_FAR_DISTANCE;
+
+    // Number of NPCs in each tier in the last step
+    private final int[] tierCounts = new int[LodTier.values().length];
+
+    // Whether NPCs added together re-target in different steps rather than all in the same one
+    private boolean staggeredRetargeting = true;
+
+    // How near NPCs avoid collisions, the crowd steering scratch space per parallel task, and the
+    // NPC velocities at the start of the step, which crowd steering reads while headings change
+    private SteeringMode steeringMode = SteeringMode.PROBE;
+    private CrowdSteering[] crowdSteering = {new CrowdSteering()};
+    private double[] velocityX = new double[0];
+    private double[] velocityY = new double[0];
+
+    NpcMovementSystem(World world) {
+        this.world = world;
+    }
+
+    /**
+     * Moves every NPC that is not in peace time one step towards its target.
+     *
+     * @param npcs The NPCs to move.
+     */
+    void update(NpcStore npcs) {
+        double currentTime = world.getTime();
+        predictPlayerLocation();
+        updateFlowField(currentTime);
+
+        int count = npcs.count;
+        if (steeringMode == SteeringMode.CROWD) {
+            saveVelocities(npcs);
+        }
+
+        // Phase 1: compute the intended positions from the unchanged positions
+        if (count >= PARALLEL_THRESHOLD) {
+            int chunks = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            if (crowdSteering.length < chunks) {
+                int length = crowdSteering.length;
+                crowdSteering = Arrays.copyOf(crowdSteering, chunks);
+                for (int chunk = length; chunk < chunks; chunk++) {
+                    crowdSteering[chunk] = new CrowdSteering();
+                }
+            }
+            IntStream.range(0, chunks).parallel().forEach(chunk -> computeNextPositions(
+                    npcs, chunk * CHUNK_SIZE, Math.min(count, (chunk + 1) * CHUNK_SIZE), currentTime,
+                    crowdSteering[chunk]));
+        } else {
+            computeNextPositions(npcs, 0, count, currentTime, crowdSteering[0]);
+        }
+
+        // Phase 2: commit the moves in index order
+        commitNextPositions(npcs);
+    }
+
+    /**
+     * Copies the velocity every NPC chose in the previous step, as its heading times its speed.
+     *
+     * @param npcs The NPC store.
+     */
+    private void saveVelocities(NpcStore npcs) {
+        if (velocityX.length < npcs.capacity()) {
+            velocityX = new double[npcs.capacity()];
+            velocityY = new double[npcs.capacity()];
+        }
+        for (int i = 0; i < npcs.count; i++) {
+            velocityX[i] = npcs.headingX[i] * npcs.speed[i];
+            velocityY[i] = npcs.headingY[i] * npcs.speed[i];
+        }
+    }
+
+    /**
+     * Recomputes the flow field towards the player for a new map, or when the player has moved to
+     * another cell and the target update interval has elapsed.
+     *
+     * @param currentTime The current simulation time.
+     */
+    private void updateFlowField(double currentTime) {
+        FlowField flowField = world.getFlowField();
+        int playerCell = flowField.cellAt(world.getCharacterX() + HALF_SIZE, world.getCharacterY() + HALF_SIZE);
+        int goalCell = flowField.getGoalCell();
+        if (goalCell < 0 || (playerCell != goalCell
+                && currentTime - lastFlowFieldUpdateTime >= TARGET_UPDATE_INTERVAL)) {
+            flowField.update(world.getCharacterX() + HALF_SIZE, world.getCharacterY() + HALF_SIZE);
+            lastFlowFieldUpdateTime = currentTime;
+        }
+    }
+
+    /**
+     * Computes the intended position of every NPC in an index range. Only writes the target and
+     * next-position components of the NPCs in the range, so ranges can run concurrently.
+     *
+     * @param npcs        The NPC store.
+     * @param from        The first index, inclusive.
+     * @param to          The last index, exclusive.
+     * @param currentTime The current simulation time.
+     * @param crowd       The crowd steering scratch space of this range.
+     */
+    private void computeNextPositions(NpcStore npcs, int from, int to, double currentTime, CrowdSteering crowd) {
+        double[] x = npcs.x;
+        double[] y = npcs.y;
+        double[] nextX = npcs.nextX;
+        double[] nextY = npcs.nextY;
+        double[] targetX = npcs.targetX;
+        double[] targetY = npcs.targetY;
+        double[] lastTargetUpdateTime = npcs.lastTargetUpdateTime;
+        boolean[] peaceTime = npcs.peaceTime;
+        byte[] lodTier = npcs.lodTier;
+        byte[] steeringPhase = npcs.steeringPhase;
+        FlowField flowField = world.getFlowField();
+        double playerX = world.getCharacterX();
+        double playerY = world.getCharacterY();
+        long step = world.getSteps();
+
+        for (int i = from; i < to; i++) {
+            nextX[i] = x[i];
+            nextY[i] = y[i];
+
+            // Pick the level of detail from the distance to the player
+            double playerDeltaX = x[i] - playerX;
+            double playerDeltaY = y[i] - playerY;
+            double distanceSquared = playerDeltaX * playerDeltaX + playerDeltaY * playerDeltaY;
+            int tier = distanceSquared < midDistanceSquared ? NEAR : distanceSquared < farDistanceSquared ? MID : FAR;
+            lodTier[i] = (byte) tier;
+            if (peaceTime[i]) {
+                continue;
+            }
+
+            if (currentTime - lastTargetUpdateTime[i] >= TARGET_UPDATE_INTERVAL) {
+                targetX[i] = predictedX;
+                targetY[i] = predictedY;
+
+                // Staggered NPCs keep their phase within the interval, even after peace time or a
+                // step that was late by rounding
+                lastTargetUpdateTime[i] = staggeredRetargeting
+                        ? currentTime - (currentTime - lastTargetUpdateTime[i]) % TARGET_UPDATE_INTERVAL
+                        : currentTime;
+            }
+
+            // Mid and far NPCs keep their heading between steering updates, which are staggered
+            // over the steps by a phase each NPC keeps, and steer early when the heading is blocked
+            if (tier == NEAR) {
+                steer(npcs, i, flowField, NUM_ATTEMPTS, crowd);
+            } else if (tier == MID) {
+                if ((step + steeringPhase[i]) % MID_UPDATE_INTERVAL == 0 || !keepHeading(npcs, i, true)) {
+                    steer(npcs, i, flowField, MID_ATTEMPTS, crowd);
+                }
+            } else if ((step + steeringPhase[i]) % FAR_UPDATE_INTERVAL == 0 || !keepHeading(npcs, i, false)) {
+                steerFar(npcs, i, flowField);
+            }
+        }
+    }
+
+    /**
+     * Steers an NPC along the flow field, or straight at its target once the player is close along
+     * the path, probing for a free direction.
+     *
+     * @param npcs      The NPC store.
+     * @param i         The index of the NPC.
+     * @param flowField The flow field towards the player.
+     * @param attempts  The number of directions to probe.
+     * @param crowd     The crowd steering scratch space.
+     */
+    private void steer(NpcStore npcs, int i, FlowField flowField, int attempts, CrowdSteering crowd) {
+        // Follow the flow field until the player is close along the path
+        int cell = flowField.cellAt(npcs.x[i] + HALF_SIZE, npcs.y[i] + HALF_SIZE);
+        if (flowField.getDistance(cell) > DIRECT_PURSUIT_DISTANCE && flowField.hasDirection(cell)) {
+            avoidCollisions(npcs, i, flowField.getDirectionX(cell), flowField.getDirectionY(cell), attempts, crowd);
+            return;
+        }
+
+        double deltaX = npcs.targetX[i] - npcs.x[i];
+        double deltaY = npcs.targetY[i] - npcs.y[i];
+        double distance = Math.hypot(deltaX, deltaY);
+
+        if (distance < npcs.speed[i]) {
+            npcs.nextX[i] = npcs.targetX[i];
+            npcs.nextY[i] = npcs.targetY[i];
+            npcs.headingX[i] = 0;
+            npcs.headingY[i] = 0;
+        } else {
+            // Adjust movement to avoid obstacles
+            avoidCollisions(npcs, i, deltaX, deltaY, attempts, crowd);
+        }
+    }
+
+    /**
+     * Moves an NPC in a desired direction while avoiding obstacles and other NPCs, as the steering
+     * mode prescribes.
+     *
+     * @param npcs     The NPC store.
+     * @param i        The index of the NPC.
+     * @param deltaX   The desired direction in the X direction.
+     * @param deltaY   The desired direction in the Y direction.
+     * @param attempts The number of angles to probe in {@link SteeringMode#PROBE}.
+     * @param crowd    The crowd steering scratch space for {@link SteeringMode#CROWD}.
+     */
+    private void avoidCollisions(NpcStore npcs, int i, double deltaX, double deltaY, int attempts,
+                                 CrowdSteering crowd) {
+        if (steeringMode == SteeringMode.PROBE) {
+            adjustForObstacles(npcs, i, deltaX, deltaY, attempts);
+            return;
+        }
+        double length = Math.hypot(deltaX, deltaY);
+        crowd.steer(npcs, i, deltaX / length, deltaY / length, velocityX, velocityY, world.getObstacles());
+    }
+
+    /**
+     * Steers a far NPC along the flow field, or straight at its target where the field has no
+     * direction, sliding along obstacles instead of probing around them. Other NPCs are ignored.
+     *
+     * @param npcs      The NPC store.
+     * @param i         The index of the NPC.
+     * @param flowField The flow field towards the player.
+     */
+    private void steerFar(NpcStore npcs, int i, FlowField flowField) {
+        double directionX;
+        double directionY;
+        int cell = flowField.cellAt(npcs.x[i] + HALF_SIZE, npcs.y[i] + HALF_SIZE);
+        if (flowField.hasDirection(cell)) {
+            directionX = flowField.getDirectionX(cell);
+            directionY = flowField.getDirectionY(cell);
+        } else {
+            directionX = npcs.targetX[i] - npcs.x[i];
+            directionY = npcs.targetY[i] - npcs.y[i];
+        }
+
+        double length = Math.hypot(directionX, directionY);
+        if (length == 0) {
+            npcs.headingX[i] = 0;
+            npcs.headingY[i] = 0;
+            return;
+        }
+        directionX /= length;
+        directionY /= length;
+        if (!tryHeading(npcs, i, directionX, directionY, false)
+                && !tryHeading(npcs, i, Math.signum(directionX), 0, false)
+                && !tryHeading(npcs, i, 0, Math.signum(directionY), false)) {
+            npcs.headingX[i] = 0;
+            npcs.headingY[i] = 0;
+        }
+    }
+
+    /**
+     * Moves an NPC one step along its current heading if that is free.
+     *
+     * @param npcs      The NPC store.
+     * @param i         The index of the NPC.
+     * @param checkNpcs True to also check for other NPCs; false to only check obstacles.
+     * @return True if the NPC can move; false if the heading is blocked or zero.
+     */
+    private boolean keepHeading(NpcStore npcs, int i, boolean checkNpcs) {
+        return tryHeading(npcs, i, npcs.headingX[i], npcs.headingY[i], checkNpcs);
+    }
+
+    /**
+     * Moves an NPC one step in a fixed direction if that is free, and remembers the direction as its heading.
+     *
+     * @param npcs      The NPC store.
+     * @param i         The index of the NPC.
+     * @param headingX  The x-component of the unit direction.
+     * @param headingY  The y-component of the unit direction.
+     * @param checkNpcs True to also check for other NPCs; false to only check obstacles.
+     * @return True if the NPC can move; false if the direction is blocked or zero.
+     */
+    private boolean tryHeading(NpcStore npcs, int i, double headingX, double headingY, boolean checkNpcs) {
+        if (headingX == 0 && headingY == 0) {
+            return false;
+        }
+        double nextX = npcs.x[i] + headingX * npcs.speed[i];
+        double nextY = npcs.y[i] + headingY * npcs.speed[i];
+        if (checkNpcs ? isCollision(i, nextX, nextY)
+                : world.getObstacles().intersects(nextX, nextY, World.CHARACTER_SIZE, World.CHARACTER_SIZE)) {
+            return false;
+        }
+        npcs.nextX[i] = nextX;
+        npcs.nextY[i] = nextY;
+        npcs.headingX[i] = headingX;
+        npcs.headingY[i] = headingY;
+        return true;
+    }
+
+    /**
+     * Moves every NPC to its intended position, unless an NPC committed earlier in this step
+     * now occupies it.
+     *
+     * @param npcs The NPC store.
+     */
+    private void commitNextPositions(NpcStore npcs) {
+        Arrays.fill(tierCounts, 0);
+        for (int i = 0; i < npcs.count; i++) {
+            tierCounts[npcs.lodTier[i]]++;
+            double nextX = npcs.nextX[i];
+            double nextY = npcs.nextY[i];
+            if ((nextX != npcs.x[i] || nextY != npcs.y[i]) && !world.overlapsNpc(nextX, nextY, i)) {
+                npcs.setPosition(i, nextX, nextY);
+            }
+        }
+    }
+
+    /**
+     * Sets the distances to the player where NPCs switch to cheaper levels of detail.
+     *
+     * @param midDistance The distance where the mid tier starts.
+     * @param farDistance The distance where the far tier starts; at least the mid distance.
+     */
+    void setLodDistances(double midDistance, double farDistance) {
+        if (midDistance < 0 || farDistance < midDistance) {
+            throw new IllegalArgumentException("Invalid LOD distances: " + midDistance + ", " + farDistance);
+        }
+        this.midDistance = midDistance;
+        this.farDistance = farDistance;
+        midDistanceSquared = midDistance * midDistance;
+        farDistanceSquared = farDistance * farDistance;
+    }
+
+    void setSteeringMode(SteeringMode steeringMode) {
+        this.steeringMode = steeringMode;
+    }
+
+    SteeringMode getSteeringMode() {
+        return steeringMode;
+    }
+
+    void setStaggeredRetargeting(boolean staggeredRetargeting) {
+        this.staggeredRetargeting = staggeredRetargeting;
+    }
+
+    boolean isStaggeredRetargeting() {
+        return staggeredRetargeting;
+    }
+
+    double getLastFlowFieldUpdateTime() {
+        return lastFlowFieldUpdateTime;
+    }
+
+    void setLastFlowFieldUpdateTime(double lastFlowFieldUpdateTime) {
+        this.lastFlowFieldUpdateTime = lastFlowFieldUpdateTime;
+    }
+
+    double getLodMidDistance() {
+        return midDistance;
+    }
+
+    double getLodFarDistance() {
+        return farDistance;
+    }
+
+    /**
+     * Gets the number of NPCs that were in a tier in the last step.
+     *
+     * @param tier The tier.
+     * @return The number of NPCs.
+     */
+    int getTierCount(LodTier tier) {
+        return tierCounts[tier.ordinal()];
+    }
+
+    /**
+     * Clears the tier counts, for a game that starts or resumes in peace time, when no NPC is simulated.
+     */
+    void clearTierCounts() {
+        Arrays.fill(tierCounts, 0);
+    }
+
+    /**
+     * Picks the first target of a new NPC, aiming for the predicted player location. The NPC gets
+     * its phase of the mid and far steering updates from its index, and with staggered re-targeting
+     * its phase within the re-targeting interval too, so NPCs added together, which take consecutive
+     * indices, steer and re-target in different steps. The phases stay with the NPC when its index
+     * changes.
+     *
+     * @param npcs The NPC store.
+     * @param i    The index of the NPC.
+     */
+    void pickNewTarget(NpcStore npcs, int i) {
+        predictPlayerLocation();
+        npcs.targetX[i] = predictedX;
+        npcs.targetY[i] = predictedY;
+        npcs.steeringPhase[i] = (byte) (i % FAR_UPDATE_INTERVAL);
+        if (staggeredRetargeting) {
+            npcs.lastTargetUpdateTime[i] = world.getTime() - i % TARGET_UPDATE_STEPS * World.STEP_MILLIS;
+        }
+    }
+
+    /**
+     * Predicts where the player will be, which is where all re-targeting NPCs aim.
+     */
+    private void predictPlayerLocation() {
+        // Prediction time in milliseconds
+        double predictionTime = 500; // 0.5 seconds
+
+        // Get player's current position and velocity
+        double playerX = world.getCharacterX();
+        double playerY = world.getCharacterY();
+        double playerVelocityX = world.getPlayerVelocityX();
+        double playerVelocityY = world.getPlayerVelocityY();
+
+        // If player is stationary, target current position
+        if (playerVelocityX == 0 && playerVelocityY == 0) {
+            predictedX = playerX;
+            predictedY = playerY;
+            return;
+        }
+
+        // Predict player's future position; velocity is per simulation step
+        predictedX = playerX + playerVelocityX * predictionTime / World.STEP_MILLIS;
+        predictedY = playerY + playerVelocityY * predictionTime / World.STEP_MILLIS;
+
+        // Clamp predicted position within game bounds
+        predictedX = Math.clamp(predictedX, 0, world.getWidth() - World.CHARACTER_SIZE);
+        predictedY = Math.clamp(predictedY, 0, world.getHeight() - World.CHARACTER_SIZE);
+    }
+
+    /**
+     * Finds a collision-free step for an NPC, trying angles around the desired direction, and
+     * stores the resulting position as the NPC's next position and its direction as the heading.
+     * Leaves the next position unchanged if every angle is blocked.
+     *
+     * @param npcs     The NPC store.
+     * @param i        The index of the NPC.
+     * @param deltaX   The desired direction in the X direction.
+     * @param deltaY   The desired direction in the Y direction.
+     * @param attempts The number of angles to try, evenly spread over the full circle.
+     */
+    private void adjustForObstacles(NpcStore npcs, int i, double deltaX, double deltaY, int attempts) {
+        double angle = Math.atan2(deltaY, deltaX);
+        double angleIncrement = 2 * Math.PI / attempts;
+        double speed = npcs.speed[i];
+
+        for (int attempt = 0; attempt < attempts; attempt++) {
+            double newAngle = angle + attempt * angleIncrement;
+            double headingX = Math.cos(newAngle);
+            double headingY = Math.sin(newAngle);
+            double nextX = npcs.x[i] + headingX * speed;
+            double nextY = npcs.y[i] + headingY * speed;
+
+            if (!isCollision(i, nextX, nextY)) {
+                npcs.nextX[i] = nextX;
+                npcs.nextY[i] = nextY;
+                npcs.headingX[i] = headingX;
+                npcs.headingY[i] = headingY;
+                return;
+            }
+        }
+
+        // If all adjustments fail, stay in place for now
+        npcs.headingX[i] = 0;
+        npcs.headingY[i] = 0;
+    }
+
+    /**
+     * Checks if an NPC collides with any obstacle or other NPC at the given position.
+     *
+     * @param i     The index of the NPC.
+     * @param nextX The x-coordinate of the NPC's next position.
+     * @param nextY The y-coordinate of the NPC's next position.
+     * @return True if there is a collision; false otherwise.
+     */
+    private boolean isCollision(int i, double nextX, double nextY) {
+        // Check for collisions with buildings
+        if (world.getObstacles().intersects(nextX, nextY, World.CHARACTER_SIZE, World.CHARACTER_SIZE)) {
+            return true;
+        }
+
+        // Check for collisions with other NPCs in the nearby grid cells
+        return world.overlapsNpc(nextX, nextY, i);
+    }
+}
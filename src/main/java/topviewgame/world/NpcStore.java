@@ -0,0 +1,351 @@
+package topviewgame.world;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Stores the components of all NPCs in parallel primitive arrays.
+ * <p>
+ * NPCs are identified by their dense index in {@code [0, size())}. Removing an NPC moves the
+ * last NPC into the freed slot, so indices are not stable across removals. The store keeps the
+ * NPC spatial hash and the spawn index in sync with every position change.
+ */
+public class NpcStore {
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Bytes per NPC in a snapshot: eleven doubles plus the peace flag, the tier and the steering phase
+    static final int SNAPSHOT_BYTES = 11 * Double.BYTES + 3;
+
+    // Number of live NPCs
+    int count;
+
+    // Position, position before the last step, and speed
+    double[] x = new double[INITIAL_CAPACITY];
+    double[] y = new double[INITIAL_CAPACITY];
+    double[] previousX = new double[INITIAL_CAPACITY];
+    double[] previousY = new double[INITIAL_CAPACITY];
+    double[] speed = new double[INITIAL_CAPACITY];
+
+    // Position an NPC intends to move to in the current step
+    double[] nextX = new double[INITIAL_CAPACITY];
+    double[] nextY = new double[INITIAL_CAPACITY];
+
+    // Target position and the time it was last picked
+    double[] targetX = new double[INITIAL_CAPACITY];
+    double[] targetY = new double[INITIAL_CAPACITY];
+    double[] lastTargetUpdateTime = new double[INITIAL_CAPACITY];
+
+    // Peace time flag
+    boolean[] peaceTime = new boolean[INITIAL_CAPACITY];
+
+    // Level of detail of the current step, the step offset of the mid and far steering updates, and
+    // the unit direction of the last steering update
+    byte[] lodTier = new byte[INITIAL_CAPACITY];
+    byte[] steeringPhase = new byte[INITIAL_CAPACITY];
+    double[] headingX = new double[INITIAL_CAPACITY];
+    double[] headingY = new double[INITIAL_CAPACITY];
+
+    // Phase offset of the walking animation on the shared animation clock
+    double[] animationPhase = new double[INITIAL_CAPACITY];
+
+    // Identifier that stays with an NPC while its index changes, and the next one to hand out
+    int[] id = new int[INITIAL_CAPACITY];
+    private int nextId;
+
+    // Spatial index over the positions, and the spawn locations the NPCs block
+    private final SpatialHash grid;
+    private final SpawnIndex spawnIndex;
+
+    /**
+     * Constructs an empty store.
+     *
+     * @param grid       The spatial hash to keep in sync with NPC positions.
+     * @param spawnIndex The spawn index to keep in sync with NPC positions.
+     */
+    public NpcStore(SpatialHash grid, SpawnIndex spawnIndex) {
+        this.grid = grid;
+        this.spawnIndex = spawnIndex;
+    }
+
+    /**
+     * Adds an NPC at the given position.
+     *
+     * @param x         The x-coordinate of the NPC.
+     * @param y         The y-coordinate of the NPC.
+     * @param speed     The speed of the NPC in pixels per step.
+     * @param peaceTime True if the NPC starts in peace time; false otherwise.
+     * @param animationPhase The phase offset of the NPC's walking animation.
+     * @return The index of the new NPC.
+     */
+    public int add(double x, double y, double speed, boolean peaceTime, double animationPhase) {
+        if (count == this.x.length) {
+            grow();
+        }
+        int i = count++;
+        this.x[i] = x;
+        this.y[i] = y;
+        this.previousX[i] = x;
+        this.previousY[i] = y;
+        this.speed[i] = speed;
+        this.targetX[i] = x;
+        this.targetY[i] = y;
+        this.lastTargetUpdateTime[i] = 0;
+        this.peaceTime[i] = peaceTime;
+        this.lodTier[i] = 0;
+        this.steeringPhase[i] = 0;
+        this.headingX[i] = 0;
+        this.headingY[i] = 0;
+        this.animationPhase[i] = animationPhase;
+        this.id[i] = nextId++;
+        grid.insert(i, x, y);
+        spawnIndex.add(x, y);
+        return i;
+    }
+
+    /**
+     * Removes an NPC by moving the last NPC into its slot.
+     *
+     * @param i The index of the NPC to remove.
+     */
+    public void remove(int i) {
+        int last = --count;
+        grid.remove(i);
+        spawnIndex.remove(x[i], y[i]);
+        if (i != last) {
+            x[i] = x[last];
+            y[i] = y[last];
+            previousX[i] = previousX[last];
+            previousY[i] = previousY[last];
+            speed[i] = speed[last];
+            targetX[i] = targetX[last];
+            targetY[i] = targetY[last];
+            lastTargetUpdateTime[i] = lastTargetUpdateTime[last];
+            peaceTime[i] = peaceTime[last];
+            lodTier[i] = lodTier[last];
+            steeringPhase[i] = steeringPhase[last];
+            headingX[i] = headingX[last];
+            headingY[i] = headingY[last];
+            animationPhase[i] = animationPhase[last];
+            id[i] = id[last];
+            grid.relabel(last, i);
+        }
+    }
+
+    /**
+     * Moves an NPC and updates the spatial hash and the spawn index.
+     *
+     * @param i The index of the NPC.
+     * @param x The new x-coordinate.
+     * @param y The new y-coordinate.
+     */
+    public void setPosition(int i, double x, double y) {
+        spawnIndex.move(this.x[i], this.y[i], x, y);
+        this.x[i] = x;
+        this.y[i] = y;
+        grid.move(i, x, y);
+    }
+
+    /**
+     * Inserts every NPC into the spatial hash and the spawn index again, after they were cleared
+     * or moved to another area.
+     */
+    public void reindex() {
+        grid.clear();
+        spawnIndex.clear();
+        for (int i = 0; i < count; i++) {
+            grid.insert(i, x[i], y[i]);
+            spawnIndex.add(x[i], y[i]);
+        }
+    }
+
+    /**
+     * Writes all NPCs to a snapshot, one component after the other. Every component is copied with
+     * a single bulk put, so the cost does not depend on object counts. The scratch positions and
+     * next positions, which every step recomputes, are not written.
+     *
+     * @param out The buffer to write to, positioned at the NPC section.
+     */
+    void write(ByteBuffer out) {
+        out.putInt(count);
+        for (double[] component : snapshotComponents()) {
+            out.asDoubleBuffer().put(component, 0, count);
+            out.position(out.position() + count * Double.BYTES);
+        }
+        for (int i = 0; i < count; i++) {
+            out.put((byte) (peaceTime[i] ? 1 : 0));
+        }
+        out.put(lodTier, 0, count);
+        out.put(steeringPhase, 0, count);
+    }
+
+    /**
+     * Replaces all NPCs with the ones of a snapshot. The spatial hash and the spawn index have to
+     * be rebuilt with {@link #reindex()} afterwards. The NPCs get new identifiers.
+     *
+     * @param in The buffer to read from, positioned at the NPC section.
+     */
+    void read(ByteBuffer in) {
+        count = in.getInt();
+        while (x.length < count) {
+            grow();
+        }
+        for (double[] component : snapshotComponents()) {
+            in.asDoubleBuffer().get(component, 0, count);
+            in.position(in.position() + count * Double.BYTES);
+        }
+        for (int i = 0; i < count; i++) {
+            peaceTime[i] = in.get() != 0;
+        }
+        in.get(lodTier, 0, count);
+        in.get(steeringPhase, 0, count);
+        for (int i = 0; i < count; i++) {
+            id[i] = nextId++;
+        }
+    }
+
+    /**
+     * Checks the NPCs of a snapshot without reading them into the store.
+     *
+     * @param in The buffer to check, positioned at the NPCs; left after them.
+     * @throws IOException If an NPC has an unknown level of detail.
+     */
+    static void check(ByteBuffer in) throws IOException {
+        int count = in.getInt();
+        in.position(in.position() + count * (SNAPSHOT_BYTES - 2));
+        for (int i = 0; i < count; i++) {
+            int tier = in.get();
+            if (tier < 0 || tier >= LodTier.values().length) {
+                throw new IOException("Corrupt world snapshot: unknown level of detail " + tier);
+            }
+        }
+        in.position(in.position() + count);
+    }
+
+    /**
+     * Lists the components stored in snapshots, in snapshot order.
+     *
+     * @return The component arrays.
+     */
+    private double[][] snapshotComponents() {
+        return new double[][]{x, y, previousX, previousY, speed, targetX, targetY, lastTargetUpdateTime,
+                headingX, headingY, animationPhase};
+    }
+
+    /**
+     * Remembers the current positions as the previous ones, before a simulation step moves them.
+     */
+    public void savePreviousPositions() {
+        System.arraycopy(x, 0, previousX, 0, count);
+        System.arraycopy(y, 0, previousY, 0, count);
+    }
+
+    /**
+     * Sets the peace time flag of every NPC.
+     *
+     * @param peaceTime True if the game is in peace time; false otherwise.
+     */
+    public void setPeaceTime(boolean peaceTime) {
+        Arrays.fill(this.peaceTime, 0, count, peaceTime);
+    }
+
+    /**
+     * Removes all NPCs.
+     */
+    public void clear() {
+        count = 0;
+        grid.clear();
+        spawnIndex.clear();
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int capacity() {
+        return x.length;
+    }
+
+    public double getX(int i) {
+        return x[i];
+    }
+
+    public double getY(int i) {
+        return y[i];
+    }
+
+    /**
+     * Gets the x-coordinate of an NPC between the last two steps.
+     *
+     * @param i     The index of the NPC.
+     * @param alpha The interpolation factor; 0 is the previous step and 1 the current one.
+     * @return The interpolated x-coordinate.
+     */
+    public double getX(int i, double alpha) {
+        return previousX[i] + (x[i] - previousX[i]) * alpha;
+    }
+
+    /**
+     * Gets the y-coordinate of an NPC between the last two steps.
+     *
+     * @param i     The index of the NPC.
+     * @param alpha The interpolation factor; 0 is the previous step and 1 the current one.
+     * @return The interpolated y-coordinate.
+     */
+    public double getY(int i, double alpha) {
+        return previousY[i] + (y[i] - previousY[i]) * alpha;
+    }
+
+    /**
+     * Collects the NPCs whose top-left corner lies in a box, using the spatial hash.
+     *
+     * @param x      The x-coordinate of the box.
+     * @param y      The y-coordinate of the box.
+     * @param width  The width of the box.
+     * @param height The height of the box.
+     * @param result Receives the indices of the NPCs; NPCs beyond its length are left out.
+     * @return The number of indices written to the result.
+     */
+    public int query(double x, double y, double width, double height, int[] result) {
+        return grid.query(x, y, width, height, this.x, this.y, result);
+    }
+
+    /**
+     * Gets the identifier of an NPC, which unlike its index does not change while the NPC lives.
+     *
+     * @param i The index of the NPC.
+     * @return The identifier.
+     */
+    public int getId(int i) {
+        return id[i];
+    }
+
+    public double getAnimationPhase(int i) {
+        return animationPhase[i];
+    }
+
+    public SpatialHash getGrid() {
+        return grid;
+    }
+
+    private void grow() {
+        int capacity = x.length * 2;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        previousX = Arrays.copyOf(previousX, capacity);
+        previousY = Arrays.copyOf(previousY, capacity);
+        nextX = Arrays.copyOf(nextX, capacity);
+        nextY = Arrays.copyOf(nextY, capacity);
+        speed = Arrays.copyOf(speed, capacity);
+        targetX = Arrays.copyOf(targetX, capacity);
+        targetY = Arrays.copyOf(targetY, capacity);
+        lastTargetUpdateTime = Arrays.copyOf(lastTargetUpdateTime, capacity);
+        peaceTime = Arrays.copyOf(peaceTime, capacity);
+        lodTier = Arrays.copyOf(lodTier, capacity);
+        steeringPhase = Arrays.copyOf(steeringPhase, capacity);
+        headingX = Arrays.copyOf(headingX, capacity);
+        headingY = Arrays.copyOf(headingY, capacity);
+        animationPhase = Arrays.copyOf(animationPhase, capacity);
+        id = Arrays.copyOf(id, capacity);
+    }
+}
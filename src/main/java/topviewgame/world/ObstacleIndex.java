@@ -0,0 +1,317 @@
+package topviewgame.world;
+
+import topviewgame.item.Building;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index of the static obstacles (buildings and borders) of an area of the map.
+ * <p>
+ * Obstacle boxes are copied into primitive arrays and bucketed into a packed uniform grid,
+ * so a box query only tests the few obstacles registered in the cells it touches and never
+ * touches the scene graph. Boxes reaching out of the indexed area count as hits, so nothing
+ * that is checked against the index can leave the area.
+ * <p>
+ * The size of the area is fixed, but the index can be rebuilt in place for another position and
+ * other obstacles. Its arrays only grow, so rebuilding does not allocate once they have room for
+ * the most obstacles an area had so far.
+ */
+public class ObstacleIndex {
+    // Cell size of the bucket grid
+    private static final double CELL_SIZE = 50;
+
+    // Grid layout; the origin moves when the index is rebuilt
+    private final double width;
+    private final double height;
+    private final int columns;
+    private final int rows;
+    private double originX;
+    private double originY;
+    private double limitX;
+    private double limitY;
+
+    // Packed buckets: obstacles of cell i are cellItems[cellStart[i] .. cellStart[i + 1]), and the
+    // fill level of each bucket while rebuilding
+    private final int[] cellStart;
+    private final int[] cellFill;
+    private int[] cellItems = new int[0];
+
+    // Obstacle boxes
+    private int count;
+    private double[] minX = new double[0];
+    private double[] minY = new double[0];
+    private double[] maxX = new double[0];
+    private double[] maxY = new double[0];
+
+    /**
+     * Constructs an empty index for an area of the given size.
+     *
+     * @param width  The width of the area.
+     * @param height The height of the area.
+     */
+    public ObstacleIndex(double width, double height) {
+        this.width = width;
+        this.height = height;
+        columns = Math.max(1, (int) Math.ceil(width / CELL_SIZE));
+        rows = Math.max(1, (int) Math.ceil(height / CELL_SIZE));
+        cellStart = new int[columns * rows + 1];
+        cellFill = new int[columns * rows];
+        limitX = width;
+        limitY = height;
+    }
+
+    /**
+     * Rebuilds the index for the area at a new position.
+     *
+     * @param buildings The buildings and borders in the area.
+     * @param originX   The x-coordinate of the area.
+     * @param originY   The y-coordinate of the area.
+     */
+    public void rebuild(List<Building> buildings, double originX, double originY) {
+        count = buildings.size();
+        this.originX = originX;
+        this.originY = originY;
+        this.limitX = originX + width;
+        this.limitY = originY + height;
+
+        if (minX.length < count) {
+            int capacity = Math.max(count, minX.length + minX.length / 2);
+            minX = new double[capacity];
+            minY = new double[capacity];
+            maxX = new double[capacity];
+            maxY = new double[capacity];
+        }
+        for (int i = 0; i < count; i++) {
+            var building = buildings.get(i);
+            minX[i] = building.getX();
+            minY[i] = building.getY();
+            maxX[i] = building.getX() + building.getWidth();
+            maxY[i] = building.getY() + building.getHeight();
+        }
+
+        // First pass: count the obstacles overlapping each cell
+        Arrays.fill(cellStart, 0);
+        for (int i = 0; i < count; i++) {
+            for (int row = row(minY[i]); row <= row(maxY[i]); row++) {
+                for (int column = column(minX[i]); column <= column(maxX[i]); column++) {
+                    cellStart[row * columns + column + 1]++;
+                }
+            }
+        }
+        for (int i = 0; i < columns * rows; i++) {
+            cellStart[i + 1] += cellStart[i];
+        }
+
+        // Second pass: fill the packed buckets
+        int items = cellStart[columns * rows];
+        if (cellItems.length < items) {
+            cellItems = new int[Math.max(items, cellItems.length + cellItems.length / 2)];
+        }
+        Arrays.fill(cellFill, 0);
+        for (int i = 0; i < count; i++) {
+            for (int row = row(minY[i]); row <= row(maxY[i]); row++) {
+                for (int column = column(minX[i]); column <= column(maxX[i]); column++) {
+                    int cell = row * columns + column;
+                    cellItems[cellStart[cell] + cellFill[cell]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the index for the given map.
+     *
+     * @param buildings The buildings and borders of the map.
+     * @param width     The width of the map.
+     * @param height    The height of the map.
+     * @return The obstacle index.
+     */
+    public static ObstacleIndex build(List<Building> buildings, double width, double height) {
+        return build(buildings, 0, 0, width, height);
+    }
+
+    /**
+     * Builds the index for an area of the map.
+     *
+     * @param buildings The buildings and borders in the area.
+     * @param originX   The x-coordinate of the area.
+     * @param originY   The y-coordinate of the area.
+     * @param width     The width of the area.
+     * @param height    The height of the area.
+     * @return The obstacle index.
+     */
+    public static ObstacleIndex build(List<Building> buildings, double originX, double originY,
+                                      double width, double height) {
+        var index = new ObstacleIndex(width, height);
+        index.rebuild(buildings, originX, originY);
+        return index;
+    }
+
+    /**
+     * Checks if the given box hits any obstacle or reaches out of the indexed area. Touching edges
+     * of an obstacle count as a hit.
+     *
+     * @param x      The x-coordinate of the box.
+     * @param y      The y-coordinate of the box.
+     * @param width  The width of the box.
+     * @param height The height of the box.
+     * @return True if the box intersects an obstacle or leaves the area; false otherwise.
+     */
+    public boolean intersects(double x, double y, double width, double height) {
+        double right = x + width;
+        double bottom = y + height;
+        if (x < originX || y < originY || right > limitX || bottom > limitY) {
+            return true;
+        }
+        int maxRow = row(bottom);
+        int maxColumn = column(right);
+
+        for (int row = row(y); row <= maxRow; row++) {
+            for (int column = column(x); column <= maxColumn; column++) {
+                int cell = row * columns + column;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    int obstacle = cellItems[i];
+                    if (Aabb.intersectsBounds(x, y, right, bottom,
+                            minX[obstacle], minY[obstacle], maxX[obstacle], maxY[obstacle])) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collects the obstacles touching a box, each once. Only the cells covering the box are visited.
+     *
+     * @param x      The x-coordinate of the box.
+     * @param y      The y-coordinate of the box.
+     * @param width  The width of the box.
+     * @param height The height of the box.
+     * @param result Receives the obstacle indices; obstacles beyond its length are left out.
+     * @return The number of indices written to the result.
+     */
+    public int query(double x, double y, double width, double height, int[] result) {
+        double right = x + width;
+        double bottom = y + height;
+        int maxRow = row(bottom);
+        int maxColumn = column(right);
+        int count = 0;
+        for (int row = row(y); row <= maxRow; row++) {
+            for (int column = column(x); column <= maxColumn; column++) {
+                int cell = row * columns + column;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    int obstacle = cellItems[i];
+                    if (!Aabb.intersectsBounds(x, y, right, bottom,
+                            minX[obstacle], minY[obstacle], maxX[obstacle], maxY[obstacle])
+                            || contains(result, count, obstacle)) {
+                        continue;
+                    }
+                    if (count == result.length) {
+                        return count;
+                    }
+                    result[count++] = obstacle;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Marks which boxes of a lattice are clear, giving the same answer as {@link #intersects} for
+     * each box. Instead of querying every box, all boxes inside the indexed area are marked clear
+     * first and then only the boxes around each obstacle are tested against it.
+     * <p>
+     * The box of lattice point {@code (column, row)} has its top-left corner at
+     * {@code (originX + (column + offset) * pitch - inset, originY + (row + offset) * pitch - inset)}.
+     *
+     * @param clear   Receives true for the clear boxes, row by row.
+     * @param columns The number of lattice columns.
+     * @param rows    The number of lattice rows.
+     * @param originX The x-coordinate of the lattice.
+     * @param originY The y-coordinate of the lattice.
+     * @param pitch   The distance between neighbouring lattice points.
+     * @param offset  The offset of the lattice points, in pitches.
+     * @param inset   The distance from a lattice point to the left and top edges of its box.
+     * @param size    The width and height of the boxes.
+     */
+    public void markClear(boolean[] clear, int columns, int rows, double originX, double originY,
+                          double pitch, double offset, double inset, double size) {
+        for (int row = 0; row < rows; row++) {
+            double y = originY + (row + offset) * pitch - inset;
+            for (int column = 0; column < columns; column++) {
+                double x = originX + (column + offset) * pitch - inset;
+                clear[row * columns + column] = x >= this.originX && y >= this.originY
+                        && x + size <= limitX && y + size <= limitY;
+            }
+        }
+
+        // Visit the boxes that may touch each obstacle, with one box of slack for rounding
+        for (int obstacle = 0; obstacle < count; obstacle++) {
+            int firstRow = Math.max(0, (int) Math.floor((minY[obstacle] - size + inset - originY) / pitch - offset) - 1);
+            int lastRow = Math.min(rows - 1, (int) Math.ceil((maxY[obstacle] + inset - originY) / pitch - offset) + 1);
+            int firstColumn = Math.max(0, (int) Math.floor((minX[obstacle] - size + inset - originX) / pitch - offset) - 1);
+            int lastColumn = Math.min(columns - 1, (int) Math.ceil((maxX[obstacle] + inset - originX) / pitch - offset) + 1);
+            for (int row = firstRow; row <= lastRow; row++) {
+                double y = originY + (row + offset) * pitch - inset;
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    double x = originX + (column + offset) * pitch - inset;
+                    if (Aabb.intersectsBounds(x, y, x + size, y + size,
+                            minX[obstacle], minY[obstacle], maxX[obstacle], maxY[obstacle])) {
+                        clear[row * columns + column] = false;
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean contains(int[] items, int count, int item) {
+        for (int k = 0; k < count; k++) {
+            if (items[k] == item) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public double getMinX(int obstacle) {
+        return minX[obstacle];
+    }
+
+    public double getMinY(int obstacle) {
+        return minY[obstacle];
+    }
+
+    public double getMaxX(int obstacle) {
+        return maxX[obstacle];
+    }
+
+    public double getMaxY(int obstacle) {
+        return maxY[obstacle];
+    }
+
+    public double getOriginX() {
+        return originX;
+    }
+
+    public double getOriginY() {
+        return originY;
+    }
+
+    public double getLimitX() {
+        return limitX;
+    }
+
+    public double getLimitY() {
+        return limitY;
+    }
+
+    private int column(double x) {
+        return Math.clamp((int) Math.floor((x - originX) / CELL_SIZE), 0, columns - 1);
+    }
+
+    private int row(double y) {
+        return Math.clamp((int) Math.floor((y - originY) / CELL_SIZE), 0, rows - 1);
+    }
+}
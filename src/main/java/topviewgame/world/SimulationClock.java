@@ -0,0 +1,67 @@
+package topviewgame.world;
+
+/**
+ * Converts real frame time into a whole number of fixed simulation steps.
+ * <p>
+ * Real time is scaled by the time scale (for time-warp runs) and collected in an accumulator;
+ * every full {@link World#STEP_NANOS} in it is one call to {@link World#tick()}. The remainder
+ * is exposed as an interpolation factor so renderers can draw between the last two steps.
+ */
+public class SimulationClock {
+    // Upper bound on the real time handled per frame, so a long hitch doesn't trigger a burst of steps
+    private static final long MAX_FRAME_NANOS = 250_000_000L;
+
+    private double timeScale = 1;
+    private long lastRealTime = -1;
+    private long accumulator;
+
+    /**
+     * Feeds the current real time and takes the simulation steps that have become due.
+     *
+     * @param now The current real time in nanoseconds, e.g. from an AnimationTimer.
+     * @return The number of fixed steps to simulate.
+     */
+    public int advance(long now) {
+        if (lastRealTime < 0) {
+            lastRealTime = now;
+            return 0;
+        }
+        long frameTime = Math.min(now - lastRealTime, MAX_FRAME_NANOS);
+        lastRealTime = now;
+
+        accumulator += (long) (frameTime * timeScale);
+        int steps = (int) (accumulator / World.STEP_NANOS);
+        accumulator -= steps * World.STEP_NANOS;
+        return steps;
+    }
+
+    /**
+     * Gets how far real time has progressed past the last simulated step.
+     *
+     * @return The interpolation factor in {@code [0, 1)}.
+     */
+    public double getAlpha() {
+        return (double) accumulator / World.STEP_NANOS;
+    }
+
+    /**
+     * Forgets the last real time and any accumulated time, e.g. when a new game starts.
+     */
+    public void reset() {
+        lastRealTime = -1;
+        accumulator = 0;
+    }
+
+    /**
+     * Sets how much faster than real time the simulation runs.
+     *
+     * @param timeScale The time scale; 1 is real time.
+     */
+    public void setTimeScale(double timeScale) {
+        this.timeScale = timeScale;
+    }
+
+    public double getTimeScale() {
+        return timeScale;
+    }
+}
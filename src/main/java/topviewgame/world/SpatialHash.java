@@ -0,0 +1,229 @@
+package topviewgame.world;
+
+import java.util.Arrays;
+
+/**
+ * Uniform-grid spatial hash that buckets fixed-size entities by their top-left corner.
+ * <p>
+ * Entities are identified by their dense index. Each cell is an intrusive doubly linked list
+ * threaded through per-entity {@code int} arrays, so inserting, moving and removing an entity
+ * is constant time and allocation-free.
+ */
+public class SpatialHash {
+    private static final int NONE = -1;
+
+    // Grid layout
+    private double originX;
+    private double originY;
+    private final double cellSize;
+    private final double itemSize;
+    private final int columns;
+    private final int rows;
+
+    // First entity of each cell
+    private final int[] cellHead;
+
+    // Per-entity links and current cell
+    private int[] next = new int[0];
+    private int[] previous = new int[0];
+    private int[] cellOf = new int[0];
+
+    /**
+     * Constructs a new spatial hash covering the given area.
+     *
+     * @param width    The width of the covered area.
+     * @param height   The height of the covered area.
+     * @param cellSize The size of a single grid cell; should be at least the item size.
+     * @param itemSize The width and height of every stored entity.
+     */
+    public SpatialHash(double width, double height, double cellSize, double itemSize) {
+        this.cellSize = cellSize;
+        this.itemSize = itemSize;
+        this.columns = Math.max(1, (int) Math.ceil(width / cellSize));
+        this.rows = Math.max(1, (int) Math.ceil(height / cellSize));
+
+        cellHead = new int[columns * rows];
+        Arrays.fill(cellHead, NONE);
+    }
+
+    /**
+     * Adds an entity at the given position.
+     *
+     * @param id The index of the entity.
+     * @param x  The x-coordinate of the entity.
+     * @param y  The y-coordinate of the entity.
+     */
+    public void insert(int id, double x, double y) {
+        ensureCapacity(id + 1);
+        link(id, cellIndex(x, y));
+    }
+
+    /**
+     * Removes an entity from the grid.
+     *
+     * @param id The index of the entity.
+     */
+    public void remove(int id) {
+        unlink(id);
+    }
+
+    /**
+     * Updates the position of an entity, re-bucketing it only when it changes cells.
+     *
+     * @param id The index of the entity.
+     * @param x  The new x-coordinate.
+     * @param y  The new y-coordinate.
+     */
+    public void move(int id, double x, double y) {
+        int cell = cellIndex(x, y);
+        if (cellOf[id] != cell) {
+            unlink(id);
+            link(id, cell);
+        }
+    }
+
+    /**
+     * Gives a stored entity a new index, keeping its cell. Used when entities are swap-removed.
+     *
+     * @param from The current index of the entity.
+     * @param to   The new, currently unused index of the entity.
+     */
+    public void relabel(int from, int to) {
+        int cell = cellOf[from];
+        unlink(from);
+        link(to, cell);
+    }
+
+    /**
+     * Checks whether any entity overlaps the given box. Only the cells around the box are visited.
+     *
+     * @param x       The x-coordinate of the box.
+     * @param y       The y-coordinate of the box.
+     * @param width   The width of the box.
+     * @param height  The height of the box.
+     * @param itemX   The x-coordinates of the entities, indexed by entity.
+     * @param itemY   The y-coordinates of the entities, indexed by entity.
+     * @param ignored The index of an entity to leave out of the check, or -1.
+     * @return True if an entity overlaps the box; false otherwise.
+     */
+    public boolean intersectsAny(double x, double y, double width, double height,
+                                 double[] itemX, double[] itemY, int ignored) {
+        // Entities are bucketed by their top-left corner, so widen the search by one item size
+        int minColumn = column(x - itemSize);
+        int maxColumn = column(x + width);
+        int minRow = row(y - itemSize);
+        int maxRow = row(y + height);
+
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                for (int id = cellHead[row * columns + column]; id != NONE; id = next[id]) {
+                    if (id != ignored
+                            && Aabb.intersects(x, y, width, height, itemX[id], itemY[id], itemSize, itemSize)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collects the entities whose top-left corner lies in a box. Only the cells covering the box
+     * are visited, so the cost depends on the box and not on the total number of entities.
+     *
+     * @param x      The x-coordinate of the box.
+     * @param y      The y-coordinate of the box.
+     * @param width  The width of the box.
+     * @param height The height of the box.
+     * @param itemX  The x-coordinates of the entities, indexed by entity.
+     * @param itemY  The y-coordinates of the entities, indexed by entity.
+     * @param result Receives the indices of the entities; entities beyond its length are left out.
+     * @return The number of indices written to the result.
+     */
+    public int query(double x, double y, double width, double height,
+                     double[] itemX, double[] itemY, int[] result) {
+        int minColumn = column(x);
+        int maxColumn = column(x + width);
+        int minRow = row(y);
+        int maxRow = row(y + height);
+
+        int count = 0;
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                for (int id = cellHead[row * columns + column]; id != NONE; id = next[id]) {
+                    if (itemX[id] >= x && itemX[id] < x + width && itemY[id] >= y && itemY[id] < y + height) {
+                        if (count == result.length) {
+                            return count;
+                        }
+                        result[count++] = id;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Removes all entities from the grid.
+     */
+    public void clear() {
+        Arrays.fill(cellHead, NONE);
+    }
+
+    /**
+     * Moves the covered area and removes all entities from the grid.
+     *
+     * @param originX The new x-coordinate of the covered area.
+     * @param originY The new y-coordinate of the covered area.
+     */
+    public void setOrigin(double originX, double originY) {
+        this.originX = originX;
+        this.originY = originY;
+        clear();
+    }
+
+    private void link(int id, int cell) {
+        int head = cellHead[cell];
+        next[id] = head;
+        previous[id] = NONE;
+        if (head != NONE) {
+            previous[head] = id;
+        }
+        cellHead[cell] = id;
+        cellOf[id] = cell;
+    }
+
+    private void unlink(int id) {
+        int before = previous[id];
+        int after = next[id];
+        if (before != NONE) {
+            next[before] = after;
+        } else {
+            cellHead[cellOf[id]] = after;
+        }
+        if (after != NONE) {
+            previous[after] = before;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > next.length) {
+            int newCapacity = Math.max(capacity, next.length * 2);
+            next = Arrays.copyOf(next, newCapacity);
+            previous = Arrays.copyOf(previous, newCapacity);
+            cellOf = Arrays.copyOf(cellOf, newCapacity);
+        }
+    }
+
+    private int cellIndex(double x, double y) {
+        return row(y) * columns + column(x);
+    }
+
+    private int column(double x) {
+        return Math.clamp((int) Math.floor((x - originX) / cellSize), 0, columns - 1);
+    }
+
+    private int row(double y) {
+        return Math.clamp((int) Math.floor((y - originY) / cellSize), 0, rows - 1);
+    }
+}
@@ -0,0 +1,296 @@
+package topviewgame.world;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Index of the free spawn locations in the simulated area of a map.
+ * <p>
+ * Spawn candidates are the points of a lattice with a pitch of {@link #CELL_SIZE}, each standing
+ * for an NPC-sized box with its top-left corner on the point. A candidate is open if the box does
+ * not hit an obstacle, which is fixed per map, and free if it is open and no NPC overlaps the box.
+ * Every NPC keeps a counter raised on the candidates it blocks, updated as it is added, moved and
+ * removed, so finding a free location never scans the NPCs and takes the same time however
+ * crowded the map is.
+ */
+public class SpawnIndex {
+    // Pitch of the spawn candidate lattice
+    public static final double CELL_SIZE = 10;
+
+    private static final double ITEM_SIZE = World.CHARACTER_SIZE;
+
+    // Lattice layout
+    private double originX;
+    private double originY;
+    private final int columns;
+    private final int rows;
+
+    // Candidates whose box is clear of obstacles
+    private final boolean[] open;
+
+    // Number of NPCs overlapping the box of each candidate
+    private final short[] blocked;
+
+    // Open candidates in the order of the last shuffle, reused by every new game
+    private final int[] shuffled;
+
+    /**
+     * Constructs an index for an area of the given size with all candidates closed.
+     *
+     * @param width  The width of the area.
+     * @param height The height of the area.
+     */
+    public SpawnIndex(double width, double height) {
+        columns = Math.max(1, (int) Math.floor((width - ITEM_SIZE) / CELL_SIZE) + 1);
+        rows = Math.max(1, (int) Math.floor((height - ITEM_SIZE) / CELL_SIZE) + 1);
+        open = new boolean[columns * rows];
+        blocked = new short[columns * rows];
+        shuffled = new int[columns * rows];
+    }
+
+    /**
+     * Moves the covered area and forgets all NPCs. The candidates have to be rebuilt afterwards.
+     *
+     * @param originX The new x-coordinate of the covered area.
+     * @param originY The new y-coordinate of the covered area.
+     */
+    public void setOrigin(double originX, double originY) {
+        this.originX = originX;
+        this.originY = originY;
+        clear();
+    }
+
+    /**
+     * Opens the candidates that are clear of the obstacles of a new map. NPC counters are kept.
+     *
+     * @param obstacles The obstacles of the map.
+     */
+    public void rebuild(ObstacleIndex obstacles) {
+        obstacles.markClear(open, columns, rows, originX, originY, CELL_SIZE, 0, 0, ITEM_SIZE);
+    }
+
+    /**
+     * Forgets all NPCs.
+     */
+    public void clear() {
+        Arrays.fill(blocked, (short) 0);
+    }
+
+    /**
+     * Blocks the candidates overlapped by a new NPC.
+     *
+     * @param x The x-coordinate of the NPC.
+     * @param y The y-coordinate of the NPC.
+     */
+    public void add(double x, double y) {
+        block(x, y, 1);
+    }
+
+    /**
+     * Unblocks the candidates overlapped by a removed NPC.
+     *
+     * @param x The x-coordinate of the NPC.
+     * @param y The y-coordinate of the NPC.
+     */
+    public void remove(double x, double y) {
+        block(x, y, -1);
+    }
+
+    /**
+     * Updates the blocked candidates of a moved NPC. Small moves usually stay within the same
+     * candidates and cost nothing; otherwise only the candidates the NPC starts or stops
+     * overlapping are updated.
+     *
+     * @param oldX The previous x-coordinate of the NPC.
+     * @param oldY The previous y-coordinate of the NPC.
+     * @param x    The new x-coordinate of the NPC.
+     * @param y    The new y-coordinate of the NPC.
+     */
+    public void move(double oldX, double oldY, double x, double y) {
+        int oldFirstColumn = firstColumn(oldX);
+        int oldLastColumn = lastColumn(oldX);
+        int oldFirstRow = firstRow(oldY);
+        int oldLastRow = lastRow(oldY);
+        int newFirstColumn = firstColumn(x);
+        int newLastColumn = lastColumn(x);
+        int newFirstRow = firstRow(y);
+        int newLastRow = lastRow(y);
+        if (oldFirstColumn == newFirstColumn && oldLastColumn == newLastColumn
+                && oldFirstRow == newFirstRow && oldLastRow == newLastRow) {
+            return;
+        }
+        if (newFirstColumn > oldLastColumn || oldFirstColumn > newLastColumn
+                || newFirstRow > oldLastRow || oldFirstRow > newLastRow) {
+            block(oldX, oldY, -1);
+            block(x, y, 1);
+            return;
+        }
+
+        for (int row = Math.min(oldFirstRow, newFirstRow); row <= Math.max(oldLastRow, newLastRow); row++) {
+            boolean inOld = row >= oldFirstRow && row <= oldLastRow;
+            boolean inNew = row >= newFirstRow && row <= newLastRow;
+            if (inOld && inNew) {
+                // Only the columns covered by one of the two boxes change
+                addToColumns(row, oldFirstColumn, Math.min(oldLastColumn, newFirstColumn - 1), -1);
+                addToColumns(row, Math.max(oldFirstColumn, newLastColumn + 1), oldLastColumn, -1);
+                addToColumns(row, newFirstColumn, Math.min(newLastColumn, oldFirstColumn - 1), 1);
+                addToColumns(row, Math.max(newFirstColumn, oldLastColumn + 1), newLastColumn, 1);
+            } else if (inOld) {
+                addToColumns(row, oldFirstColumn, oldLastColumn, -1);
+            } else {
+                addToColumns(row, newFirstColumn, newLastColumn, 1);
+            }
+        }
+    }
+
+    /**
+     * Checks if an NPC could spawn at a candidate.
+     *
+     * @param cell The index of the candidate.
+     * @return True if the candidate is open and no NPC overlaps it; false otherwise.
+     */
+    public boolean isFree(int cell) {
+        return open[cell] && blocked[cell] == 0;
+    }
+
+    /**
+     * Picks a random free candidate within a ring around a center point and a margin from the
+     * map edges. Only the candidates in the bounding box of the ring are visited.
+     *
+     * @param centerX     The x-coordinate of the center of the ring.
+     * @param centerY     The y-coordinate of the center of the ring.
+     * @param minDistance The inner radius of the ring.
+     * @param maxDistance The outer radius of the ring.
+     * @param minX        The smallest allowed x-coordinate.
+     * @param minY        The smallest allowed y-coordinate.
+     * @param maxX        The largest allowed x-coordinate.
+     * @param maxY        The largest allowed y-coordinate.
+     * @param random      The source of the choice.
+     * @return The index of the candidate, or -1 if no candidate is free.
+     */
+    public int sampleRing(double centerX, double centerY, double minDistance, double maxDistance,
+                          double minX, double minY, double maxX, double maxY, RandomGenerator random) {
+        int firstColumn = Math.max(0, (int) Math.ceil((Math.max(minX, centerX - maxDistance) - originX) / CELL_SIZE));
+        int lastColumn = Math.min(columns - 1,
+                (int) Math.floor((Math.min(maxX, centerX + maxDistance) - originX) / CELL_SIZE));
+        int firstRow = Math.max(0, (int) Math.ceil((Math.max(minY, centerY - maxDistance) - originY) / CELL_SIZE));
+        int lastRow = Math.min(rows - 1,
+                (int) Math.floor((Math.min(maxY, centerY + maxDistance) - originY) / CELL_SIZE));
+
+        // First pass counts the free candidates in the ring, the second finds the chosen one
+        int freeCount = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            int chosen = pass == 0 ? -1 : random.nextInt(freeCount);
+            for (int row = firstRow; row <= lastRow; row++) {
+                double deltaY = originY + row * CELL_SIZE - centerY;
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    int cell = row * columns + column;
+                    if (!isFree(cell)) {
+                        continue;
+                    }
+                    double deltaX = originX + column * CELL_SIZE - centerX;
+                    double distanceSquared = deltaX * deltaX + deltaY * deltaY;
+                    if (distanceSquared < minDistance * minDistance || distanceSquared > maxDistance * maxDistance) {
+                        continue;
+                    }
+                    if (pass == 0) {
+                        freeCount++;
+                    } else if (chosen-- == 0) {
+                        return cell;
+                    }
+                }
+            }
+            if (freeCount == 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Lists all open candidates in a random order, read back with {@link #getShuffledCell(int)}.
+     * The list is kept in a buffer of the index, so starting a game does not allocate it.
+     *
+     * @param random The source of the order.
+     * @return The number of open candidates.
+     */
+    public int shuffleOpenCells(RandomGenerator random) {
+        int count = 0;
+        for (int cell = 0; cell < open.length; cell++) {
+            if (open[cell]) {
+                shuffled[count++] = cell;
+            }
+        }
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int cell = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = cell;
+        }
+        return count;
+    }
+
+    /**
+     * Gets an open candidate in the order of the last {@link #shuffleOpenCells(RandomGenerator)}.
+     *
+     * @param k The position in the shuffled order.
+     * @return The index of the candidate.
+     */
+    public int getShuffledCell(int k) {
+        return shuffled[k];
+    }
+
+    /**
+     * Gets the x-coordinate of a candidate.
+     *
+     * @param cell The index of the candidate.
+     * @return The x-coordinate of the top-left corner of the spawn box.
+     */
+    public double getX(int cell) {
+        return originX + (cell % columns) * CELL_SIZE;
+    }
+
+    /**
+     * Gets the y-coordinate of a candidate.
+     *
+     * @param cell The index of the candidate.
+     * @return The y-coordinate of the top-left corner of the spawn box.
+     */
+    public double getY(int cell) {
+        return originY + (cell / columns) * CELL_SIZE;
+    }
+
+    /**
+     * Adds a delta to the counters of all candidates whose box overlaps an NPC at the given position.
+     * Touching edges count as overlapping, like in the NPC collision checks.
+     */
+    private void block(double x, double y, int delta) {
+        int lastColumn = lastColumn(x);
+        int lastRow = lastRow(y);
+        for (int row = firstRow(y); row <= lastRow; row++) {
+            addToColumns(row, firstColumn(x), lastColumn, delta);
+        }
+    }
+
+    private void addToColumns(int row, int firstColumn, int lastColumn, int delta) {
+        for (int column = firstColumn; column <= lastColumn; column++) {
+            blocked[row * columns + column] += (short) delta;
+        }
+    }
+
+    private int firstColumn(double x) {
+        return Math.max(0, (int) Math.ceil((x - originX - ITEM_SIZE) / CELL_SIZE));
+    }
+
+    private int lastColumn(double x) {
+        return Math.min(columns - 1, (int) Math.floor((x - originX + ITEM_SIZE) / CELL_SIZE));
+    }
+
+    private int firstRow(double y) {
+        return Math.max(0, (int) Math.ceil((y - originY - ITEM_SIZE) / CELL_SIZE));
+    }
+
+    private int lastRow(double y) {
+        return Math.min(rows - 1, (int) Math.floor((y - originY + ITEM_SIZE) / CELL_SIZE));
+    }
+}
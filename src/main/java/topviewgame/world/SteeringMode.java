@@ -0,0 +1,27 @@
+package topviewgame.world;
+
+/**
+ * How near NPCs find their way around obstacles and each other.
+ */
+public enum SteeringMode {
+    /**
+     * Probes up to 16 directions around the desired one and takes the first that is free of
+     * obstacles and NPCs, standing still when all are blocked.
+     */
+    PROBE,
+    /**
+     * Computes one collision-free velocity from the nearest NPCs and obstacles with optimal
+     * reciprocal collision avoidance, see {@link CrowdSteering}.
+     */
+    CROWD;
+
+    /**
+     * Parses a steering mode name, case-insensitively.
+     *
+     * @param name The name of the mode, or null.
+     * @return The matching mode, or {@link #PROBE} if the name is null.
+     */
+    public static SteeringMode parse(String name) {
+        return name == null ? PROBE : valueOf(name.toUpperCase());
+    }
+}
@@ -0,0 +1,1140 @@
+package topviewgame.world;
+
+import topviewgame.item.Building;
+import topviewgame.metrics.GameMetrics;
+import topviewgame.metrics.Phase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Holds the complete game state and rules, independent of JavaFX.
+ * <p>
+ * The world is advanced in fixed steps by calling {@link #tick()}; rendering is left to the caller.
+ * The map is generated in chunks by a {@link ChunkMap}, and only a region of a few chunks around the
+ * player is simulated: the obstacle, spawn, NPC and navigation indexes cover that region and are
+ * rebuilt in place when the player moves to another chunk, so their size and cost do not grow with
+ * the map. The chunks next to the region are generated ahead by queued jobs, so they are ready when
+ * the region moves onto them.
+ * NPCs left outside the region when it moves are despawned for good rather than kept in their
+ * chunks, so outrunning NPCs lowers the NPC count until spawning catches up. Work that falls due
+ * in bursts, like a batch of spawns, is queued in a {@link JobScheduler} and spread over the steps
+ * under a budget.
+ * <p>
+ * All randomness comes from the seed passed to {@link #reset(long)}, and the simulation depends only
+ * on the seed and on the inputs applied between steps, so a game can be replayed exactly.
+ * <p>
+ * The individual steps of a tick and of map generation are package-private so the benchmarks in
+ * the {@code jmh} source set can measure them in isolation.
+ */
+public final class World {
+    // Fixed simulation step (60 steps per simulated second)
+    public static final long STEP_NANOS = 1_000_000_000L / 60;
+    public static final double STEP_MILLIS = STEP_NANOS / 1_000_000.0;
+
+    // Constants
+    public static final int CHARACTER_SIZE = 40;
+    private static final double BUILDING_SPACING = 2 * CHARACTER_SIZE; // Ensures at least 2x player size spacing
+    private static final double AREA_PER_BUILDING = 80000; // Map area per building at the default density
+    private static final double MIN_BUILDING_SIZE = 80;
+    private static final double MAX_BUILDING_SIZE = 120;
+    private static final double BORDER_THICKNESS = 10;
+    public static final double SPEED = 5; // Pixels per step
+    private static final double NPC_SPEED = 2; // Pixels per step
+    private static final long NPC_SPAWN_INTERVAL = 2500;
+    private static final long PEACE_TIME_DURATION = 3000;
+    // Interval to increase the number of NPCs to spawn
+    private static final long SPAWN_INCREASE_INTERVAL = 30000; // 30 secoonds
+    // Cell size of the NPC spatial hash
+    private static final double NPC_GRID_CELL_SIZE = 2 * CHARACTER_SIZE;
+
+    // Chunks simulated along each axis by default, and the value that simulates the whole map
+    public static final int DEFAULT_ACTIVE_CHUNKS = 3;
+    public static final int WHOLE_WORLD = Integer.MAX_VALUE;
+
+    // Bytes of the world state in a snapshot, without the queued jobs and the NPCs
+    static final int SNAPSHOT_STATE_BYTES = 4 * Long.BYTES + 14 * Double.BYTES + 3 * Integer.BYTES + 2;
+
+    // Default distances to the player where NPCs switch to the mid and far levels of detail
+    public static final double DEFAULT_LOD_MID_DISTANCE = 500;
+    public static final double DEFAULT_LOD_FAR_DISTANCE = 1200;
+
+    // Default estimated microseconds of deferred jobs, such as spawns, run per step
+    public static final int DEFAULT_JOB_BUDGET_MICROS = 150;
+
+    // Game dimensions
+    private final double width;
+    private final double height;
+    private final double buildingDensity;
+
+    // Simulated region around the player; the region is aligned to the chunk grid
+    private final int activeChunks;
+    private final double regionWidth;
+    private final double regionHeight;
+    private double regionX;
+    private double regionY;
+
+    // Player position, position before the last step, and velocity
+    private double characterX;
+    private double characterY;
+    private double previousCharacterX;
+    private double previousCharacterY;
+    private double playerVelocityX = 0;
+    private double playerVelocityY = 0;
+
+    // Game entities
+    private final NpcStore npcs;
+    private final List<Building> buildings = new ArrayList<>();
+    private final ChunkMap chunks;
+    private final ObstacleIndex obstacles;
+    private final SpawnIndex spawnIndex;
+    private final FlowField flowField;
+
+    // Systems updating the NPC store
+    private final NpcMovementSystem npcMovement = new NpcMovementSystem(this);
+
+    // Expensive work deferred to run under a budget per step
+    private final JobScheduler jobs = new JobScheduler(DEFAULT_JOB_BUDGET_MICROS);
+
+    // Shared clock for all walking animations
+    private final AnimationClock animationClock = new AnimationClock();
+    private double playerAnimationPhase;
+
+    // Seed of the current game and the source of all its random choices
+    private long seed;
+    private final GameRandom random = new GameRandom(0);
+
+    // Receives the phase timings of each tick, or null when not measured
+    private GameMetrics metrics;
+
+    // Game state flags
+    private boolean gameOver = false;
+    private boolean peaceTime = true;
+    private boolean invulnerable = false;
+
+    // Movement flags
+    private boolean movingUp = false;
+    private boolean movingDown = false;
+    private boolean movingLeft = false;
+    private boolean movingRight = false;
+
+    // Simulation time in milliseconds since the start of the game, derived from the step count
+    private long steps;
+    private double time;
+    private double lastNPCSpawnTime;
+    private double peaceStartTime;
+
+    // NPC spawn management
+    private int npcsToSpawn = 1;
+    private double nextSpawnIncreaseTime;
+
+    /**
+     * Constructs a new world of the given size and generates its content.
+     *
+     * @param width  The width of the world.
+     * @param height The height of the world.
+     */
+    public World(double width, double height) {
+        this(width, height, 1);
+    }
+
+    /**
+     * Constructs a new world of the given size and building density and generates its content.
+     *
+     * @param width           The width of the world.
+     * @param height          The height of the world.
+     * @param buildingDensity The number of buildings relative to the default map; 1 is the default.
+     */
+    public World(double width, double height, double buildingDensity) {
+        this(width, height, buildingDensity, DEFAULT_ACTIVE_CHUNKS);
+    }
+
+    /**
+     * Constructs a new world of the given size and building density, simulating the given number of
+     * chunks around the player, and generates its content.
+     *
+     * @param width           The width of the world.
+     * @param height          The height of the world.
+     * @param buildingDensity The number of buildings relative to the default map; 1 is the default.
+     * @param activeChunks    The number of chunks simulated along each axis, or {@link #WHOLE_WORLD}.
+     */
+    public World(double width, double height, double buildingDensity, int activeChunks) {
+        this(width, height, buildingDensity, activeChunks, null, null);
+    }
+
+    /**
+     * Constructs a new world of the given size and building density, simulating the given number of
+     * chunks around the player, and generates its content with the given settings, so the first game
+     * already runs with them.
+     *
+     * @param width           The width of the world.
+     * @param height          The height of the world.
+     * @param buildingDensity The number of buildings relative to the default map; 1 is the default.
+     * @param activeChunks    The number of chunks simulated along each axis, or {@link #WHOLE_WORLD}.
+     * @param settings        The simulation settings.
+     */
+    public World(double width, double height, double buildingDensity, int activeChunks, WorldSettings settings) {
+        this(width, height, buildingDensity, activeChunks, settings, null);
+    }
+
+    /**
+     * Constructs a new world and either generates its content or restores it from a snapshot.
+     *
+     * @param width           The width of the world.
+     * @param height          The height of the world.
+     * @param buildingDensity The number of buildings relative to the default map; 1 is the default.
+     * @param activeChunks    The number of chunks simulated along each axis, or {@link #WHOLE_WORLD}.
+     * @param snapshot        The game state written by {@link #writeSnapshot(ByteBuffer)}.
+     */
+    World(double width, double height, double buildingDensity, int activeChunks, ByteBuffer snapshot) {
+        this(width, height, buildingDensity, activeChunks, null, snapshot);
+    }
+
+    /**
+     * Constructs a new world and either generates its content or restores it from a snapshot.
+     *
+     * @param width           The width of the world.
+     * @param height          The height of the world.
+     * @param buildingDensity The number of buildings relative to the default map; 1 is the default.
+     * @param activeChunks    The number of chunks simulated along each axis, or {@link #WHOLE_WORLD}.
+     * @param settings        The simulation settings of a new game, or null for the defaults.
+     * @param snapshot        The game state written by {@link #writeSnapshot(ByteBuffer)}, or null
+     *                        to start a new game.
+     */
+    private World(double width, double height, double buildingDensity, int activeChunks,
+                  WorldSettings settings, ByteBuffer snapshot) {
+        this.width = width;
+        this.height = height;
+        this.buildingDensity = buildingDensity;
+        this.activeChunks = activeChunks;
+        this.regionWidth = Math.min(width, activeChunks * ChunkMap.CHUNK_SIZE);
+        this.regionHeight = Math.min(height, activeChunks * ChunkMap.CHUNK_SIZE);
+        this.chunks = new ChunkMap(width, height, BORDER_THICKNESS, BUILDING_SPACING,
+                MIN_BUILDING_SIZE, MAX_BUILDING_SIZE, AREA_PER_BUILDING / buildingDensity);
+        this.obstacles = new ObstacleIndex(regionWidth, regionHeight);
+        this.spawnIndex = new SpawnIndex(regionWidth, regionHeight);
+        this.flowField = new FlowField(regionWidth, regionHeight);
+        this.npcs = new NpcStore(new SpatialHash(regionWidth, regionHeight, NPC_GRID_CELL_SIZE, CHARACTER_SIZE),
+                spawnIndex);
+        if (settings != null) {
+            settings.applyTo(this);
+        }
+        if (snapshot == null) {
+            reset();
+        } else {
+            readSnapshot(snapshot);
+        }
+    }
+
+    /**
+     * Resets the world and generates a new map, player and NPCs from a fresh seed.
+     */
+    public void reset() {
+        reset(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Resets the world and generates a new map, player and NPCs. The same seed gives the same game.
+     *
+     * @param seed The seed of all random choices of the game.
+     */
+    public void reset(long seed) {
+        this.seed = seed;
+        random.setState(seed);
+
+        // Clear previous game state
+        npcs.clear();
+        buildings.clear();
+        jobs.clear();
+        gameOver = false;
+
+        // Reset movement flags
+        movingUp = false;
+        movingDown = false;
+        movingLeft = false;
+        movingRight = false;
+
+        // Initialize timer variables
+        steps = 0;
+        time = 0;
+        animationClock.reset();
+        lastNPCSpawnTime = time;
+        peaceStartTime = time;
+        peaceTime = true;
+        npcMovement.clearTierCounts();
+        nextSpawnIncreaseTime = time + SPAWN_INCREASE_INTERVAL;
+        npcsToSpawn = 1;
+
+        // Generate the map around the center, where the player starts
+        chunks.reset(random.nextLong());
+        characterX = width / 2 - CHARACTER_SIZE / 2;
+        characterY = height / 2 - CHARACTER_SIZE / 2;
+        moveRegion(regionStart(characterX, chunks.getColumns()), regionStart(characterY, chunks.getRows()));
+        checkMapDensity();
+        prefetchChunks(chunks.countMissingAround(regionX, regionY, regionX + regionWidth, regionY + regionHeight));
+
+        // Generate game elements
+        initializeCharacter();
+        updateRegion();
+        generateNPCs();
+    }
+
+    /**
+     * Advances the simulation by one fixed step of {@link #STEP_MILLIS}.
+     */
+    public void tick() {
+        if (gameOver) {
+            return;
+        }
+        steps++;
+        time = steps * STEP_MILLIS;
+        animationClock.advance(STEP_MILLIS);
+        npcs.savePreviousPositions();
+        long start = startPhase();
+        moveCharacter();
+        updateRegion();
+        start = endPhase(Phase.MOVE_CHARACTER, start);
+        if (!peaceTime) {
+            moveNPCs();
+            start = endPhase(Phase.MOVE_NPCS, start);
+            checkAndAddNPCs();
+            start = endPhase(Phase.SPAWN_NPCS, start);
+        } else {
+            checkPeaceTime();
+        }
+        runJobs();
+        start = endPhase(Phase.JOBS, start);
+        handleCollisions();
+        endPhase(Phase.COLLISIONS, start);
+    }
+
+    /**
+     * Starts timing a phase of the tick.
+     *
+     * @return The start time in nanoseconds, or 0 if ticks are not measured.
+     */
+    private long startPhase() {
+        return metrics == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Records the duration of a phase of the tick.
+     *
+     * @param phase The phase that ended.
+     * @param start The start time of the phase.
+     * @return The start time of the next phase.
+     */
+    private long endPhase(Phase phase, long start) {
+        if (metrics == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        metrics.record(phase, now - start);
+        return now;
+    }
+
+    /**
+     * Moves the simulated region when the player has entered another chunk.
+     */
+    private void updateRegion() {
+        double x = regionStart(characterX, chunks.getColumns());
+        double y = regionStart(characterY, chunks.getRows());
+        if (x != regionX || y != regionY) {
+            double previousX = regionX;
+            double previousY = regionY;
+            moveRegion(x, y);
+            prefetchChunks(chunks.countNewAround(x, y, x + regionWidth, y + regionHeight,
+                    previousX, previousY, previousX + regionWidth, previousY + regionHeight));
+        }
+    }
+
+    /**
+     * Queues the loading of the chunks next to the simulated region, so the region can move onto
+     * them later without generating them in that step. Each job loads whichever of these chunks is
+     * still missing when it runs.
+     *
+     * @param count The number of chunks to load.
+     */
+    private void prefetchChunks(int count) {
+        for (int k = 0; k < count; k++) {
+            jobs.add(JobScheduler.Job.LOAD_CHUNK, steps);
+        }
+    }
+
+    /**
+     * Gets where the simulated region starts along one axis, centered on the chunk of the player
+     * as far as the map allows.
+     *
+     * @param position   The coordinate of the player along the axis.
+     * @param chunkCount The number of chunks of the map along the axis.
+     * @return The start coordinate of the region.
+     */
+    private double regionStart(double position, int chunkCount) {
+        int chunk = (int) Math.floor((position + CHARACTER_SIZE / 2.0) / ChunkMap.CHUNK_SIZE);
+        return Math.clamp(chunk - activeChunks / 2, 0, Math.max(0, chunkCount - activeChunks)) * ChunkMap.CHUNK_SIZE;
+    }
+
+    /**
+     * Moves the simulated region, despawning the NPCs outside of it and rebuilding the indexes in
+     * place. The despawned NPCs are not restored when the player comes back to their chunks.
+     *
+     * @param x The x-coordinate of the new region.
+     * @param y The y-coordinate of the new region.
+     */
+    private void moveRegion(double x, double y) {
+        regionX = x;
+        regionY = y;
+        for (int i = npcs.size() - 1; i >= 0; i--) {
+            if (!isInRegion(npcs.getX(i), npcs.getY(i))) {
+                npcs.remove(i);
+            }
+        }
+        npcs.getGrid().setOrigin(x, y);
+        spawnIndex.setOrigin(x, y);
+        generateMap();
+        npcs.reindex();
+    }
+
+    /**
+     * Checks if a character-sized box at the given position lies inside the simulated region.
+     *
+     * @param x The x-coordinate of the box.
+     * @param y The y-coordinate of the box.
+     * @return True if the box is inside the region; false otherwise.
+     */
+    boolean isInRegion(double x, double y) {
+        return x >= regionX && y >= regionY
+                && x + CHARACTER_SIZE <= regionX + regionWidth && y + CHARACTER_SIZE <= regionY + regionHeight;
+    }
+
+    /**
+     * Initializes the player character.
+     */
+    private void initializeCharacter() {
+        playerVelocityX = 0;
+        playerVelocityY = 0;
+
+        // Ensure character doesn't overlap with buildings
+        int attempts = 0;
+        boolean overlaps;
+        do {
+            overlaps = false;
+
+            // Check overlap with buildings
+            if (obstacles.intersects(characterX, characterY, CHARACTER_SIZE, CHARACTER_SIZE)) {
+                overlaps = true;
+                // Adjust character position slightly and retry
+                characterX += 10;
+                characterY += 10;
+            }
+
+            attempts++;
+        } while (overlaps && attempts < 100);
+
+        if (attempts >= 100) {
+            System.err.println("Could not find a suitable spawn location for the character.");
+        }
+        previousCharacterX = characterX;
+        previousCharacterY = characterY;
+    }
+
+    /**
+     * Loads the chunks of the simulated region that were not loaded ahead, and rebuilds the
+     * obstacles and navigation grid from their buildings.
+     */
+    void generateMap() {
+        double maxX = regionX + regionWidth;
+        double maxY = regionY + regionHeight;
+        chunks.update(regionX, regionY, maxX, maxY);
+        buildings.clear();
+        chunks.collectBuildings(buildings, regionX, regionY, maxX, maxY);
+        obstacles.rebuild(buildings, regionX, regionY);
+        spawnIndex.rebuild(obstacles);
+        flowField.rebuild(regionX, regionY, obstacles);
+    }
+
+    /**
+     * Reports when the generated chunks got far fewer buildings than requested.
+     */
+    private void checkMapDensity() {
+        int requested = 0;
+        int placed = 0;
+        for (Chunk chunk : chunks.getLoadedChunks()) {
+            requested += chunk.getRequestedBuildings();
+            placed += chunk.getPlacedBuildings();
+        }
+
+        // Missing a building or two is normal close to the packing limit; report real shortfalls
+        if (placed < requested * 0.8) {
+            System.err.println("Map too dense: placed " + placed + " of " + requested + " buildings.");
+        }
+    }
+
+    /**
+     * Generates initial NPCs.
+     */
+    private void generateNPCs() {
+        int numNPCs = (int) ((regionWidth * regionHeight) / 100000); // Adjusted for more NPCs
+
+        // Visit the open spawn locations in a random order and take the ones that are still free
+        int cells = spawnIndex.shuffleOpenCells(random);
+        int placed = 0;
+        for (int i = 0; i < cells && placed < numNPCs; i++) {
+            int cell = spawnIndex.getShuffledCell(i);
+            double x = spawnIndex.getX(cell);
+            double y = spawnIndex.getY(cell);
+
+            // Ensure NPCs are not spawned too close to the player
+            if (spawnIndex.isFree(cell) && Math.hypot(x - characterX, y - characterY) >= 200) {
+                addNpc(x, y);
+                placed++;
+            }
+        }
+    }
+
+    /**
+     * Moves the player character based on input.
+     */
+    private void moveCharacter() {
+        double oldX = characterX;
+        double oldY = characterY;
+        previousCharacterX = oldX;
+        previousCharacterY = oldY;
+
+        if (movingUp) {
+            characterY -= SPEED;
+        }
+        if (movingDown) {
+            characterY += SPEED;
+        }
+        if (movingLeft) {
+            characterX -= SPEED;
+        }
+        if (movingRight) {
+            characterX += SPEED;
+        }
+
+        // Calculate velocity
+        playerVelocityX = characterX - oldX;
+        playerVelocityY = characterY - oldY;
+
+        // Keep the character within bounds using Math.clamp (Java 21 feature)
+        characterX = Math.clamp(characterX, 0, width - CHARACTER_SIZE);
+        characterY = Math.clamp(characterY, 0, height - CHARACTER_SIZE);
+
+        // Handle collisions with buildings
+        if (obstacles.intersects(characterX, characterY, CHARACTER_SIZE, CHARACTER_SIZE)) {
+            characterX = oldX;
+            characterY = oldY;
+            // Reset velocity due to collision
+            playerVelocityX = 0;
+            playerVelocityY = 0;
+        }
+    }
+
+    /**
+     * Moves all NPCs towards the player.
+     */
+    void moveNPCs() {
+        npcMovement.update(npcs);
+    }
+
+    /**
+     * Handles collisions between the player and NPCs.
+     */
+    void handleCollisions() {
+        // Handle collision with NPCs near the player
+        if (overlapsNpc(characterX, characterY, -1) && !invulnerable) {
+            gameOver = true;
+        }
+    }
+
+    /**
+     * Checks if a character-sized box overlaps any NPC, visiting only the nearby grid cells.
+     *
+     * @param x       The x-coordinate of the box.
+     * @param y       The y-coordinate of the box.
+     * @param ignored The index of an NPC to leave out of the check, or -1.
+     * @return True if an NPC overlaps the box; false otherwise.
+     */
+    public boolean overlapsNpc(double x, double y, int ignored) {
+        return npcs.getGrid().intersectsAny(x, y, CHARACTER_SIZE, CHARACTER_SIZE, npcs.x, npcs.y, ignored);
+    }
+
+    /**
+     * Checks if peace time has ended.
+     */
+    private void checkPeaceTime() {
+        if (time - peaceStartTime >= PEACE_TIME_DURATION) {
+            peaceTime = false;
+            npcs.setPeaceTime(false);
+        }
+    }
+
+    /**
+     * Checks if it's time to add new NPCs and increases spawn count every interval.
+     */
+    private void checkAndAddNPCs() {
+        // Queue a spawn per NPC at intervals; the job scheduler spreads a large batch over several steps
+        if (time - lastNPCSpawnTime >= NPC_SPAWN_INTERVAL) {
+            for (int i = 0; i < npcsToSpawn; i++) {
+                jobs.add(JobScheduler.Job.SPAWN_NPC, steps);
+            }
+            lastNPCSpawnTime = time;
+        }
+
+        // Increase the number of NPCs to spawn every interval
+        if (time >= nextSpawnIncreaseTime) {
+            npcsToSpawn++;
+            nextSpawnIncreaseTime += SPAWN_INCREASE_INTERVAL;
+        }
+    }
+
+    /**
+     * Runs the queued jobs that fit into the budget of this step.
+     */
+    private void runJobs() {
+        jobs.startStep();
+        for (var job = jobs.next(steps); job != null; job = jobs.next(steps)) {
+            switch (job) {
+                case SPAWN_NPC -> addNewNPC();
+                case LOAD_CHUNK -> chunks.loadAround(regionX, regionY, regionX + regionWidth, regionY + regionHeight, 1);
+            }
+            if (metrics != null) {
+                metrics.recordJobDeferral(jobs.getLastDeferralSteps() * STEP_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Adds a new NPC near the player to the game, if there is room for it.
+     */
+    void addNewNPC() {
+        // Define minimum and maximum spawn distances from the player
+        final double MIN_SPAWN_DISTANCE = 200; // Minimum distance from the player
+        final double MAX_SPAWN_DISTANCE = 400; // Maximum distance from the player
+
+        // Pick a free location in the ring around the player that also keeps the minimum spawn
+        // distance to the edges of the game area
+        int cell = spawnIndex.sampleRing(characterX, characterY, MIN_SPAWN_DISTANCE, MAX_SPAWN_DISTANCE,
+                MIN_SPAWN_DISTANCE, MIN_SPAWN_DISTANCE, width - MIN_SPAWN_DISTANCE, height - MIN_SPAWN_DISTANCE,
+                random);
+        if (cell >= 0) {
+            addNpc(spawnIndex.getX(cell), spawnIndex.getY(cell));
+        }
+    }
+
+    /**
+     * Adds an NPC to the store, aiming it at the player.
+     *
+     * @param x The x-coordinate of the NPC.
+     * @param y The y-coordinate of the NPC.
+     */
+    void addNpc(double x, double y) {
+        // Set peaceTime flag according to current game state
+        int i = npcs.add(x, y, NPC_SPEED, peaceTime, animationClock.startPhase());
+        npcMovement.pickNewTarget(npcs, i);
+    }
+
+    /**
+     * Writes the game state to a snapshot: the seeds and random state, the spawn schedule, the
+     * player, the game flags, the queued jobs and all NPCs. Buildings are not written, since the chunk map
+     * regenerates them exactly from the map seed.
+     *
+     * @param out The buffer to write to, with {@link #getSnapshotBytes()} bytes remaining.
+     */
+    void writeSnapshot(ByteBuffer out) {
+        out.putLong(seed);
+        out.putLong(chunks.getSeed());
+        out.putLong(random.getState());
+        out.putLong(steps);
+        out.putDouble(lastNPCSpawnTime);
+        out.putDouble(peaceStartTime);
+        out.putDouble(nextSpawnIncreaseTime);
+        out.putDouble(characterX);
+        out.putDouble(characterY);
+        out.putDouble(previousCharacterX);
+        out.putDouble(previousCharacterY);
+        out.putDouble(playerVelocityX);
+        out.putDouble(playerVelocityY);
+        out.putDouble(playerAnimationPhase);
+        out.putDouble(animationClock.getTime());
+        out.putDouble(npcMovement.getLodMidDistance());
+        out.putDouble(npcMovement.getLodFarDistance());
+        out.putDouble(npcMovement.getLastFlowFieldUpdateTime());
+        out.putInt(npcsToSpawn);
+        out.putInt(jobs.getBudgetMicros());
+        out.putInt(flowField.getGoalCell());
+        out.put((byte) ((gameOver ? 1 : 0) | (peaceTime ? 2 : 0) | (invulnerable ? 4 : 0)
+                | (movingUp ? 8 : 0) | (movingDown ? 16 : 0) | (movingLeft ? 32 : 0) | (movingRight ? 64 : 0)
+                | (npcMovement.getSteeringMode() == SteeringMode.CROWD ? 128 : 0)));
+        out.put((byte) (npcMovement.isStaggeredRetargeting() ? 1 : 0));
+        jobs.write(out);
+        npcs.write(out);
+    }
+
+    /**
+     * Replaces the game state with the one of a snapshot written by a world of the same layout.
+     * The map of the saved region is regenerated from the map seed and the flow field is recomputed
+     * for its saved goal, so the game continues exactly as the saved one would have.
+     *
+     * @param in The buffer to read from.
+     */
+    void readSnapshot(ByteBuffer in) {
+        seed = in.getLong();
+        long mapSeed = in.getLong();
+        random.setState(in.getLong());
+        steps = in.getLong();
+        time = steps * STEP_MILLIS;
+        lastNPCSpawnTime = in.getDouble();
+        peaceStartTime = in.getDouble();
+        nextSpawnIncreaseTime = in.getDouble();
+        characterX = in.getDouble();
+        characterY = in.getDouble();
+        previousCharacterX = in.getDouble();
+        previousCharacterY = in.getDouble();
+        playerVelocityX = in.getDouble();
+        playerVelocityY = in.getDouble();
+        playerAnimationPhase = in.getDouble();
+        animationClock.setTime(in.getDouble());
+        npcMovement.setLodDistances(in.getDouble(), in.getDouble());
+        npcMovement.setLastFlowFieldUpdateTime(in.getDouble());
+        npcsToSpawn = in.getInt();
+        setJobBudget(in.getInt());
+        int goalCell = in.getInt();
+        int flags = in.get();
+        gameOver = (flags & 1) != 0;
+        peaceTime = (flags & 2) != 0;
+        invulnerable = (flags & 4) != 0;
+        movingUp = (flags & 8) != 0;
+        movingDown = (flags & 16) != 0;
+        movingLeft = (flags & 32) != 0;
+        movingRight = (flags & 64) != 0;
+        npcMovement.setSteeringMode((flags & 128) != 0 ? SteeringMode.CROWD : SteeringMode.PROBE);
+        npcMovement.setStaggeredRetargeting((in.get() & 1) != 0);
+        jobs.read(in);
+
+        // Regenerate the map around the player, then put the NPCs back into it; they get their levels
+        // of detail again in the next step that moves them
+        npcMovement.clearTierCounts();
+        npcs.clear();
+        chunks.reset(mapSeed);
+        moveRegion(regionStart(characterX, chunks.getColumns()), regionStart(characterY, chunks.getRows()));
+        // Load the chunks next to the region too, which the queued jobs would otherwise still be missing
+        chunks.loadAround(regionX, regionY, regionX + regionWidth, regionY + regionHeight, Integer.MAX_VALUE);
+        npcs.read(in);
+        npcs.reindex();
+        if (goalCell >= 0) {
+            flowField.update(goalCell);
+        }
+    }
+
+    /**
+     * Checks the values of a snapshot that {@link #readSnapshot(ByteBuffer)} cannot take, so a corrupt
+     * snapshot is rejected before any world is overwritten. The buffer position is left unchanged.
+     *
+     * @param in           The buffer, holding all of the game state.
+     * @param offset       The position of the game state in the buffer.
+     * @param width        The width of the saved world.
+     * @param height       The height of the saved world.
+     * @param activeChunks The number of active chunks of the saved world.
+     * @throws IOException If a value is out of range.
+     */
+    static void checkSnapshot(ByteBuffer in, int offset, double width, double height, int activeChunks) throws IOException {
+        ByteBuffer state = in.duplicate().order(in.order());
+        state.position(offset + 4 * Long.BYTES + 11 * Double.BYTES);
+        double lodMidDistance = state.getDouble();
+        double lodFarDistance = state.getDouble();
+        state.getDouble();
+        state.getInt();
+        int jobBudget = state.getInt();
+        int goalCell = state.getInt();
+        int flowCells = FlowField.cellCount(Math.min(width, activeChunks * ChunkMap.CHUNK_SIZE),
+                Math.min(height, activeChunks * ChunkMap.CHUNK_SIZE));
+        if (!(lodMidDistance >= 0) || !(lodFarDistance >= lodMidDistance) || jobBudget < 0
+                || goalCell < -1 || goalCell >= flowCells) {
+            throw new IOException("Corrupt world snapshot: invalid game settings");
+        }
+        state.position(offset + SNAPSHOT_STATE_BYTES);
+        JobScheduler.check(state);
+        NpcStore.check(state);
+    }
+
+    /**
+     * Takes over the player state of a world simulated elsewhere, keeping the current state as the
+     * previous one for interpolation, and moves the region along with the player.
+     *
+     * @param steps      The step count of the remote world.
+     * @param characterX The x-coordinate of the player.
+     * @param characterY The y-coordinate of the player.
+     * @param inputs     The pressed inputs, one bit per {@link Input} ordinal.
+     * @param gameOver   True if the remote game is over; false otherwise.
+     * @param peaceTime  True if the remote game is in peace time; false otherwise.
+     */
+    void applyRemoteState(long steps, double characterX, double characterY, int inputs,
+                          boolean gameOver, boolean peaceTime) {
+        if (steps > this.steps) {
+            animationClock.advance((steps - this.steps) * STEP_MILLIS);
+        }
+        this.steps = steps;
+        time = steps * STEP_MILLIS;
+        previousCharacterX = this.characterX;
+        previousCharacterY = this.characterY;
+        this.characterX = characterX;
+        this.characterY = characterY;
+        playerVelocityX = characterX - previousCharacterX;
+        playerVelocityY = characterY - previousCharacterY;
+        applyInput(Input.UP, (inputs & 1 << Input.UP.ordinal()) != 0);
+        applyInput(Input.DOWN, (inputs & 1 << Input.DOWN.ordinal()) != 0);
+        applyInput(Input.LEFT, (inputs & 1 << Input.LEFT.ordinal()) != 0);
+        applyInput(Input.RIGHT, (inputs & 1 << Input.RIGHT.ordinal()) != 0);
+        this.gameOver = gameOver;
+        this.peaceTime = peaceTime;
+        updateRegion();
+    }
+
+    AnimationClock getAnimationClock() {
+        return animationClock;
+    }
+
+    /**
+     * Gets the size of the snapshot of the current game state.
+     *
+     * @return The number of bytes {@link #writeSnapshot(ByteBuffer)} writes.
+     */
+    int getSnapshotBytes() {
+        return SNAPSHOT_STATE_BYTES + Integer.BYTES + jobs.size() * JobScheduler.SNAPSHOT_BYTES
+                + Integer.BYTES + npcs.size() * NpcStore.SNAPSHOT_BYTES;
+    }
+
+    /**
+     * Sets where the phase timings of each tick are recorded.
+     *
+     * @param metrics The metrics to record into, or null to stop measuring.
+     */
+    public void setMetrics(GameMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the distances to the player where NPCs switch to cheaper simulation levels of detail.
+     *
+     * @param midDistance The distance where the {@link LodTier#MID} tier starts.
+     * @param farDistance The distance where the {@link LodTier#FAR} tier starts; at least the mid distance.
+     */
+    public void setLodDistances(double midDistance, double farDistance) {
+        npcMovement.setLodDistances(midDistance, farDistance);
+    }
+
+    /**
+     * Sets how near NPCs avoid obstacles and each other.
+     *
+     * @param steeringMode The steering mode.
+     */
+    public void setSteeringMode(SteeringMode steeringMode) {
+        npcMovement.setSteeringMode(steeringMode);
+    }
+
+    public SteeringMode getSteeringMode() {
+        return npcMovement.getSteeringMode();
+    }
+
+    /**
+     * Sets how much deferred work, such as spawning a batch of NPCs, runs per step.
+     *
+     * @param budgetMicros The estimated microseconds of jobs to run per step, or 0 to run all work
+     *                     in the step it falls due, as before the job scheduler.
+     */
+    public void setJobBudget(int budgetMicros) {
+        jobs.setBudgetMicros(budgetMicros);
+    }
+
+    public int getJobBudget() {
+        return jobs.getBudgetMicros();
+    }
+
+    /**
+     * Sets whether NPCs added together re-target in different steps of the re-targeting interval
+     * rather than all in the same step. Takes effect for NPCs added afterwards.
+     *
+     * @param staggeredRetargeting True to stagger the re-targeting, as by default; false to
+     *                             re-target as before staggering was added.
+     */
+    public void setStaggeredRetargeting(boolean staggeredRetargeting) {
+        npcMovement.setStaggeredRetargeting(staggeredRetargeting);
+    }
+
+    public boolean isStaggeredRetargeting() {
+        return npcMovement.isStaggeredRetargeting();
+    }
+
+    /**
+     * Gets the number of jobs waiting for a step with enough budget left.
+     *
+     * @return The queue depth.
+     */
+    public int getQueuedJobs() {
+        return jobs.size();
+    }
+
+    /**
+     * Gets the longest time a job run in the last step waited in the queue.
+     *
+     * @return The deferral in steps.
+     */
+    public long getJobDeferralSteps() {
+        return jobs.getDeferralSteps();
+    }
+
+    /**
+     * Gets the number of NPCs that were simulated at a level of detail in the last step.
+     *
+     * @param tier The level of detail.
+     * @return The number of NPCs.
+     */
+    public int getLodCount(LodTier tier) {
+        return npcMovement.getTierCount(tier);
+    }
+
+    /**
+     * Sets whether NPCs colliding with the player end the game. Collisions are still checked
+     * either way, so long-running stress tests keep the full per-tick cost.
+     *
+     * @param invulnerable True to keep the game running on collisions; false for normal rules.
+     */
+    public void setInvulnerable(boolean invulnerable) {
+        this.invulnerable = invulnerable;
+    }
+
+    public boolean isInvulnerable() {
+        return invulnerable;
+    }
+
+    /**
+     * Starts or stops moving the player in a direction.
+     *
+     * @param input   The direction.
+     * @param pressed True to start moving; false to stop.
+     */
+    public void applyInput(Input input, boolean pressed) {
+        switch (input) {
+            case UP -> setMovingUp(pressed);
+            case DOWN -> setMovingDown(pressed);
+            case LEFT -> setMovingLeft(pressed);
+            case RIGHT -> setMovingRight(pressed);
+        }
+    }
+
+    /**
+     * Checks if the player is moving in a direction.
+     *
+     * @param input The direction.
+     * @return True if the direction is pressed; false otherwise.
+     */
+    public boolean isPressed(Input input) {
+        return switch (input) {
+            case UP -> movingUp;
+            case DOWN -> movingDown;
+            case LEFT -> movingLeft;
+            case RIGHT -> movingRight;
+        };
+    }
+
+    public void setMovingUp(boolean movingUp) {
+        startPlayerAnimation();
+        this.movingUp = movingUp;
+    }
+
+    public void setMovingDown(boolean movingDown) {
+        startPlayerAnimation();
+        this.movingDown = movingDown;
+    }
+
+    public void setMovingLeft(boolean movingLeft) {
+        startPlayerAnimation();
+        this.movingLeft = movingLeft;
+    }
+
+    public void setMovingRight(boolean movingRight) {
+        startPlayerAnimation();
+        this.movingRight = movingRight;
+    }
+
+    /**
+     * Restarts the player's walking animation at its first frame if the player is standing still.
+     */
+    private void startPlayerAnimation() {
+        if (!isMoving()) {
+            playerAnimationPhase = animationClock.startPhase();
+        }
+    }
+
+    /**
+     * Gets the current walking frame of the player.
+     *
+     * @return The frame index, or -1 if the player is standing still.
+     */
+    public int getPlayerFrame() {
+        return isMoving() ? animationClock.frame(playerAnimationPhase) : -1;
+    }
+
+    /**
+     * Gets the current walking frame of an NPC.
+     *
+     * @param i The index of the NPC.
+     * @return The frame index.
+     */
+    public int getNpcFrame(int i) {
+        return animationClock.frame(npcs.getAnimationPhase(i));
+    }
+
+    /**
+     * Computes a hash of the simulation state: the step count, the player, the NPCs and the game
+     * flags. Worlds reset with the same seed and given the same inputs at the same steps have the
+     * same hash, which is how replays check that they reproduced a recorded game exactly.
+     *
+     * @return The hash.
+     */
+    public long stateHash() {
+        long hash = mix(steps, Double.doubleToLongBits(characterX));
+        hash = mix(hash, Double.doubleToLongBits(characterY));
+        hash = mix(hash, (gameOver ? 1 : 0) | (peaceTime ? 2 : 0));
+        hash = mix(hash, npcsToSpawn);
+        hash = mix(hash, npcs.size());
+        for (int i = 0; i < npcs.size(); i++) {
+            hash = mix(hash, Double.doubleToLongBits(npcs.x[i]));
+            hash = mix(hash, Double.doubleToLongBits(npcs.y[i]));
+            hash = mix(hash, Double.doubleToLongBits(npcs.targetX[i]));
+            hash = mix(hash, Double.doubleToLongBits(npcs.targetY[i]));
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, long value) {
+        hash = (hash ^ value) * 0xBF58476D1CE4E5B9L;
+        return hash ^ (hash >>> 31);
+    }
+
+    public boolean isMoving() {
+        return movingUp || movingDown || movingLeft || movingRight;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    public double getBuildingDensity() {
+        return buildingDensity;
+    }
+
+    public int getActiveChunks() {
+        return activeChunks;
+    }
+
+    public double getLodMidDistance() {
+        return npcMovement.getLodMidDistance();
+    }
+
+    public double getLodFarDistance() {
+        return npcMovement.getLodFarDistance();
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public double getRegionX() {
+        return regionX;
+    }
+
+    public double getRegionY() {
+        return regionY;
+    }
+
+    public double getRegionWidth() {
+        return regionWidth;
+    }
+
+    public double getRegionHeight() {
+        return regionHeight;
+    }
+
+    public ChunkMap getChunks() {
+        return chunks;
+    }
+
+    public long getSteps() {
+        return steps;
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    public double getCharacterX() {
+        return characterX;
+    }
+
+    public double getCharacterY() {
+        return characterY;
+    }
+
+    /**
+     * Gets the x-coordinate of the player between the last two steps.
+     *
+     * @param alpha The interpolation factor; 0 is the previous step and 1 the current one.
+     * @return The interpolated x-coordinate.
+     */
+    public double getCharacterX(double alpha) {
+        return previousCharacterX + (characterX - previousCharacterX) * alpha;
+    }
+
+    /**
+     * Gets the y-coordinate of the player between the last two steps.
+     *
+     * @param alpha The interpolation factor; 0 is the previous step and 1 the current one.
+     * @return The interpolated y-coordinate.
+     */
+    public double getCharacterY(double alpha) {
+        return previousCharacterY + (characterY - previousCharacterY) * alpha;
+    }
+
+    public double getPlayerVelocityX() {
+        return playerVelocityX;
+    }
+
+    public double getPlayerVelocityY() {
+        return playerVelocityY;
+    }
+
+    public FlowField getFlowField() {
+        return flowField;
+    }
+
+    public List<Building> getBuildings() {
+        return buildings;
+    }
+
+    public ObstacleIndex getObstacles() {
+        return obstacles;
+    }
+
+    public NpcStore getNpcs() {
+        return npcs;
+    }
+
+    public boolean isPeaceTime() {
+        return peaceTime;
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+}
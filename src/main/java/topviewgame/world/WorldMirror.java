@@ -0,0 +1,121 @@
+package topviewgame.world;
+
+/**
+ * Shows a world simulated elsewhere, such as on a game server, through a local world that is never
+ * ticked, so the renderers can draw it like a local game.
+ * <p>
+ * The map is generated locally from the seed of the remote game. Every received state replaces the
+ * player and the NPCs, keeping their positions from the previous state as the previous step, so
+ * rendering with an interpolation factor running from 0 to 1 until the next state arrives moves
+ * everything smoothly between the last two received states. NPCs are matched across states by
+ * their identifiers, which also keeps their walking animations running.
+ */
+public class WorldMirror {
+    private final World world;
+    private long seed;
+
+    // NPCs of the last state, sorted by identifier
+    private int count;
+    private int[] ids = new int[0];
+    private double[] xs = new double[0];
+    private double[] ys = new double[0];
+    private double[] phases = new double[0];
+
+    // Buffers for the NPCs of the next state
+    private int[] nextIds = new int[0];
+    private double[] nextXs = new double[0];
+    private double[] nextYs = new double[0];
+    private double[] nextPhases = new double[0];
+
+    /**
+     * Constructs a mirror showing its state in a world.
+     *
+     * @param world The world to show the state in, with the layout of the remote world.
+     */
+    public WorldMirror(World world) {
+        this.world = world;
+    }
+
+    /**
+     * Switches to another remote game, generating its map.
+     *
+     * @param seed The seed of the remote game.
+     */
+    public void reset(long seed) {
+        this.seed = seed;
+        world.reset(seed);
+        world.getNpcs().clear();
+        count = 0;
+    }
+
+    /**
+     * Applies a state received from the remote world.
+     *
+     * @param steps     The step count of the remote world.
+     * @param playerX   The x-coordinate of the player.
+     * @param playerY   The y-coordinate of the player.
+     * @param inputs    The pressed inputs of the player, one bit per {@link Input} ordinal.
+     * @param gameOver  True if the remote game is over; false otherwise.
+     * @param peaceTime True if the remote game is in peace time; false otherwise.
+     * @param npcCount  The number of NPCs in the state.
+     * @param npcIds    The identifiers of the NPCs, in ascending order.
+     * @param npcX      The x-coordinates of the NPCs.
+     * @param npcY      The y-coordinates of the NPCs.
+     */
+    public void update(long steps, double playerX, double playerY, int inputs, boolean gameOver, boolean peaceTime,
+                       int npcCount, int[] npcIds, double[] npcX, double[] npcY) {
+        world.applyRemoteState(steps, playerX, playerY, inputs, gameOver, peaceTime);
+        if (nextIds.length < npcCount) {
+            nextIds = new int[npcCount];
+            nextXs = new double[npcCount];
+            nextYs = new double[npcCount];
+            nextPhases = new double[npcCount];
+        }
+
+        // Walk the old and new states in identifier order to find where each NPC was before
+        NpcStore npcs = world.getNpcs();
+        npcs.clear();
+        int old = 0;
+        for (int k = 0; k < npcCount; k++) {
+            int id = npcIds[k];
+            while (old < count && ids[old] < id) {
+                old++;
+            }
+            boolean known = old < count && ids[old] == id;
+            double phase = known ? phases[old] : world.getAnimationClock().startPhase();
+            if (world.isInRegion(npcX[k], npcY[k])) {
+                int i = npcs.add(npcX[k], npcY[k], 0, peaceTime, phase);
+                npcs.previousX[i] = known ? xs[old] : npcX[k];
+                npcs.previousY[i] = known ? ys[old] : npcY[k];
+                npcs.id[i] = id;
+            }
+            nextIds[k] = id;
+            nextXs[k] = npcX[k];
+            nextYs[k] = npcY[k];
+            nextPhases[k] = phase;
+        }
+
+        // The new state becomes the old one
+        int[] swapIds = ids;
+        ids = nextIds;
+        nextIds = swapIds;
+        double[] swap = xs;
+        xs = nextXs;
+        nextXs = swap;
+        swap = ys;
+        ys = nextYs;
+        nextYs = swap;
+        swap = phases;
+        phases = nextPhases;
+        nextPhases = swap;
+        count = npcCount;
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+}
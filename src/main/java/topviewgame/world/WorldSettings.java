@@ -0,0 +1,51 @@
+package topviewgame.world;
+
+/**
+ * Simulation settings chosen by the player, applied to every {@link World} a game panel creates so
+ * they hold from the first game on.
+ */
+public final class WorldSettings {
+    /**
+     * The settings of a world that was not configured.
+     */
+    public static final WorldSettings DEFAULT = new WorldSettings(World.DEFAULT_LOD_MID_DISTANCE,
+            World.DEFAULT_LOD_FAR_DISTANCE, SteeringMode.PROBE, World.DEFAULT_JOB_BUDGET_MICROS);
+
+    // Distances to the player where NPCs switch to the mid and far levels of detail
+    private final double lodMidDistance;
+    private final double lodFarDistance;
+
+    // How near NPCs avoid obstacles and each other
+    private final SteeringMode steeringMode;
+
+    // Estimated microseconds of deferred jobs run per step
+    private final int jobBudgetMicros;
+
+    /**
+     * Constructs new settings.
+     *
+     * @param lodMidDistance  The distance where the {@link LodTier#MID} tier starts.
+     * @param lodFarDistance  The distance where the {@link LodTier#FAR} tier starts; at least the mid distance.
+     * @param steeringMode    The steering mode.
+     * @param jobBudgetMicros The estimated microseconds of jobs to run per step, or 0 to run all work
+     *                        in the step it falls due.
+     */
+    public WorldSettings(double lodMidDistance, double lodFarDistance, SteeringMode steeringMode, int jobBudgetMicros) {
+        this.lodMidDistance = lodMidDistance;
+        this.lodFarDistance = lodFarDistance;
+        this.steeringMode = steeringMode;
+        this.jobBudgetMicros = jobBudgetMicros;
+    }
+
+    /**
+     * Applies the settings to a world. They take effect from its next step on, and its next
+     * {@link World#reset()} starts a game with them.
+     *
+     * @param world The world to configure.
+     */
+    public void applyTo(World world) {
+        world.setLodDistances(lodMidDistance, lodFarDistance);
+        world.setSteeringMode(steeringMode);
+        world.setJobBudget(jobBudgetMicros);
+    }
+}